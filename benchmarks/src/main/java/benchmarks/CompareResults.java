@@ -0,0 +1,173 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Compares two JMH runs saved with -rf csv and exits with status 1 if any
+ * benchmark got slower, or allocates more with -prof gc, so it can gate a
+ * change. The other secondary results, like the collection counts, are left
+ * out.
+ *
+ * A benchmark only counts as worse when its score changed by more than
+ * the tolerance and the two scores' 99.9% confidence intervals don't
+ * overlap, so the noise between two runs on the same code, which JMH
+ * measures across its forks, doesn't fail the gate. Benchmarks in only one
+ * of the runs are listed and skipped.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar benchmarks.CompareResults baseline.csv results.csv [tolerance percent]
+ */
+public class CompareResults {
+	private static final double DEFAULT_TOLERANCE = 10;
+
+	/***
+	 * One row of a JMH csv file
+	 */
+	static class Score {
+		final String mode;
+		final double score;
+		final double error;
+		final String unit;
+
+		Score(String mode, double score, double error, String unit) {
+			this.mode = mode;
+			this.score = score;
+			this.error = Double.isNaN(error) ? 0 : error;
+			this.unit = unit;
+		}
+
+		/***
+		 * Returns whether a bigger score is better, which is the case for throughput
+		 */
+		boolean isHigherBetter() {
+			return mode.equals("thrpt");
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println(
+					"Usage: java -cp benchmarks/target/benchmarks.jar benchmarks.CompareResults baseline.csv results.csv [tolerance percent]");
+			System.exit(2);
+		}
+		double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+
+		try {
+			Map<String, Score> baseline = read(new File(args[0]));
+			Map<String, Score> results = read(new File(args[1]));
+			if (!compare(baseline, results, tolerance))
+				System.exit(1);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+	}
+
+	/***
+	 * Prints the change in every score and every one that got worse
+	 *
+	 * @param baseline the scores before the change
+	 * @param results the scores after it
+	 * @param tolerance how much worse a score may get, in percent
+	 * @return true if nothing got worse
+	 */
+	public static boolean compare(Map<String, Score> baseline, Map<String, Score> results, double tolerance) {
+		boolean passed = true;
+		for (Map.Entry<String, Score> entry : results.entrySet()) {
+			Score before = baseline.get(entry.getKey());
+			Score after = entry.getValue();
+			if (before == null || !before.mode.equals(after.mode) || !before.unit.equals(after.unit)) {
+				System.out.println(String.format("%-90s %s", entry.getKey(), "not in the baseline"));
+				continue;
+			}
+
+			// the change in percent, positive when the benchmark got worse
+			double change = before.score == 0 ? (after.score == 0 ? 0 : Double.POSITIVE_INFINITY)
+					: 100 * (after.score / before.score - 1);
+			boolean overlap = after.score - after.error <= before.score + before.error
+					&& before.score - before.error <= after.score + after.error;
+			if (after.isHigherBetter())
+				change = -change;
+
+			boolean regressed = change > tolerance && !overlap;
+			System.out.println(String.format("%-90s %+7.1f%% worse%s%s", entry.getKey(), change,
+					overlap ? "  (within the error)" : "", regressed ? "  REGRESSION" : ""));
+			if (regressed)
+				passed = false;
+		}
+		for (String name : baseline.keySet())
+			if (!results.containsKey(name))
+				System.out.println(String.format("%-90s %s", name, "not in the results"));
+		return passed;
+	}
+
+	/***
+	 * Reads the scores and allocations from a file written with -rf csv,
+	 * keyed by the benchmark name and its parameters
+	 *
+	 * @param file the csv file
+	 * @return the scores in the order of the file
+	 * @throws IOException if the file can't be read or isn't a JMH csv file
+	 */
+	public static Map<String, Score> read(File file) throws IOException {
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		if (lines.isEmpty())
+			throw new IOException(file + " is empty");
+
+		List<String> header = split(lines.get(0));
+		int benchmark = header.indexOf("Benchmark"), mode = header.indexOf("Mode"), score = header.indexOf("Score");
+		int error = header.indexOf("Score Error (99.9%)"), unit = header.indexOf("Unit");
+		if (benchmark < 0 || mode < 0 || score < 0 || error < 0 || unit < 0)
+			throw new IOException(file + " isn't a JMH csv file");
+
+		Map<String, Score> scores = new LinkedHashMap<String, Score>();
+		for (int i = 1; i < lines.size(); i++) {
+			List<String> fields = split(lines.get(i));
+			if (fields.size() != header.size())
+				continue;
+
+			// secondary results from -prof gc have names like benchmark:gc.alloc.rate.norm
+			String benchmarkName = fields.get(benchmark);
+			if (benchmarkName.contains(":") && !benchmarkName.endsWith("gc.alloc.rate.norm"))
+				continue;
+			StringBuilder name = new StringBuilder(benchmarkName);
+			for (int c = unit + 1; c < header.size(); c++)
+				name.append(' ').append(header.get(c).replace("Param: ", "")).append('=').append(fields.get(c));
+
+			scores.put(name.toString(), new Score(fields.get(mode), parse(fields.get(score)), parse(fields.get(error)),
+					fields.get(unit)));
+		}
+		return scores;
+	}
+
+	private static double parse(String number) {
+		return number.isEmpty() ? Double.NaN : Double.parseDouble(number);
+	}
+
+	/***
+	 * Splits a line of a csv file, where fields may be quoted
+	 */
+	private static List<String> split(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"')
+				quoted = !quoted;
+			else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else
+				field.append(c);
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
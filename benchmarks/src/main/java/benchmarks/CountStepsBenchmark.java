@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Measures each stage of counting steps on synthetic walks from 1K to 10M
+ * samples, made by Benchmark.syntheticWalk. The time per operation divided
+ * by the size is the time per sample, and -prof gc adds the bytes allocated
+ * per operation.
+ *
+ * Run a single size with -p size=100000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class CountStepsBenchmark {
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int size;
+
+	private double[] times, x, y, z;
+	private double[][] rows;
+	private double[] magnitudes;
+	private int[] rawPeaks, peaks;
+	private Object cadenceCounter;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		double[][] walk = StepCounting.syntheticWalk(size, 42);
+		times = walk[0];
+		x = walk[1];
+		y = walk[2];
+		z = walk[3];
+		rows = new double[size][];
+		for (int i = 0; i < size; i++)
+			rows[i] = new double[] { x[i], y[i], z[i] };
+
+		magnitudes = StepCounting.calculateMagnitudesFor(x, y, z);
+		rawPeaks = StepCounting.findRawPeaks(magnitudes);
+		peaks = new int[rawPeaks.length];
+		cadenceCounter = StepCounting.newCadenceCounter();
+	}
+
+	@Benchmark
+	public double[] calculateMagnitudesFor() {
+		return StepCounting.calculateMagnitudesFor(rows);
+	}
+
+	@Benchmark
+	public double[] calculateMagnitudesForColumns() {
+		return StepCounting.calculateMagnitudesFor(x, y, z);
+	}
+
+	@Benchmark
+	public int[] findPeaks() {
+		return StepCounting.findPeaks(magnitudes, times);
+	}
+
+	@Benchmark
+	public int[] clearExtraPeaks() {
+		// clearExtraPeaks works in place, so each operation starts again from the raw peaks
+		System.arraycopy(rawPeaks, 0, peaks, 0, rawPeaks.length);
+		StepCounting.clearExtraPeaks(peaks, magnitudes, times, StepCounting.DEADZONE);
+		return peaks;
+	}
+
+	@Benchmark
+	public double[] calculateThresholds() {
+		return StepCounting.calculateThresholds(magnitudes, times);
+	}
+
+	@Benchmark
+	public int countStepsByMagnitudes() {
+		return StepCounting.countStepsByMagnitudes(rows, times);
+	}
+
+	@Benchmark
+	public double[][] resample() {
+		return StepCounting.resample(times, magnitudes, StepCounting.DETECTION_RATE);
+	}
+
+	@Benchmark
+	public int countStepsResampled() {
+		return StepCounting.countStepsResampled(magnitudes, times);
+	}
+
+	@Benchmark
+	public int countCadenceSteps() {
+		return StepCounting.countCadenceSteps(cadenceCounter, magnitudes, times);
+	}
+}
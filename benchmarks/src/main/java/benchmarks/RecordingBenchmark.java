@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/***
+ * Measures loading and counting the recordings in data/, so it has to be
+ * run from the repository root. One operation is one recording: each
+ * invocation goes over all of them in name order, and the score is the
+ * average per recording.
+ *
+ * The binary loader reads copies of the recordings saved in a temporary
+ * folder when the trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RecordingBenchmark {
+	private static final String FOLDER = "data";
+	// the number of recordings in data/, so the scores are per recording
+	private static final int RECORDINGS = 13;
+
+	private String[] paths, binaryPaths;
+	private double[][][] sensorData;
+	private double[][] times;
+	private File binaryFolder;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File[] files = new File(FOLDER).listFiles();
+		if (files == null)
+			throw new IOException("No folder " + new File(FOLDER).getAbsolutePath()
+					+ ", run the benchmarks from the repository root");
+		Arrays.sort(files);
+
+		List<String> found = new ArrayList<String>();
+		for (File file : files)
+			if (file.getName().endsWith(".csv"))
+				found.add(file.getPath());
+		if (found.size() != RECORDINGS)
+			throw new IOException("Expected " + RECORDINGS + " recordings in " + FOLDER + " but found "
+					+ found.size());
+
+		binaryFolder = File.createTempFile("recordings", "");
+		if (!binaryFolder.delete() || !binaryFolder.mkdir())
+			throw new IOException("Couldn't make " + binaryFolder);
+
+		paths = found.toArray(new String[found.size()]);
+		binaryPaths = new String[paths.length];
+		sensorData = new double[paths.length][][];
+		times = new double[paths.length][];
+		for (int i = 0; i < paths.length; i++) {
+			Object data = StepCounting.createDataSet(paths[i], 0);
+			binaryPaths[i] = new File(binaryFolder, i + ".bin").getPath();
+			StepCounting.saveBinary(data, binaryPaths[i], StepCounting.UNKNOWN_STEPS);
+			sensorData[i] = StepCounting.getAllData(data);
+			times[i] = StepCounting.getColumn(data, 0);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (String path : binaryPaths)
+			new File(path).delete();
+		binaryFolder.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDINGS)
+	public void createDataSetSkipping(Blackhole blackhole) {
+		for (String path : paths)
+			blackhole.consume(StepCounting.createDataSet(path, 0));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDINGS)
+	public void createDataSet(Blackhole blackhole) {
+		for (String path : paths)
+			blackhole.consume(StepCounting.createDataSet(path));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDINGS)
+	public void readRecording(Blackhole blackhole) {
+		for (String path : paths)
+			blackhole.consume(StepCounting.readRecording(path));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDINGS)
+	public void readBinary(Blackhole blackhole) {
+		for (String path : binaryPaths)
+			blackhole.consume(StepCounting.readBinary(path));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDINGS)
+	public void countStepsByMagnitudes(Blackhole blackhole) {
+		for (int i = 0; i < sensorData.length; i++)
+			blackhole.consume(StepCounting.countStepsByMagnitudes(sensorData[i], times[i]));
+	}
+}
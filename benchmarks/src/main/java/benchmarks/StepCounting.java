@@ -0,0 +1,332 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/***
+ * Calls the step counting code in ../src from the benchmarks.
+ *
+ * JMH won't generate benchmarks for classes in the default package, and a
+ * class in a package can't name the classes in the default package, so the
+ * code being measured is looked up by name once and called through method
+ * handles. The handles are static finals, which the JIT treats as constants
+ * and inlines through, so a call costs the same as calling the method
+ * directly. Values of types from the default package, like CSVData, are
+ * passed around as Object.
+ */
+public final class StepCounting {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+	private static final Class<?> COUNT_STEPS = find("CountSteps");
+	private static final Class<?> CSV_DATA = find("CSVData");
+
+	public static final double DEADZONE = invokeGetter(find("StepCounterConfig"), "DEFAULT", "getDeadzone");
+	public static final double DETECTION_RATE = ((Number) readField(COUNT_STEPS, "DETECTION_RATE")).doubleValue();
+	public static final int UNKNOWN_STEPS = ((Number) readField(find("BinaryRecording"), "UNKNOWN_STEPS")).intValue();
+
+	private static final MethodHandle MAGNITUDES_OF_ROWS = staticMethod(COUNT_STEPS, "calculateMagnitudesFor",
+			double[].class, double[][].class);
+	private static final MethodHandle MAGNITUDES_OF_COLUMNS = staticMethod(COUNT_STEPS, "calculateMagnitudesFor",
+			double[].class, double[].class, double[].class, double[].class);
+	private static final MethodHandle FIND_PEAKS = staticMethod(COUNT_STEPS, "findPeaks", int[].class, double[].class,
+			double[].class);
+	private static final MethodHandle FIND_RAW_PEAKS = staticMethod(COUNT_STEPS, "findRawPeaks", int[].class,
+			double[].class);
+	private static final MethodHandle CLEAR_EXTRA_PEAKS = staticMethod(COUNT_STEPS, "clearExtraPeaks", void.class,
+			int[].class, double[].class, double[].class, double.class);
+	private static final MethodHandle CALCULATE_THRESHOLDS = staticMethod(COUNT_STEPS, "calculateThresholds",
+			double[].class, double[].class, double[].class);
+	private static final MethodHandle COUNT_STEPS_BY_MAGNITUDES = staticMethod(COUNT_STEPS, "countStepsByMagnitudes",
+			int.class, double[][].class, double[].class);
+	private static final MethodHandle COUNT_STEPS_RESAMPLED = countStepsResampledAdaptive();
+	private static final MethodHandle RESAMPLE = staticMethod(find("Resampler"), "resample", double[][].class,
+			double[].class, double[].class, double.class);
+	private static final MethodHandle NEW_CADENCE_COUNTER = constructor(find("CadenceCounter"));
+	private static final MethodHandle CADENCE_COUNT_STEPS = virtualMethod(find("CadenceCounter"), "countSteps",
+			int.class, double[].class, double[].class);
+
+	private static final MethodHandle SYNTHETIC_WALK = staticMethod(find("Benchmark"), "syntheticWalk",
+			double[][].class, int.class, long.class);
+
+	private static final MethodHandle CREATE_DATA_SET_SKIPPING = staticMethod(CSV_DATA, "createDataSet", CSV_DATA,
+			String.class, int.class);
+	private static final MethodHandle CREATE_DATA_SET = staticMethod(CSV_DATA, "createDataSet", CSV_DATA,
+			String.class);
+	private static final MethodHandle READ_BINARY = staticMethod(CSV_DATA, "readBinary", CSV_DATA, String.class);
+	private static final MethodHandle READ_RECORDING = staticMethod(find("RecordingReaders"), "read", CSV_DATA,
+			String.class);
+	private static final MethodHandle GET_ALL_DATA = virtualMethod(CSV_DATA, "getAllData", double[][].class);
+	private static final MethodHandle GET_COLUMN = virtualMethod(CSV_DATA, "getColumn", double[].class, int.class);
+	private static final MethodHandle GET_NUM_ROWS = virtualMethod(CSV_DATA, "getNumRows", int.class);
+	private static final MethodHandle SAVE_BINARY = virtualMethod(CSV_DATA, "saveBinary", void.class, String.class,
+			int.class);
+
+	private StepCounting() {
+	}
+
+	public static double[] calculateMagnitudesFor(double[][] rows) {
+		try {
+			return (double[]) MAGNITUDES_OF_ROWS.invokeExact(rows);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static double[] calculateMagnitudesFor(double[] x, double[] y, double[] z) {
+		try {
+			return (double[]) MAGNITUDES_OF_COLUMNS.invokeExact(x, y, z);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static int[] findPeaks(double[] magnitudes, double[] times) {
+		try {
+			return (int[]) FIND_PEAKS.invokeExact(magnitudes, times);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static int[] findRawPeaks(double[] magnitudes) {
+		try {
+			return (int[]) FIND_RAW_PEAKS.invokeExact(magnitudes);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static void clearExtraPeaks(int[] peaks, double[] magnitudes, double[] times, double deadzone) {
+		try {
+			CLEAR_EXTRA_PEAKS.invokeExact(peaks, magnitudes, times, deadzone);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static double[] calculateThresholds(double[] magnitudes, double[] times) {
+		try {
+			return (double[]) CALCULATE_THRESHOLDS.invokeExact(magnitudes, times);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static int countStepsByMagnitudes(double[][] rows, double[] times) {
+		try {
+			return (int) COUNT_STEPS_BY_MAGNITUDES.invokeExact(rows, times);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	/***
+	 * CountSteps.countStepsResampled with the adaptive threshold
+	 */
+	public static int countStepsResampled(double[] magnitudes, double[] times) {
+		try {
+			return (int) COUNT_STEPS_RESAMPLED.invokeExact(magnitudes, times);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static double[][] resample(double[] times, double[] values, double outputRate) {
+		try {
+			return (double[][]) RESAMPLE.invokeExact(times, values, outputRate);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static Object newCadenceCounter() {
+		try {
+			return (Object) NEW_CADENCE_COUNTER.invokeExact();
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static int countCadenceSteps(Object cadenceCounter, double[] magnitudes, double[] times) {
+		try {
+			return (int) CADENCE_COUNT_STEPS.invokeExact(cadenceCounter, magnitudes, times);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static double[][] syntheticWalk(int size, long seed) {
+		try {
+			return (double[][]) SYNTHETIC_WALK.invokeExact(size, seed);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static Object createDataSet(String filepath, int linesToSkip) {
+		try {
+			return (Object) CREATE_DATA_SET_SKIPPING.invokeExact(filepath, linesToSkip);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static Object createDataSet(String filepath) {
+		try {
+			return (Object) CREATE_DATA_SET.invokeExact(filepath);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static Object readBinary(String filepath) {
+		try {
+			return (Object) READ_BINARY.invokeExact(filepath);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	/***
+	 * RecordingReaders.read, which throws an IOException the caller doesn't have to declare
+	 */
+	public static Object readRecording(String filepath) {
+		try {
+			return (Object) READ_RECORDING.invokeExact(filepath);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static double[][] getAllData(Object data) {
+		try {
+			return (double[][]) GET_ALL_DATA.invokeExact(data);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static double[] getColumn(Object data, int column) {
+		try {
+			return (double[]) GET_COLUMN.invokeExact(data, column);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static int getNumRows(Object data) {
+		try {
+			return (int) GET_NUM_ROWS.invokeExact(data);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public static void saveBinary(Object data, String filepath, int stepCount) {
+		try {
+			SAVE_BINARY.invokeExact(data, filepath, stepCount);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	/***
+	 * Throws any exception without wrapping it, so the benchmark fails with the original
+	 */
+	private static RuntimeException rethrow(Throwable e) {
+		StepCounting.<RuntimeException> throwUnchecked(e);
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Throwable> void throwUnchecked(Throwable e) throws T {
+		throw (T) e;
+	}
+
+	private static Class<?> find(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("The step counting classes aren't on the classpath", e);
+		}
+	}
+
+	/***
+	 * Looks up a static method, with any default package types in its signature seen as Object
+	 */
+	private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+		try {
+			MethodHandle handle = LOOKUP.findStatic(owner, name, MethodType.methodType(returnType, parameters));
+			return handle.asType(erase(handle.type()));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No " + owner.getName() + "." + name, e);
+		}
+	}
+
+	private static MethodHandle virtualMethod(Class<?> owner, String name, Class<?> returnType,
+			Class<?>... parameters) {
+		try {
+			MethodHandle handle = LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+			return handle.asType(erase(handle.type()));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No " + owner.getName() + "." + name, e);
+		}
+	}
+
+	private static MethodHandle constructor(Class<?> owner) {
+		try {
+			MethodHandle handle = LOOKUP.findConstructor(owner, MethodType.methodType(void.class));
+			return handle.asType(erase(handle.type()));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No " + owner.getName() + " constructor", e);
+		}
+	}
+
+	/***
+	 * countStepsResampled(double[], double[], ThresholdStrategy) with ThresholdStrategy.ADAPTIVE bound
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static MethodHandle countStepsResampledAdaptive() {
+		Class strategies = find("ThresholdStrategy");
+		MethodHandle handle = staticMethod(COUNT_STEPS, "countStepsResampled", int.class, double[].class,
+				double[].class, strategies);
+		return MethodHandles.insertArguments(handle, 2, Enum.valueOf(strategies, "ADAPTIVE"));
+	}
+
+	/***
+	 * Replaces the default package types in a method type with Object
+	 */
+	private static MethodType erase(MethodType type) {
+		for (int i = 0; i < type.parameterCount(); i++)
+			type = type.changeParameterType(i, erase(type.parameterType(i)));
+		return type.changeReturnType(erase(type.returnType()));
+	}
+
+	private static Class<?> erase(Class<?> type) {
+		return type.isPrimitive() || type.isArray() || type.getName().contains(".") ? type : Object.class;
+	}
+
+	/***
+	 * Reads a static field, which may be package-private
+	 */
+	private static Object readField(Class<?> owner, String name) {
+		try {
+			Field field = owner.getDeclaredField(name);
+			field.setAccessible(true);
+			return field.get(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No " + owner.getName() + "." + name, e);
+		}
+	}
+
+	private static double invokeGetter(Class<?> owner, String field, String getter) {
+		try {
+			Object value = readField(owner, field);
+			return ((Number) owner.getMethod(getter).invoke(value)).doubleValue();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No " + owner.getName() + "." + getter, e);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/***
+ * The SIMD magnitude kernel, using as many doubles per instruction as the
+ * processor supports. It needs the jdk.incubator.vector module, so it is kept
+ * out of src and loaded by MagnitudeKernel only when it can run.
+ */
+public class VectorMagnitudeKernel extends MagnitudeKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void calculate(double[] x, double[] y, double[] z, double[] output, int length) {
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			DoubleVector vz = DoubleVector.fromArray(SPECIES, z, i);
+
+			// the same order as the scalar kernel: (x*x + y*y) + z*z
+			vx.mul(vx).add(vy.mul(vy)).add(vz.mul(vz)).sqrt().intoArray(output, i);
+		}
+
+		// the samples that don't fill a whole vector
+		for (; i < length; i++)
+			output[i] = Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]);
+	}
+
+	@Override
+	public String getName() {
+		return "vector (" + SPECIES.length() + " doubles)";
+	}
+}
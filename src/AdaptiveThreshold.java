@@ -0,0 +1,172 @@
+import java.io.Serializable;
+
+/***
+ * Keeps the mean and standard deviation of a sliding window of magnitudes
+ * without storing the window. Values are added when they enter the window
+ * and removed when they leave it, using Welford's update so long recordings
+ * don't lose precision the way a running sum of squares would.
+ *
+ * The threshold for a window is its mean plus one standard deviation, the
+ * same as CountSteps.calculateThreshold, unless a StepCounterConfig asks for
+ * a different number of deviations.
+ *
+ * NaN and infinite values take up their place in the window but are left out
+ * of the mean and standard deviation. Once in the statistics they could never
+ * be removed again, and every later threshold would be NaN.
+ */
+public class AdaptiveThreshold implements Serializable {
+	private static final long serialVersionUID = 2L;
+	private int count = 0;
+	private int finiteCount = 0; // the values in the statistics
+	private double mean = 0;
+	private double sumOfSquares = 0; // sum of squared distances from the mean
+
+	/***
+	 * Computes the threshold for every magnitude, using a window of range
+	 * values on each side, in one pass and without allocating.
+	 *
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param range the number of values on each side of a magnitude to include in its window
+	 * @param output the array to write the thresholds into, at least as long as magnitudes
+	 * @return the output array
+	 */
+	public static double[] calculateThresholds(double[] magnitudes, int range, double[] output) {
+		return calculateThresholds(magnitudes, range, 1, output);
+	}
+
+	/***
+	 * Computes the threshold for every magnitude, a number of standard
+	 * deviations above the mean of its window
+	 *
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param range the number of values on each side of a magnitude to include in its window
+	 * @param deviations the number of standard deviations above the mean
+	 * @param output the array to write the thresholds into, at least as long as magnitudes
+	 * @return the output array
+	 */
+	public static double[] calculateThresholds(double[] magnitudes, int range, double deviations, double[] output) {
+		AdaptiveThreshold window = new AdaptiveThreshold();
+
+		for (int i = 0; i < magnitudes.length; i++) {
+			window.slideTo(magnitudes, i, range, magnitudes.length);
+			output[i] = window.getThreshold(deviations);
+		}
+		return output;
+	}
+
+	/***
+	 * Moves the window so it is centered on index, assuming it was centered on
+	 * index - 1 before (or is empty and index is 0). Only the first length values
+	 * of magnitudes are part of the data.
+	 *
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param index the index the window should be centered on
+	 * @param range the number of values on each side of index to include
+	 * @param length the number of values in magnitudes that hold data
+	 */
+	public void slideTo(double[] magnitudes, int index, int range, int length) {
+		if (index == 0) {
+			clear();
+			for (int i = 0; i <= range && i < length; i++)
+				add(magnitudes[i]);
+			return;
+		}
+		if (index + range < length)
+			add(magnitudes[index + range]);
+		if (index - range - 1 >= 0)
+			remove(magnitudes[index - range - 1]);
+	}
+
+	/***
+	 * Adds a value to the window
+	 *
+	 * @param value the value entering the window
+	 */
+	public void add(double value) {
+		count++;
+		if (!Double.isFinite(value))
+			return;
+		finiteCount++;
+		double delta = value - mean;
+		mean += delta / finiteCount;
+		sumOfSquares += delta * (value - mean);
+	}
+
+	/***
+	 * Removes a value that was added earlier from the window
+	 *
+	 * @param value the value leaving the window
+	 */
+	public void remove(double value) {
+		count--;
+		if (!Double.isFinite(value))
+			return;
+		finiteCount--;
+		if (finiteCount == 0) {
+			mean = 0;
+			sumOfSquares = 0;
+			return;
+		}
+		double delta = value - mean;
+		mean -= delta / finiteCount;
+		sumOfSquares -= delta * (value - mean);
+		if (sumOfSquares < 0)
+			sumOfSquares = 0;
+	}
+
+	/***
+	 * Empties the window
+	 */
+	public void clear() {
+		count = 0;
+		finiteCount = 0;
+		mean = 0;
+		sumOfSquares = 0;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/***
+	 * Returns the number of values in the window that are in the statistics
+	 *
+	 * @return the number of values that aren't NaN or infinite
+	 */
+	public int getFiniteCount() {
+		return finiteCount;
+	}
+
+	public double getMean() {
+		return finiteCount == 0 ? Double.NaN : mean;
+	}
+
+	/***
+	 * Returns the sample standard deviation of the window, which is NaN when
+	 * there are fewer than two finite values, the same as CountSteps.calculateStandardDeviation
+	 *
+	 * @return the standard deviation of the finite values in the window
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(sumOfSquares / (finiteCount - 1));
+	}
+
+	/***
+	 * Returns the threshold for the window
+	 *
+	 * @return the mean plus one standard deviation
+	 */
+	public double getThreshold() {
+		return getThreshold(1);
+	}
+
+	/***
+	 * Returns a threshold for the window
+	 *
+	 * @param deviations the number of standard deviations above the mean
+	 * @return the mean plus that many standard deviations
+	 */
+	public double getThreshold(double deviations) {
+		return getMean() + deviations * getStandardDeviation();
+	}
+}
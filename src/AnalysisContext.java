@@ -0,0 +1,301 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * The series derived from one recording, worked out the first time they are
+ * asked for and kept for the next caller, so several counters and plots of
+ * the same data share one computation: the magnitudes, the smoothed signal,
+ * the raw peaks, the peaks left after the deadzone is cleared, and the
+ * thresholds.
+ *
+ * Each series is cached under its name and the parameters it depends on, like
+ * "peaks 150.0 MedianFilter(5)", so asking for the same thing twice reuses it
+ * and asking with other parameters works it out separately: trials of a
+ * ParameterSweep that only change the deadzone share their thresholds, and
+ * the other way around. Smoothing filters are told apart by their toString.
+ *
+ * The cache holds at most a set number of bytes. When it is full the series
+ * that was used longest ago is dropped, and worked out again if it is asked
+ * for later.
+ *
+ * The arrays returned are shared with the cache and must not be changed. The
+ * methods are synchronized so one context can be shared between threads.
+ */
+public class AnalysisContext {
+	public static final long DEFAULT_MAX_BYTES = 32L << 20;
+
+	private final double[] x, y, z, times;
+	private final long maxBytes;
+
+	// in access order, so the first entry is the one used longest ago
+	private final LinkedHashMap<String, Object> cache = new LinkedHashMap<String, Object>(16, 0.75f, true);
+	private long cachedBytes = 0;
+	private int hits = 0, misses = 0;
+
+	public AnalysisContext(double[] x, double[] y, double[] z, double[] times) {
+		this(x, y, z, times, DEFAULT_MAX_BYTES);
+	}
+
+	/***
+	 * Creates a context for one recording
+	 *
+	 * @param x the x acceleration
+	 * @param y the y acceleration
+	 * @param z the z acceleration
+	 * @param times the time of each sample in milliseconds
+	 * @param maxBytes the most memory the cached series may take
+	 */
+	public AnalysisContext(double[] x, double[] y, double[] z, double[] times, long maxBytes) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.times = times;
+		this.maxBytes = maxBytes;
+	}
+
+	/***
+	 * Creates a context for a table with the time in column 0 and the x, y and
+	 * z acceleration in columns 1-3, like the ones from RecordingReaders
+	 *
+	 * @param data the recording
+	 * @return the context
+	 */
+	public static AnalysisContext of(CSVData data) {
+		return new AnalysisContext(data.getColumn(1), data.getColumn(2), data.getColumn(3), data.getColumn(0));
+	}
+
+	public double[] getTimes() {
+		return times;
+	}
+
+	/***
+	 * Returns the magnitude of the acceleration of every sample
+	 *
+	 * @return the magnitudes
+	 */
+	public synchronized double[] getMagnitudes() {
+		double[] magnitudes = (double[]) get("magnitudes");
+		if (magnitudes == null)
+			magnitudes = (double[]) put("magnitudes", CountSteps.calculateMagnitudesFor(x, y, z));
+		return magnitudes;
+	}
+
+	/***
+	 * Returns the signal peaks are found in: the magnitudes, smoothed if there is a filter
+	 *
+	 * @param filter the filter to smooth with, or null for the magnitudes themselves
+	 * @return the signal
+	 */
+	public synchronized double[] getSignal(SmoothingFilter filter) {
+		if (filter == null)
+			return getMagnitudes();
+
+		String key = "smoothed " + filter;
+		double[] smoothed = (double[]) get(key);
+		if (smoothed == null)
+			smoothed = (double[]) put(key, NoiseSmoothing.smooth(getMagnitudes(), filter));
+		return smoothed;
+	}
+
+	/***
+	 * Returns every local maximum of the signal, before the deadzone is cleared
+	 *
+	 * @param filter the filter the signal is smoothed with, or null
+	 * @return 1 where there is a peak, 0 otherwise
+	 */
+	public synchronized int[] getRawPeaks(SmoothingFilter filter) {
+		String key = "raw peaks " + filter;
+		int[] peaks = (int[]) get(key);
+		if (peaks == null)
+			peaks = (int[]) put(key, CountSteps.findRawPeaks(getSignal(filter)));
+		return peaks;
+	}
+
+	/***
+	 * Returns the peaks CountSteps.findPeaks finds: the magnitudes' peaks with
+	 * every peak that has a taller one within TIME_THRESHOLD cleared
+	 *
+	 * @return 1 where there is a peak, 0 otherwise
+	 */
+	public int[] getPeaks() {
+		return getPeaks(CountSteps.TIME_THRESHOLD, null);
+	}
+
+	/***
+	 * Returns the peaks of the signal that have no taller peak within the deadzone
+	 *
+	 * @param deadzone the time in milliseconds on each side of a peak to clear
+	 * @param filter the filter the signal is smoothed with, or null
+	 * @return 1 where there is a peak, 0 otherwise
+	 */
+	public synchronized int[] getPeaks(double deadzone, SmoothingFilter filter) {
+		String key = "peaks " + deadzone + " " + filter;
+		int[] peaks = (int[]) get(key);
+		if (peaks == null) {
+			peaks = getRawPeaks(filter).clone();
+			CountSteps.clearExtraPeaks(peaks, getSignal(filter), times, deadzone);
+			put(key, peaks);
+		}
+		return peaks;
+	}
+
+	/***
+	 * Returns the threshold at every sample of the magnitudes
+	 *
+	 * @param strategy how to calculate the thresholds
+	 * @return the thresholds
+	 */
+	public double[] getThresholds(ThresholdStrategy strategy) {
+		return getThresholds(strategy, null);
+	}
+
+	/***
+	 * Returns the threshold at every sample of the signal
+	 *
+	 * @param strategy how to calculate the thresholds
+	 * @param filter the filter the signal is smoothed with, or null
+	 * @return the thresholds
+	 */
+	public double[] getThresholds(ThresholdStrategy strategy, SmoothingFilter filter) {
+		return getThresholds(strategy, filter, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Returns the threshold at every sample of the signal, with the threshold
+	 * window and deviations of a config
+	 *
+	 * @param strategy how to calculate the thresholds
+	 * @param filter the filter the signal is smoothed with, or null
+	 * @param config the threshold window and number of deviations to use
+	 * @return the thresholds
+	 */
+	public synchronized double[] getThresholds(ThresholdStrategy strategy, SmoothingFilter filter,
+			StepCounterConfig config) {
+		String key = "thresholds " + strategy + " " + config.getThresholdWindow() + " " + config.getDeviations() + " "
+				+ filter;
+		double[] thresholds = (double[]) get(key);
+		if (thresholds == null) {
+			double[] signal = getSignal(filter);
+			thresholds = (double[]) put(key,
+					strategy.calculateThresholds(signal, times, new double[signal.length], config));
+		}
+		return thresholds;
+	}
+
+	/***
+	 * Counts the steps the way CountSteps.countStepsForMagnitudes does, from the
+	 * cached peaks and thresholds
+	 *
+	 * @param strategy how to calculate the thresholds
+	 * @return the number of steps
+	 */
+	public int countSteps(ThresholdStrategy strategy) {
+		return countSteps(strategy, null);
+	}
+
+	/***
+	 * Counts the steps in the smoothed signal, the way
+	 * CountSteps.countStepsForMagnitudes does with a filter
+	 *
+	 * @param strategy how to calculate the thresholds
+	 * @param filter the filter to smooth the magnitudes with, or null
+	 * @return the number of steps
+	 */
+	public int countSteps(ThresholdStrategy strategy, SmoothingFilter filter) {
+		return countSteps(strategy, filter, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Counts the steps in the signal with tuned parameters
+	 *
+	 * @param strategy how to calculate the thresholds
+	 * @param filter the filter to smooth the magnitudes with, or null
+	 * @param config the deadzone, threshold window and threshold limits to use
+	 * @return the number of steps
+	 */
+	public synchronized int countSteps(ThresholdStrategy strategy, SmoothingFilter filter, StepCounterConfig config) {
+		return CountSteps.countPeaksAboveThresholds(getPeaks(config.getDeadzone(), filter), getSignal(filter),
+				getThresholds(strategy, filter, config), strategy, config);
+	}
+
+	/***
+	 * Finds the steps in the signal and sends each one to a sink
+	 *
+	 * @param strategy how to calculate the thresholds
+	 * @param filter the filter to smooth the magnitudes with, or null
+	 * @param config the deadzone, threshold window and threshold limits to use
+	 * @param sink the sink to send the steps to
+	 * @return the number of steps
+	 */
+	public synchronized int findSteps(ThresholdStrategy strategy, SmoothingFilter filter, StepCounterConfig config,
+			StepSink sink) {
+		return CountSteps.findSteps(getPeaks(config.getDeadzone(), filter), getSignal(filter),
+				getThresholds(strategy, filter, config), times, strategy, config, sink);
+	}
+
+	/***
+	 * Returns how many times a series was found in the cache
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/***
+	 * Returns how many times a series had to be worked out
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	public synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/***
+	 * Drops every cached series
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		cachedBytes = 0;
+	}
+
+	private Object get(String key) {
+		Object value = cache.get(key);
+		if (value != null)
+			hits++;
+		else
+			misses++;
+		return value;
+	}
+
+	/***
+	 * Caches a series, then drops the series used longest ago until the cache fits
+	 */
+	private Object put(String key, Object value) {
+		Object old = cache.put(key, value);
+		if (old != null)
+			cachedBytes -= sizeOf(old);
+		cachedBytes += sizeOf(value);
+
+		Iterator<Map.Entry<String, Object>> eldest = cache.entrySet().iterator();
+		while (cachedBytes > maxBytes && eldest.hasNext()) {
+			cachedBytes -= sizeOf(eldest.next().getValue());
+			eldest.remove();
+		}
+		return value;
+	}
+
+	private static long sizeOf(Object value) {
+		// an array header is about 16 bytes
+		if (value instanceof double[])
+			return 16 + 8L * ((double[]) value).length;
+		if (value instanceof int[])
+			return 16 + 4L * ((int[]) value).length;
+		return 16;
+	}
+}
@@ -213,6 +213,17 @@ public class ArrayHelper {
 		return b.toString();
 	}
 
+	/***
+	 * Keeps every nth value. Nothing is filtered out first, so anything that
+	 * changes faster than the new rate can hold shows up as slower noise; use
+	 * Resampler to change the rate of sensor data.
+	 * 
+	 * @param data
+	 *            the values to take from
+	 * @param saveEveryNth
+	 *            how many values to skip between the ones kept
+	 * @return every saveEveryNth value of data, starting with the first
+	 */
 	public static double[] downSample(double[] data, int saveEveryNth) {
 		double[] output = new double[data.length / saveEveryNth];
 
@@ -2,26 +2,24 @@ import javax.swing.JFrame;
 import org.math.plot.Plot2DPanel;
 
 public class BasicPlotting {
-	public static double[][] sampleData;
 	public static String datafile = "data/64StepsInPocketJogging-out.csv";
 	
 	public static void main(String[] args) {
 		// Create data set
 		CSVData dataset = CSVData.createDataSet(datafile, 0);
 
-		// Get 2d array of all data
-		sampleData = dataset.getAllData();
-
-		double[] time = ArrayHelper.extractColumn(sampleData, 0);		
-		double[][] sensorData = ArrayHelper.extractColumns(sampleData, new int[] { 1, 2, 3, 4, 5, 6 });
+		// Columns are stored as arrays so these don't copy anything
+		double[] time = dataset.getColumn(0);
+		
+		// the counters and plots below share one set of magnitudes, peaks and thresholds
+		AnalysisContext analysis = AnalysisContext.of(dataset);
 		
-		int steps = CountSteps.countStepsByMagnitudes(sensorData, time);
-		int originalSteps = CountSteps.countSteps(sensorData, time);
+		int steps = analysis.countSteps(ThresholdStrategy.ADAPTIVE);
+		int originalSteps = analysis.countSteps(ThresholdStrategy.GLOBAL);
 		System.out.println("Fixed Step count: " + steps);
 		System.out.println("Original Step count: " + originalSteps);
 		
-		double[][] accel = ArrayHelper.extractColumns(sampleData, new int[] { 1, 2, 3 });
-		double[] mags = CountSteps.calculateMagnitudesFor(accel);
+		double[] mags = analysis.getMagnitudes();
 		
 		
 		double mean = CountSteps.calculateMean(mags);
@@ -38,9 +36,9 @@ public class BasicPlotting {
 		System.out.println("Deviation: " + CountSteps.calculateStandardDeviation(mags, CountSteps.calculateMean(mags)));
 		System.out.println("Threshold: " + threshold);
 		
-		double[] thresholdList = CountSteps.calculateThresholds(mags, time);
+		double[] thresholdList = analysis.getThresholds(ThresholdStrategy.ADAPTIVE);
 		
-		CountSteps.displayAllPeaksWithThreshold(CountSteps.findPeaks(mags, time), mags, thresholdList);
+		CountSteps.displayAllPeaksWithThreshold(analysis.getPeaks(), mags, thresholdList);
 		
 		Plot2DPanel plot = new Plot2DPanel();
 		
@@ -0,0 +1,334 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/***
+ * Runs every step counter over every labelled recording and compares the
+ * counts with the number of steps really taken.
+ *
+ * Recordings are found by walking the data folders, or the folders inside a
+ * zip file like data.zip, which is read without unpacking it. The real step
+ * count comes from the data_description.txt file in the same folder, or from
+ * the file name ("64StepsInHandJogging.csv") if the recording isn't described.
+ * Recordings with neither are skipped. The recordings are found and labelled
+ * by DatasetManifest, so -where can pick a subset by what their descriptions
+ * say, like "-where gait=jog -where phone_location=pocket", and -manifest keeps
+ * the index in a file along with statistics of every recording.
+ *
+ * The recordings are split across a fork-join pool, so loading and counting
+ * use every core. A file that can't be read is reported as an error without
+ * stopping the others.
+ *
+ * Usage: java BatchEvaluation [-threads n] [-manifest file] [-where field=value ...] [folder or zip ...]
+ */
+public class BatchEvaluation {
+	public static final String[] DEFAULT_FOLDERS = { "data", "Class data/testData", "myData" };
+	public static final String[] COUNTER_NAMES = { "byMagnitudes", "countSteps", "byFrequencies", "bySpectrum", "resampled" };
+
+	/***
+	 * A recording and the number of steps really taken in it
+	 */
+	public static class Recording {
+		public final File file; // the file, or the entry name if the recording is in a zip
+		public final ZipDataset zip; // null unless the recording is in a zip
+		public final double steps;
+
+		public Recording(File file, double steps) {
+			this(null, file, steps);
+		}
+
+		public Recording(ZipDataset zip, File file, double steps) {
+			this.file = file;
+			this.zip = zip;
+			this.steps = steps;
+		}
+
+		public String getPath() {
+			return zip == null ? file.getPath() : zip.getPath(file.getPath());
+		}
+
+		/***
+		 * Reads the recording with the reader for its layout (see RecordingReaders)
+		 *
+		 * @return the standard table
+		 * @throws IOException if the recording can't be read
+		 */
+		public CSVData read() throws IOException {
+			return zip == null ? RecordingReaders.read(file.getPath()) : zip.read(file.getPath());
+		}
+	}
+
+	/***
+	 * What the counters found for one recording
+	 */
+	public static class Result {
+		public final Recording recording;
+		public int numSamples;
+		public int[] counts; // one for each of COUNTER_NAMES
+		public long loadNanos;
+		public long countNanos;
+		public String error; // null unless the recording couldn't be evaluated
+
+		public Result(Recording recording) {
+			this.recording = recording;
+		}
+
+		/***
+		 * Returns how close a counter was, from 1 for the right count down to 0
+		 * for a count that is off by the whole number of steps or more
+		 *
+		 * @param counter the index of the counter in COUNTER_NAMES
+		 * @return the accuracy of the counter on this recording
+		 */
+		public double getAccuracy(int counter) {
+			return accuracy(counts[counter], recording.steps);
+		}
+	}
+
+	/***
+	 * Scores a count, from 1 for the right count down to 0 for a count that is
+	 * off by the whole number of steps or more
+	 *
+	 * @param count the number of steps counted
+	 * @param steps the number of steps really taken
+	 * @return the accuracy of the count
+	 */
+	public static double accuracy(int count, double steps) {
+		if (steps == 0)
+			return count == 0 ? 1 : 0;
+		return Math.max(0, 1 - Math.abs(count - steps) / steps);
+	}
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		String manifestPath = null;
+		List<DatasetManifest.Filter> filters = new ArrayList<DatasetManifest.Filter>();
+		List<String> folders = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-manifest")) {
+				manifestPath = args[++i];
+			} else if (args[i].equals("-where")) {
+				String[] condition = args[++i].split("=", 2);
+				filters.add(DatasetManifest.where(condition[0], condition.length > 1 ? condition[1] : ""));
+			} else {
+				folders.add(args[i]);
+			}
+		}
+		if (folders.isEmpty())
+			folders.addAll(Arrays.asList(DEFAULT_FOLDERS));
+
+		try (DatasetManifest manifest = DatasetManifest.scan(folders)) {
+			if (manifestPath != null) {
+				manifest.update(new File(manifestPath).exists() ? DatasetManifest.load(manifestPath) : null);
+				manifest.save(manifestPath);
+			}
+
+			List<Recording> recordings = new ArrayList<Recording>();
+			for (DatasetManifest.Entry entry : manifest.select(filters.toArray(new DatasetManifest.Filter[0])))
+				if (!Double.isNaN(entry.getSteps()))
+					recordings.add(new Recording(manifest.getZip(entry), new File(entry.getName()), entry.getSteps()));
+
+			long start = System.nanoTime();
+			Result[] results = evaluate(recordings, new ForkJoinPool(threads));
+			long wallNanos = System.nanoTime() - start;
+
+			printReport(results, wallNanos, threads);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * Finds every labelled recording in a folder and its subfolders
+	 *
+	 * @param folder the folder to search
+	 * @param recordings the list to add the recordings to
+	 */
+	public static void findRecordings(File folder, List<Recording> recordings) {
+		List<DatasetManifest.Entry> entries = new ArrayList<DatasetManifest.Entry>();
+		DatasetManifest.scan(folder, entries);
+		for (DatasetManifest.Entry entry : entries)
+			if (!Double.isNaN(entry.getSteps()))
+				recordings.add(new Recording(new File(entry.getName()), entry.getSteps()));
+	}
+
+	/***
+	 * Finds every labelled recording in a zip file. Each folder in the zip is
+	 * labelled by its own description files, like a folder on disk.
+	 *
+	 * @param zip the zip to search
+	 * @param recordings the list to add the recordings to
+	 * @throws IOException if a description can't be read
+	 */
+	public static void findRecordings(ZipDataset zip, List<Recording> recordings) throws IOException {
+		List<DatasetManifest.Entry> entries = new ArrayList<DatasetManifest.Entry>();
+		DatasetManifest.scan(zip, entries);
+		for (DatasetManifest.Entry entry : entries)
+			if (!Double.isNaN(entry.getSteps()))
+				recordings.add(new Recording(zip, new File(entry.getName()), entry.getSteps()));
+	}
+
+	/***
+	 * Evaluates the recordings on a pool, splitting the list in half until each
+	 * task has one recording, so the pool can balance big and small files
+	 *
+	 * @param recordings the recordings to evaluate
+	 * @param pool the pool to run on
+	 * @return one result for each recording, in the same order
+	 */
+	public static Result[] evaluate(List<Recording> recordings, ForkJoinPool pool) {
+		Result[] results = new Result[recordings.size()];
+		pool.invoke(new EvaluateTask(recordings, results, 0, results.length));
+		return results;
+	}
+
+	private static class EvaluateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Recording> recordings;
+		private final Result[] results;
+		private final int start, end;
+
+		EvaluateTask(List<Recording> recordings, Result[] results, int start, int end) {
+			this.recordings = recordings;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				results[start] = evaluate(recordings.get(start));
+			} else if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new EvaluateTask(recordings, results, start, middle),
+						new EvaluateTask(recordings, results, middle, end));
+			}
+		}
+	}
+
+	/***
+	 * Loads a recording with the reader for its layout (see RecordingReaders)
+	 * and runs every counter on it
+	 *
+	 * @param recording the recording to evaluate
+	 * @return the counts, or the error if the recording couldn't be read
+	 */
+	public static Result evaluate(Recording recording) {
+		Result result = new Result(recording);
+
+		try {
+			long start = System.nanoTime();
+			CSVData data = recording.read();
+			double[][] columns = data.getColumns(new int[] { ColumnMapping.TIME, ColumnMapping.ACCEL_X,
+					ColumnMapping.ACCEL_Y, ColumnMapping.ACCEL_Z });
+			long loaded = System.nanoTime();
+
+			double[] times = columns[0];
+			// the two peak counters share their magnitudes and peaks
+			AnalysisContext analysis = new AnalysisContext(columns[1], columns[2], columns[3], times);
+			double[] magnitudes = analysis.getMagnitudes();
+
+			result.numSamples = times.length;
+			result.counts = new int[] {
+					analysis.countSteps(ThresholdStrategy.ADAPTIVE),
+					analysis.countSteps(ThresholdStrategy.GLOBAL),
+					CountSteps.countStepsByFrequencies(magnitudes),
+					CountSteps.countStepsBySpectrum(magnitudes, times),
+					CountSteps.countStepsResampled(magnitudes, times, ThresholdStrategy.ADAPTIVE) };
+
+			result.loadNanos = loaded - start;
+			result.countNanos = System.nanoTime() - loaded;
+		} catch (Exception e) {
+			result.error = e.toString();
+			result.counts = null;
+		}
+		return result;
+	}
+
+	/***
+	 * Prints the count of each recording, then the accuracy of each counter and
+	 * the throughput
+	 *
+	 * @param results the results to report
+	 * @param wallNanos how long the whole evaluation took
+	 * @param threads the number of threads that were used
+	 */
+	public static void printReport(Result[] results, long wallNanos, int threads) {
+		List<Result> sorted = new ArrayList<Result>(Arrays.asList(results));
+		Collections.sort(sorted, new Comparator<Result>() {
+			@Override
+			public int compare(Result a, Result b) {
+				return a.recording.getPath().compareTo(b.recording.getPath());
+			}
+		});
+
+		StringBuilder header = new StringBuilder(String.format("%-70s %6s", "recording", "steps"));
+		for (String name : COUNTER_NAMES)
+			header.append(String.format(" %13s", name));
+		System.out.println(header);
+
+		int numCounters = COUNTER_NAMES.length;
+		double[] totalAccuracy = new double[numCounters];
+		double[] totalError = new double[numCounters];
+		int[] exact = new int[numCounters];
+		int evaluated = 0, failed = 0;
+		long totalSamples = 0, loadNanos = 0, countNanos = 0;
+
+		for (Result result : sorted) {
+			String path = result.recording.getPath();
+			if (result.error != null) {
+				System.out.println(String.format("%-70s %6s   error: %s", path, formatSteps(result.recording.steps),
+						result.error));
+				failed++;
+				continue;
+			}
+
+			StringBuilder line = new StringBuilder(String.format("%-70s %6s", path, formatSteps(result.recording.steps)));
+			for (int c = 0; c < numCounters; c++) {
+				double error = result.counts[c] - result.recording.steps;
+				line.append(String.format(" %5d (%5s)", result.counts[c], (error > 0 ? "+" : "") + formatSteps(error)));
+
+				totalAccuracy[c] += result.getAccuracy(c);
+				totalError[c] += Math.abs(error);
+				if (error == 0)
+					exact[c]++;
+			}
+			System.out.println(line);
+
+			evaluated++;
+			totalSamples += result.numSamples;
+			loadNanos += result.loadNanos;
+			countNanos += result.countNanos;
+		}
+
+		System.out.println();
+		System.out.println(evaluated + " recordings evaluated, " + failed + " could not be read");
+		for (int c = 0; c < numCounters && evaluated > 0; c++) {
+			System.out.println(String.format("%-14s accuracy %5.1f%%   mean error %6.2f steps   exact %d/%d",
+					COUNTER_NAMES[c], 100 * totalAccuracy[c] / evaluated, totalError[c] / evaluated, exact[c], evaluated));
+		}
+
+		double wallSeconds = wallNanos / 1e9;
+		System.out.println();
+		System.out.println(String.format("%d samples in %.3f s on %d threads: %.0f samples/sec", totalSamples,
+				wallSeconds, threads, totalSamples / wallSeconds));
+		if (countNanos > 0)
+			System.out.println(String.format("per thread: loading %.0f samples/sec, counting %.0f samples/sec",
+					totalSamples / (loadNanos / 1e9), totalSamples / (countNanos / 1e9)));
+	}
+
+	private static String formatSteps(double steps) {
+		return steps == Math.rint(steps) ? String.valueOf((long) steps) : String.valueOf(steps);
+	}
+}
@@ -0,0 +1,337 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/***
+ * Measures the throughput and allocation of the step counting code, on
+ * synthetic walks from 1K to 10M samples and on the recordings in data/.
+ *
+ * Each benchmark is run until it is warmed up, then timed for a fixed time.
+ * Throughput is reported in samples per second, and allocation in bytes per
+ * sample and MB per second, measured with the thread's allocation counter.
+ *
+ * This is a quick look that runs in one JVM, so its numbers move from run to
+ * run with the JIT and the heap. To compare a change, use the JMH benchmarks
+ * in benchmarks/, which run in several forked JVMs and report the error of
+ * each score (see benchmarks/pom.xml).
+ *
+ * Usage: java -Xmx4g Benchmark [-sizes 1000,10000,...] [-filter name] [-warmup ms] [-time ms]
+ */
+public class Benchmark {
+	public static final int[] DEFAULT_SIZES = { 1000, 10000, 100000, 1000000, 10000000 };
+	public static final String DATA_FOLDER = "data";
+
+	private static final int MIN_ITERATIONS = 3;
+	private static final double SAMPLE_RATE = 100; // Hz, the rate most of the recordings were logged at
+
+	// results are stored here so the JIT can't remove the work that made them
+	public static volatile Object sink;
+
+	private static long warmupNanos = 1000_000_000L;
+	private static long measureNanos = 2000_000_000L;
+	private static String filter = null;
+
+	/***
+	 * One run of the code being measured
+	 */
+	public interface Operation {
+		Object run() throws Exception;
+	}
+
+	/***
+	 * The measurements for one benchmark
+	 */
+	public static class Result {
+		public final String name;
+		public final long samplesPerOperation;
+		public final double nanosPerOperation;
+		public final double bytesPerOperation; // NaN if the JVM can't count allocations
+
+		public Result(String name, long samplesPerOperation, double nanosPerOperation, double bytesPerOperation) {
+			this.name = name;
+			this.samplesPerOperation = samplesPerOperation;
+			this.nanosPerOperation = nanosPerOperation;
+			this.bytesPerOperation = bytesPerOperation;
+		}
+
+		public double getSamplesPerSecond() {
+			return samplesPerOperation / (nanosPerOperation / 1e9);
+		}
+
+		public double getBytesPerSample() {
+			return bytesPerOperation / samplesPerOperation;
+		}
+
+		public double getAllocationRate() {
+			return bytesPerOperation / (nanosPerOperation / 1e9) / (1 << 20);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = DEFAULT_SIZES;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-sizes"))
+				sizes = parseSizes(args[++i]);
+			else if (args[i].equals("-filter"))
+				filter = args[++i];
+			else if (args[i].equals("-warmup"))
+				warmupNanos = Long.parseLong(args[++i]) * 1000_000L;
+			else if (args[i].equals("-time"))
+				measureNanos = Long.parseLong(args[++i]) * 1000_000L;
+		}
+
+		System.out.println("Magnitude kernel: " + MagnitudeKernel.get().getName());
+		System.out.println(String.format("%-45s %14s %12s %14s %12s", "benchmark", "samples/sec", "ns/sample",
+				"bytes/sample", "MB/sec"));
+
+		List<Result> results = new ArrayList<Result>();
+		for (int size : sizes)
+			runSyntheticBenchmarks(size, results);
+		runRecordingBenchmarks(new File(DATA_FOLDER), results);
+	}
+
+	/***
+	 * Benchmarks each stage of counting steps on a synthetic walk
+	 *
+	 * @param size the number of samples in the walk
+	 * @param results the list to add the results to
+	 */
+	public static void runSyntheticBenchmarks(int size, List<Result> results) {
+		double[][] walk = syntheticWalk(size, 42);
+		final double[] times = walk[0], x = walk[1], y = walk[2], z = walk[3];
+		final double[][] rows = ArrayHelper.transposeArray(new double[][] { x, y, z });
+
+		final double[] magnitudes = CountSteps.calculateMagnitudesFor(x, y, z);
+		final int[] rawPeaks = CountSteps.findRawPeaks(magnitudes);
+		final int[] peaks = new int[size];
+		String suffix = " " + formatSize(size);
+
+		run("calculateMagnitudesFor" + suffix, size, results, new Operation() {
+			public Object run() {
+				return CountSteps.calculateMagnitudesFor(rows);
+			}
+		});
+		run("calculateMagnitudesFor columns" + suffix, size, results, new Operation() {
+			public Object run() {
+				return CountSteps.calculateMagnitudesFor(x, y, z);
+			}
+		});
+		run("findPeaks" + suffix, size, results, new Operation() {
+			public Object run() {
+				return CountSteps.findPeaks(magnitudes, times);
+			}
+		});
+		run("clearExtraPeaks" + suffix, size, results, new Operation() {
+			public Object run() {
+				System.arraycopy(rawPeaks, 0, peaks, 0, size);
+				CountSteps.clearExtraPeaks(peaks, magnitudes, times, CountSteps.TIME_THRESHOLD);
+				return peaks;
+			}
+		});
+		run("calculateThresholds" + suffix, size, results, new Operation() {
+			public Object run() {
+				return CountSteps.calculateThresholds(magnitudes, times);
+			}
+		});
+		run("countStepsByMagnitudes" + suffix, size, results, new Operation() {
+			public Object run() {
+				return CountSteps.countStepsByMagnitudes(rows, times);
+			}
+		});
+		run("Resampler.resample" + suffix, size, results, new Operation() {
+			public Object run() {
+				return Resampler.resample(times, magnitudes, CountSteps.DETECTION_RATE);
+			}
+		});
+		run("countStepsResampled" + suffix, size, results, new Operation() {
+			public Object run() {
+				return CountSteps.countStepsResampled(magnitudes, times, ThresholdStrategy.ADAPTIVE);
+			}
+		});
+		final CadenceCounter cadenceCounter = new CadenceCounter();
+		run("CadenceCounter.countSteps" + suffix, size, results, new Operation() {
+			public Object run() {
+				return cadenceCounter.countSteps(magnitudes, times);
+			}
+		});
+	}
+
+	/***
+	 * Benchmarks loading and counting every recording in a folder. One
+	 * operation is one pass over all of them.
+	 *
+	 * @param folder the folder with the recordings
+	 * @param results the list to add the results to
+	 * @throws IOException if a binary copy of a recording can't be written
+	 */
+	public static void runRecordingBenchmarks(File folder, List<Result> results) throws IOException {
+		File[] files = folder.listFiles();
+		if (files == null)
+			return;
+
+		final List<String> paths = new ArrayList<String>();
+		final List<String> binaryPaths = new ArrayList<String>();
+		final List<double[][]> sensorData = new ArrayList<double[][]>();
+		final List<double[]> times = new ArrayList<double[]>();
+		long samples = 0;
+
+		for (File file : files) {
+			if (!file.getName().endsWith(".csv"))
+				continue;
+			CSVData data = CSVData.createDataSet(file.getPath(), 0);
+
+			File binary = File.createTempFile("benchmark", ".bin");
+			binary.deleteOnExit();
+			data.saveBinary(binary.getPath(), BinaryRecording.UNKNOWN_STEPS);
+
+			paths.add(file.getPath());
+			binaryPaths.add(binary.getPath());
+			sensorData.add(data.getAllData());
+			times.add(data.getColumn(0));
+			samples += data.getNumRows();
+		}
+		if (paths.isEmpty())
+			return;
+
+		String suffix = " (" + folder.getName() + "/)";
+		run("CSVData.createDataSet(path, 0)" + suffix, samples, results, new Operation() {
+			public Object run() {
+				Object last = null;
+				for (String path : paths)
+					last = CSVData.createDataSet(path, 0);
+				return last;
+			}
+		});
+		run("CSVData.createDataSet(path)" + suffix, samples, results, new Operation() {
+			public Object run() {
+				Object last = null;
+				for (String path : paths)
+					last = CSVData.createDataSet(path);
+				return last;
+			}
+		});
+		run("RecordingReaders.read" + suffix, samples, results, new Operation() {
+			public Object run() {
+				Object last = null;
+				try {
+					for (String path : paths)
+						last = RecordingReaders.read(path);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				return last;
+			}
+		});
+		run("CSVData.readBinary" + suffix, samples, results, new Operation() {
+			public Object run() {
+				Object last = null;
+				for (String path : binaryPaths)
+					last = CSVData.readBinary(path);
+				return last;
+			}
+		});
+		run("countStepsByMagnitudes" + suffix, samples, results, new Operation() {
+			public Object run() {
+				int steps = 0;
+				for (int i = 0; i < sensorData.size(); i++)
+					steps += CountSteps.countStepsByMagnitudes(sensorData.get(i), times.get(i));
+				return steps;
+			}
+		});
+	}
+
+	/***
+	 * Makes a recording of someone walking at about 1.8 steps a second, with
+	 * the phone tilted and some noise, sampled at 100 Hz
+	 *
+	 * @param size the number of samples
+	 * @param seed the seed for the noise, so runs can be compared
+	 * @return the columns time, x, y and z
+	 */
+	public static double[][] syntheticWalk(int size, long seed) {
+		Random random = new Random(seed);
+		double[] times = new double[size], x = new double[size], y = new double[size], z = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			double t = i * 1000.0 / SAMPLE_RATE;
+			double bounce = 0.3 * Math.sin(2 * Math.PI * 1.8 * t / 1000);
+
+			times[i] = t;
+			x[i] = 0.1 * bounce + 0.05 * random.nextGaussian();
+			y[i] = 0.9 + bounce + 0.05 * random.nextGaussian();
+			z[i] = -0.3 + 0.3 * bounce + 0.05 * random.nextGaussian();
+		}
+		return new double[][] { times, x, y, z };
+	}
+
+	/***
+	 * Warms up and measures one benchmark, and prints its result
+	 *
+	 * @param name the name of the benchmark
+	 * @param samples the number of samples one operation handles
+	 * @param results the list to add the result to
+	 * @param operation the code to measure
+	 */
+	public static void run(String name, long samples, List<Result> results, Operation operation) {
+		if (filter != null && !name.contains(filter))
+			return;
+
+		try {
+			long end = System.nanoTime() + warmupNanos;
+			for (int i = 0; i < MIN_ITERATIONS || System.nanoTime() < end; i++)
+				sink = operation.run();
+
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			long elapsed;
+			int operations = 0;
+			do {
+				sink = operation.run();
+				operations++;
+				elapsed = System.nanoTime() - start;
+			} while (operations < MIN_ITERATIONS || elapsed < measureNanos);
+			long allocated = allocatedBytes() - allocatedBefore;
+
+			double bytes = allocatedBefore < 0 ? Double.NaN : (double) allocated / operations;
+			Result result = new Result(name, samples, (double) elapsed / operations, bytes);
+			results.add(result);
+
+			System.out.println(String.format("%-45s %14.0f %12.2f %14.2f %12.1f", name, result.getSamplesPerSecond(),
+					result.nanosPerOperation / samples, result.getBytesPerSample(), result.getAllocationRate()));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * Returns the number of bytes the current thread has allocated so far
+	 *
+	 * @return the number of bytes, or -1 if the JVM doesn't count them
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	private static int[] parseSizes(String list) {
+		String[] parts = list.split(",");
+		int[] sizes = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+			sizes[i] = Integer.parseInt(parts[i].trim());
+		return sizes;
+	}
+
+	private static String formatSize(long samples) {
+		if (samples >= 1000000 && samples % 1000000 == 0)
+			return samples / 1000000 + "M";
+		if (samples >= 1000 && samples % 1000 == 0)
+			return samples / 1000 + "K";
+		return String.valueOf(samples);
+	}
+}
@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * A compact binary file for a recording, so the same data can be analysed
+ * again without parsing text. Reading one is a memory-mapped bulk copy into
+ * the columns of a CSVData.
+ *
+ * Layout (all little-endian):
+ * <pre>
+ * "STEP"                 4 bytes
+ * version                int
+ * number of columns      int
+ * number of rows         int
+ * bytes per value        int (8 for doubles, 4 for floats)
+ * sample rate in Hz      double (NaN if unknown)
+ * steps taken            int (-1 if unknown)
+ * column names           for each column: an int byte length, then UTF-8 bytes
+ * padding                zeros up to a multiple of 8 bytes
+ * values                 column after column, each numRows values long
+ * </pre>
+ */
+public class BinaryRecording {
+	public static final int UNKNOWN_STEPS = -1;
+
+	private static final byte[] MAGIC = { 'S', 'T', 'E', 'P' };
+	private static final int VERSION = 1;
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+
+	private final CSVData data;
+	private final double sampleRate;
+	private final int stepCount;
+
+	public BinaryRecording(CSVData data, double sampleRate, int stepCount) {
+		this.data = data;
+		this.sampleRate = sampleRate;
+		this.stepCount = stepCount;
+	}
+
+	public CSVData getData() {
+		return data;
+	}
+
+	/***
+	 * Returns the sample rate the recording was logged at
+	 *
+	 * @return the sample rate in Hz, or NaN if it is not known
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/***
+	 * Returns the number of steps actually taken during the recording
+	 *
+	 * @return the number of steps, or UNKNOWN_STEPS
+	 */
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	/***
+	 * Writes the recording with every value stored as a double
+	 *
+	 * @param filepath the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(String filepath) throws IOException {
+		write(filepath, false);
+	}
+
+	/***
+	 * Writes the recording
+	 *
+	 * @param filepath the file to write
+	 * @param useFloats true to store values as floats, which halves the size but loses precision
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(String filepath, boolean useFloats) throws IOException {
+		String[] names = data.getColumnTitles();
+		int numRows = data.getNumRows();
+		int valueSize = useFloats ? 4 : 8;
+
+		byte[][] nameBytes = new byte[names.length][];
+		int headerSize = MAGIC.length + 5 * 4 + 8;
+		for (int i = 0; i < names.length; i++) {
+			nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+			headerSize += 4 + nameBytes[i].length;
+		}
+		headerSize = (headerSize + 7) / 8 * 8;
+
+		ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(names.length);
+		header.putInt(numRows);
+		header.putInt(valueSize);
+		header.putDouble(sampleRate);
+		header.putInt(stepCount);
+		for (byte[] name : nameBytes) {
+			header.putInt(name.length);
+			header.put(name);
+		}
+		header.position(headerSize);
+		header.flip();
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for (int c = 0; c < names.length; c++) {
+				double[] column = data.getColumn(c);
+
+				for (int r = 0; r < numRows; r++) {
+					if (buffer.remaining() < valueSize) {
+						buffer.flip();
+						writeFully(channel, buffer);
+						buffer.clear();
+					}
+					if (useFloats)
+						buffer.putFloat((float) column[r]);
+					else
+						buffer.putDouble(column[r]);
+				}
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+		}
+	}
+
+	/***
+	 * Reads a recording written by write
+	 *
+	 * @param filepath the file to read
+	 * @return the recording
+	 * @throws IOException if the file can't be read or is not a recording
+	 */
+	public static BinaryRecording read(String filepath) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+			Header header = readHeader(channel, filepath);
+
+			double[][] columns = new double[header.names.length][header.numRows];
+			long columnSize = (long) header.numRows * header.valueSize;
+			for (int c = 0; c < columns.length; c++) {
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, header.dataOffset + c * columnSize,
+						columnSize);
+				mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+				if (header.valueSize == 8) {
+					mapped.asDoubleBuffer().get(columns[c]);
+				} else {
+					for (int r = 0; r < header.numRows; r++)
+						columns[c][r] = mapped.getFloat();
+				}
+			}
+
+			return new BinaryRecording(CSVData.fromColumns(filepath, header.names, columns), header.sampleRate,
+					header.stepCount);
+		}
+	}
+
+	/***
+	 * Reads a recording written by write from a stream, like an entry of a zip
+	 * file, a buffer at a time. The stream is not closed.
+	 *
+	 * @param name the name of the recording, for the table and error messages
+	 * @param in the stream, at the start of the recording
+	 * @return the recording
+	 * @throws IOException if the stream can't be read or is not a recording
+	 */
+	public static BinaryRecording read(String name, InputStream in) throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(in);
+		Header header = readHeader(channel, name);
+		readFully(channel, ByteBuffer.allocate((int) (header.dataOffset - header.size)));
+
+		double[][] columns = new double[header.names.length][header.numRows];
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		int valuesPerBuffer = READ_BUFFER_SIZE / header.valueSize;
+		for (int c = 0; c < columns.length; c++) {
+			for (int r = 0; r < header.numRows; ) {
+				int n = Math.min(header.numRows - r, valuesPerBuffer);
+				buffer.clear();
+				buffer.limit(n * header.valueSize);
+				readFully(channel, buffer);
+				buffer.flip();
+
+				if (header.valueSize == 8) {
+					buffer.asDoubleBuffer().get(columns[c], r, n);
+				} else {
+					for (int i = 0; i < n; i++)
+						columns[c][r + i] = buffer.getFloat();
+				}
+				r += n;
+			}
+		}
+
+		return new BinaryRecording(CSVData.fromColumns(name, header.names, columns), header.sampleRate,
+				header.stepCount);
+	}
+
+	/***
+	 * The fixed fields and column names at the start of a recording
+	 */
+	private static class Header {
+		String[] names;
+		int numRows;
+		int valueSize;
+		double sampleRate;
+		int stepCount;
+		long size; // bytes read so far
+		long dataOffset; // where the values start, after the padding
+	}
+
+	/***
+	 * Reads everything before the padding, from the start of the channel
+	 */
+	private static Header readHeader(ReadableByteChannel channel, String name) throws IOException {
+		ByteBuffer fixed = ByteBuffer.allocate(MAGIC.length + 5 * 4 + 8).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, fixed);
+		fixed.flip();
+
+		for (byte b : MAGIC)
+			if (fixed.get() != b)
+				throw new IOException(name + " is not a binary recording");
+		int version = fixed.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported binary recording version " + version + " in " + name);
+
+		Header header = new Header();
+		header.names = new String[fixed.getInt()];
+		header.numRows = fixed.getInt();
+		header.valueSize = fixed.getInt();
+		header.sampleRate = fixed.getDouble();
+		header.stepCount = fixed.getInt();
+		if (header.valueSize != 4 && header.valueSize != 8)
+			throw new IOException("Unsupported value size " + header.valueSize + " in " + name);
+
+		long offset = fixed.capacity();
+		ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < header.names.length; i++) {
+			length.clear();
+			readFully(channel, length);
+			length.flip();
+			ByteBuffer bytes = ByteBuffer.allocate(length.getInt());
+			readFully(channel, bytes);
+			header.names[i] = new String(bytes.array(), StandardCharsets.UTF_8);
+			offset += 4 + bytes.capacity();
+		}
+		header.size = offset;
+		header.dataOffset = (offset + 7) / 8 * 8;
+		return header;
+	}
+
+	/***
+	 * Checks the first bytes of a file for the mark every binary recording starts with
+	 *
+	 * @param head the first bytes of the file
+	 * @param length the number of bytes in head that were read
+	 * @return true if the file is a binary recording
+	 */
+	public static boolean isBinaryRecording(byte[] head, int length) {
+		if (length < MAGIC.length)
+			return false;
+		for (int i = 0; i < MAGIC.length; i++)
+			if (head[i] != MAGIC[i])
+				return false;
+		return true;
+	}
+
+	/***
+	 * Estimates the sample rate from the time column
+	 *
+	 * @param times the time of each sample in milliseconds
+	 * @return the average number of samples per second, or NaN if there are too few samples
+	 */
+	public static double estimateSampleRate(double[] times) {
+		if (times.length < 2 || times[times.length - 1] == times[0])
+			return Double.NaN;
+		return (times.length - 1) * 1000.0 / (times[times.length - 1] - times[0]);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0)
+				throw new IOException("Binary recording ended early");
+		}
+	}
+}
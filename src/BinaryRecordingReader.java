@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/***
+ * Reads binary recordings written by BinaryRecording, finding their columns by
+ * name like a text file, so a binary copy of any layout can be read.
+ */
+public class BinaryRecordingReader implements RecordingReader {
+
+	@Override
+	public String getName() {
+		return "binary";
+	}
+
+	@Override
+	public int sniff(String filename, byte[] head, int length) {
+		return BinaryRecording.isBinaryRecording(head, length) ? 100 : 0;
+	}
+
+	@Override
+	public CSVData read(String filepath) throws IOException {
+		return toTable(filepath, BinaryRecording.read(filepath).getData());
+	}
+
+	@Override
+	public CSVData read(String name, InputStream in, long size) throws IOException {
+		try {
+			return toTable(name, BinaryRecording.read(name, in).getData());
+		} finally {
+			in.close();
+		}
+	}
+
+	private static CSVData toTable(String filepath, CSVData data) throws IOException {
+		String[] names = data.getColumnTitles();
+
+		ColumnMapping mapping = ColumnMapping.byName(names);
+		if (!mapping.hasAcceleration())
+			mapping = ColumnMapping.byPosition(names.length);
+		if (!mapping.hasAcceleration())
+			throw new IOException("No time and acceleration columns in " + filepath);
+
+		int[] sources = mapping.getSourceColumns();
+		double[][] columns = new double[sources.length][];
+		for (int i = 0; i < sources.length; i++)
+			columns[i] = data.getColumn(sources[i]);
+		return ColumnMapping.toTable(filepath, columns);
+	}
+}
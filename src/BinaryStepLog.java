@@ -0,0 +1,164 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Writes step events to a compact binary file, 16 bytes an event, and reads
+ * them back into any StepSink.
+ *
+ * Layout (all little-endian):
+ * <pre>
+ * "STEV"                 4 bytes
+ * version                int
+ * events                 until the end of the file, each:
+ *   time                 double, in milliseconds
+ *   magnitude            float
+ *   confidence           float
+ * </pre>
+ *
+ * The number of events isn't stored, so a log can be appended to. A last
+ * event that was only partly written is ignored when reading, and cut off
+ * before appending so the new events line up.
+ */
+public class BinaryStepLog implements StepSink {
+	public static final int EVENT_BYTES = 16;
+
+	private static final byte[] MAGIC = { 'S', 'T', 'E', 'V' };
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 8;
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	private final OutputStream out;
+	private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private IOException error; // the first error, thrown from close
+
+	public BinaryStepLog(String filepath) throws IOException {
+		this(filepath, false);
+	}
+
+	/***
+	 * Opens a log for writing
+	 *
+	 * @param filepath the file to write
+	 * @param append true to add to the events already in the file, false to replace it
+	 * @throws IOException if the file can't be opened, or isn't a step log when appending
+	 */
+	public BinaryStepLog(String filepath, boolean append) throws IOException {
+		Path path = Paths.get(filepath);
+		boolean hasHeader = append && Files.exists(path) && Files.size(path) > 0;
+		if (hasHeader) {
+			try (InputStream in = Files.newInputStream(path)) {
+				readHeader(new DataInputStream(in), filepath);
+			}
+			// a crash may have left half an event at the end, which would shift every event after it
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				long events = (channel.size() - HEADER_BYTES) / EVENT_BYTES;
+				channel.truncate(HEADER_BYTES + events * EVENT_BYTES);
+			}
+			out = Files.newOutputStream(path, StandardOpenOption.APPEND);
+		} else {
+			out = Files.newOutputStream(path);
+			buffer.put(MAGIC).putInt(VERSION);
+		}
+	}
+
+	@Override
+	public void onStep(double time, double magnitude, double confidence) {
+		if (buffer.remaining() < EVENT_BYTES)
+			flushBuffer();
+		buffer.putDouble(time).putFloat((float) magnitude).putFloat((float) confidence);
+	}
+
+	private void flushBuffer() {
+		if (error == null) {
+			try {
+				out.write(buffer.array(), 0, buffer.position());
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (error == null)
+				error = e;
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/***
+	 * Reads a log and passes every event in it to a sink
+	 *
+	 * @param filepath the log
+	 * @param sink the sink, which is not closed
+	 * @return the number of events read
+	 * @throws IOException if the file can't be read or isn't a step log
+	 */
+	public static long read(String filepath, StepSink sink) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(filepath)), WRITE_BUFFER_SIZE)) {
+			readHeader(new DataInputStream(in), filepath);
+
+			byte[] bytes = new byte[EVENT_BYTES];
+			ByteBuffer event = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			long count = 0;
+			while (readFully(in, bytes)) {
+				event.clear();
+				sink.onStep(event.getDouble(), event.getFloat(), event.getFloat());
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/***
+	 * Checks the start of a log
+	 */
+	private static void readHeader(DataInputStream in, String filepath) throws IOException {
+		byte[] header = new byte[HEADER_BYTES];
+		try {
+			in.readFully(header);
+		} catch (EOFException e) {
+			throw new IOException(filepath + " is not a step log");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+		for (byte b : MAGIC)
+			if (buffer.get() != b)
+				throw new IOException(filepath + " is not a step log");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported step log version " + version + " in " + filepath);
+	}
+
+	/***
+	 * Reads a whole event
+	 *
+	 * @return false at the end of the file, or if the last event was cut off
+	 */
+	private static boolean readFully(InputStream in, byte[] bytes) throws IOException {
+		int read = 0;
+		while (read < bytes.length) {
+			int n = in.read(bytes, read, bytes.length - read);
+			if (n < 0)
+				return false;
+			read += n;
+		}
+		return true;
+	}
+}
@@ -2,67 +2,157 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
+/***
+ * Sensor data loaded from a file. The values are stored one contiguous array
+ * per column, so reading a column doesn't copy anything and scans over a
+ * channel stay in one block of memory.
+ */
 public class CSVData {
 	private static boolean DEBUG = false;
-	private double[][] rawData;
 
-	private CSVData(double[][] data) {
-		rawData = data;
+	private CSVData(String filepath, String[] columnNames, double[][] columns) {
+		this.filePathToCSV = filepath;
+		this.columnNames = columnNames;
+		this.columns = columns;
+		this.numRows = columns.length == 0 ? 0 : columns[0].length;
+	}
+	
+	/***
+	 * Creates a CSVData object around columns that are already in memory. 
+	 * The columns are used as they are, not copied.
+	 * 
+	 * @param filepath the file the data came from
+	 * @param columnNames the names of the columns
+	 * @param columns one array per column, all the same length
+	 * @return a CSVData object for the columns
+	 */
+	static CSVData fromColumns(String filepath, String[] columnNames, double[][] columns) {
+		return new CSVData(filepath, columnNames, columns);
+	}
+	
+	/***
+	 * Reads a file saved with saveBinary. This skips all text parsing, so it is 
+	 * the fast way to load the same data again.
+	 * 
+	 * @param filepath the binary file to read
+	 * @return a CSVData object for that file
+	 */
+	public static CSVData readBinary(String filepath) {
+		try {
+			return BinaryRecording.read(filepath).getData();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new CSVData(filepath, new String[0], new double[0][]);
+		}
 	}
 	
 	public static CSVData createDataSet(String filepath, int linesToSkip) {
 		debug("Reading file: " + filepath);
-		
-		String data = readFileAsString(filepath);
-		String[] lines = data.split("\n");
-		
-		debug("Reading " + lines.length + " total lines from file");
 		debug("Using index " + (linesToSkip) + " as header row");
 		
-		String headerLine = lines[linesToSkip];
-		debug("Headers: " + headerLine);
-		
-		String[] headers = headerLine.split(",");
-		debug("Parsed header line into: " + headers.length + " total columns");
-		
-		int startColumn = 0;
-		return createDataSet(filepath, linesToSkip + 1, headers, startColumn);
+		try (CSVReader reader = new CSVReader(filepath)) {
+			reader.skipLines(linesToSkip);
+			String headerLine = reader.readLine();
+			debug("Headers: " + headerLine);
+			
+			String[] headers = headerLine.split(",");
+			debug("Parsed header line into: " + headers.length + " total columns");
+			
+			return new CSVData(filepath, headers, reader.readColumns(CSVReader.firstColumns(headers.length)));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new CSVData(filepath, new String[0], new double[0][]);
+		}
 	}
 	
 	public static CSVData createDataSet(String filepath, int linesToSkip, String[] columnHeaders, int startColumn) {
 		debug("Reading file: " + filepath);
 		
-		String data = readFileAsString(filepath);
-		String[] lines = data.split("\n");
-		
-		debug("Reading " + lines.length + " total lines from file");
-		
 		int numColumns = columnHeaders.length;
 		debug("Reading " + numColumns + " total columns");
 		
-		int startRow = linesToSkip;
+		int[] sourceColumns = new int[numColumns - startColumn];
+		for (int j = startColumn; j < numColumns; j++)
+			sourceColumns[j - startColumn] = j;
 		
-		// create storage for data
-		double[][] numdata = new double[lines.length - linesToSkip][numColumns];
-
-		for (int r = startRow; r < lines.length; r++) {
-			String line = lines[r];
-			String[] coords = line.split(",");
+		double[][] read = readColumns(filepath, linesToSkip, sourceColumns);
+		int numRows = read.length == 0 ? 0 : read[0].length;
+		
+		// keep one column per header, the columns past the end of the data stay 0
+		double[][] numdata = new double[numColumns][];
+		for (int j = 0; j < numColumns; j++)
+			numdata[j] = j < read.length ? read[j] : new double[numRows];
 
-			for (int j = startColumn; j < numColumns; j++) {
-				if (coords[j].endsWith("#")) coords[j] = coords[j].substring(0, coords[j].length()-1);
-				double val = Double.parseDouble(coords[j]);
-				numdata[r - 1][j - startColumn] = val;
+		return new CSVData(filepath, columnHeaders, numdata);
+	}
+	
+	/***
+	 * Returns a new CSVData object for a file, finding the column names by itself. 
+	 * Any comment or title lines before the data are skipped, and the last one of 
+	 * them is used as the column names if it has one name per column. Otherwise the 
+	 * columns are called "col 0", "col 1", ...
+	 * 
+	 * @param filepath the file to read
+	 * @return a CSVData object for that file
+	 */
+	public static CSVData createDataSet(String filepath) {
+		debug("Reading file: " + filepath);
+		
+		try (CSVReader reader = new CSVReader(filepath)) {
+			String headerLine = reader.readHeader();
+			int numColumns = reader.countFields();
+			debug("Headers: " + headerLine);
+			
+			String[] headers = headerLine == null ? null : headerLine.split(",");
+			if (headers == null || headers.length != numColumns) {
+				headers = new String[numColumns];
+				for (int i = 0; i < numColumns; i++)
+					headers[i] = "col " + i;
 			}
+			double[][] data = reader.readColumns(CSVReader.firstColumns(numColumns));
+			
+			return new CSVData(filepath, headers, data);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new CSVData(filepath, new String[0], new double[0][]);
+		}
+	}
+	
+	/***
+	 * Reads columns from a file, printing the error and returning no data if the 
+	 * file can't be read
+	 * 
+	 * @param filepath the file to read
+	 * @param linesToSkip the number of lines before the data
+	 * @param sourceColumns the columns in the file to keep
+	 * @return the columns that were read
+	 */
+	private static double[][] readColumns(String filepath, int linesToSkip, int[] sourceColumns) {
+		try {
+			return CSVReader.readColumns(filepath, linesToSkip, sourceColumns);
+		} catch (IOException e) {
+			e.printStackTrace();
+			double[][] empty = new double[sourceColumns.length][];
+			for (int i = 0; i < empty.length; i++)
+				empty[i] = new double[0];
+			return empty;
 		}
-
-		return new CSVData(numdata);
 	}
 	
+	/***
+	 * Returns all the data as rows. This builds a new 2d array, so use getColumn 
+	 * or getColumns when only some of the data is needed.
+	 * 
+	 * @return a 2d array where each row is a sample and each column a sensor
+	 */
 	public double[][] getAllData() {
-		return rawData;
+		return ArrayHelper.transposeArray(columns);
 	}
 	
 	
@@ -78,19 +168,13 @@ public class CSVData {
 	}
 	
 	public static String readFileAsString(String filepath) {
-		StringBuilder output = new StringBuilder();
-
-		try (Scanner scanner = new Scanner(new File(filepath))) {
-
-			while (scanner.hasNext()) {
-				String line = scanner.nextLine();
-				output.append(line + System.getProperty("line.separator"));
-			}
+		try {
+			return new String(Files.readAllBytes(Paths.get(filepath)), StandardCharsets.UTF_8);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 
-		return output.toString();
+		return "";
 	}
 	
 	
@@ -102,7 +186,7 @@ public class CSVData {
 	
 	private int numRows;
 	private String filePathToCSV;
-	private double[][] data;
+	private double[][] columns; // columns[c][r] is the value in row r of column c
 	private String[] columnNames;
 	
 	/***
@@ -117,28 +201,11 @@ public class CSVData {
 	public CSVData(String filepath, int numLinesToIgnore, String[] columnNames) {
 		this.filePathToCSV = filepath;
 
-		String dataString = readFileAsString(filepath);
-		String[] lines = dataString.split("\n");
-
-		// number of data points
-		int n = lines.length - numLinesToIgnore;
-		this.numRows = n;
-		int numColumns = columnNames.length;
-
 		// create storage for column names
 		this.columnNames = columnNames;
 
-		// create storage for data
-		this.data = new double[n][numColumns];
-		for (int i = 0; i < lines.length - numLinesToIgnore; i++) {
-			String line = lines[numLinesToIgnore + i];
-			String[] coords = line.split(",");
-			for (int j = 0; j < numColumns; j++) {
-				if (coords[j].endsWith("#")) coords[j] = coords[j].substring(0, coords[j].length()-1);
-				double val = Double.parseDouble(coords[j]);
-				data[i][j] = val;
-			}
-		}
+		this.columns = readColumns(filepath, numLinesToIgnore, CSVReader.firstColumns(columnNames.length));
+		this.numRows = columns.length == 0 ? 0 : columns[0].length;
 	}
 	
 	/***
@@ -153,32 +220,19 @@ public class CSVData {
 	public CSVData(String filepath, int numLinesToIgnore) {
 		this.filePathToCSV = filepath;
 
-		String dataString = readFileAsString(filepath);
-		String[] lines = dataString.split("\n");
-
-		// create storage for column names
-		String[] colNames = getColumnNames(lines[numLinesToIgnore]);
-		this.columnNames = colNames;
-		
-		numLinesToIgnore++;
-		
-		// number of data points
-		int n = lines.length - numLinesToIgnore;
-		this.numRows = n;
-		int numColumns = colNames.length;
-
-		
-		// create storage for data
-		this.data = new double[n][numColumns];
-		for (int i = 0; i < lines.length - numLinesToIgnore; i++) {
-			String line = lines[numLinesToIgnore + i];
-			String[] coords = line.split(",");
-			for (int j = 0; j < numColumns; j++) {
-				if (coords[j].endsWith("#")) coords[j] = coords[j].substring(0, coords[j].length()-1);
-				double val = Double.parseDouble(coords[j]);
-				data[i][j] = val;
-			}
+		try (CSVReader reader = new CSVReader(filepath)) {
+			reader.skipLines(numLinesToIgnore);
+			
+			// create storage for column names
+			this.columnNames = getColumnNames(reader.readLine());
+			
+			this.columns = reader.readColumns(CSVReader.firstColumns(columnNames.length));
+		} catch (IOException e) {
+			e.printStackTrace();
+			this.columnNames = new String[0];
+			this.columns = new double[0][];
 		}
+		this.numRows = columns.length == 0 ? 0 : columns[0].length;
 	}
 	
 	/***
@@ -208,47 +262,45 @@ public class CSVData {
 	}
 	
 	/***
-	 * Creates a CSVData object specifically for data from powerSense
+	 * Creates a CSVData object specifically for data from powerSense, with the 
+	 * user acceleration and the rotation rate. Use RecordingReaders.read to get 
+	 * the whole acceleration, with gravity.
 	 * 
 	 * @param filepath
 	 */
 	public CSVData(String filepath) {
 		this.filePathToCSV = filepath;
 
-		String dataString = readFileAsString(filepath);
-		String[] lines = dataString.split("\n");
-
 		// create storage for column names
-		this.columnNames = new String[] {"time(ms)", "gyro x", "gyro y", "gyro z", 
-				"accel x", "accel y", "accel z"};
+		this.columnNames = new String[] {"time(ms)", "accel x", "accel y", "accel z", 
+				"gyro x", "gyro y", "gyro z"};
 		
-		// number of data points
-		int n = lines.length - 1;
-		this.numRows = n;
-		int numColumns = 13;
-
-		// create storage for data
-		this.data = new double[n][this.columnNames.length];	
-		for (int i = 0; i < lines.length - 1; i++) {
-			String line = lines[1 + i];
-			String[] coords = line.split(",");
-			int currentCol = 0; 
-			
-			for (int j = 0; j < numColumns; j++) {
-				if (coords[j].endsWith("#")) coords[j] = coords[j].substring(0, coords[j].length()-1);
-				if (j != 1 && j != 2 && j != 3 && j != 7 && j != 8 && j != 9 && j != 13 && j != 14 && 
-						j != 15 && j != 16 && j != 17 && j != 18 && j != 19 && j != 20) {
-					double val = Double.parseDouble(coords[j]);
-					data[i][currentCol++] = val;
-				}
-			}
-		}
+		// timestamp, user acceleration x/y/z and rotation rate x/y/z
+		this.columns = readColumns(filepath, 1, findPowerSenseColumns(filepath));
+		this.numRows = columns[0].length;
 		
 		this.correctTime();
-		
-		//re-orders the columns in the order of acceleration then gryo
-		for (int i = 1; i < 4; i++) 
-			swapColumns(i, i+3);
+	}
+	
+	/***
+	 * Finds the columns of a PowerSense file by their names, falling back to 
+	 * where the app has always put them
+	 * 
+	 * @param filepath the PowerSense file
+	 * @return the time, user acceleration and rotation rate columns
+	 */
+	private static int[] findPowerSenseColumns(String filepath) {
+		try (CSVReader reader = new CSVReader(filepath)) {
+			String header = reader.readLine();
+			if (header != null) {
+				ColumnMapping mapping = ColumnMapping.byName(header.split(","));
+				if (mapping.hasAcceleration() && mapping.hasGyro())
+					return mapping.getSourceColumns();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return new int[] {0, 10, 11, 12, 4, 5, 6};
 	}
 	
 	/***
@@ -273,11 +325,9 @@ public class CSVData {
 		this.columnNames[index1] = this.columnNames[index2];
 		this.columnNames[index2] = temp;
 		
-		double[] col1 = this.getColumn(index1);
-		double[] col2 = this.getColumn(index2);
-		
-		this.setColumn(index1, col2);
-		this.setColumn(index2, col1);
+		double[] col1 = this.columns[index1];
+		this.columns[index1] = this.columns[index2];
+		this.columns[index2] = col1;
 	}
 	
 	/***
@@ -291,28 +341,29 @@ public class CSVData {
 	}
 
 	/***
-	 * Returns all the values in a row
+	 * Returns a copy of all the values in a row
 	 * 
 	 * @param rowIndex the index of the row
 	 * @return all the values in a row
 	 */
 	public double[] getRow(int rowIndex) {
-		return data[rowIndex];
+		double[] rowValues = new double[columns.length];
+		
+		for (int j = 0; j < columns.length; j++) 
+			rowValues[j] = columns[j][rowIndex];
+		
+		return rowValues;
 	}
 	
 	/***
-	 * Returns all the values in a column
+	 * Returns all the values in a column. The array is the one the data is stored in, 
+	 * not a copy, so changes to it change the data.
 	 * 
 	 * @param columnIndex the index of the column
 	 * @return all the values in a column
 	 */
 	public double[] getColumn(int columnIndex) {
-		double[] columnValues = new double[data.length];
-		
-		for (int i = 0; i < data.length; i++) 
-			columnValues[i] = data[i][columnIndex];
-		
-		return columnValues;
+		return columns[columnIndex];
 	}
 	
 	/***
@@ -335,10 +386,10 @@ public class CSVData {
 	 * @return all the values from multiple rows
 	 */
 	public double[][] getRows(int[] rowIndexes) {
-		double[][] output = new double[data.length][rowIndexes.length];
+		double[][] output = new double[rowIndexes.length][];
 		
 		for (int i = 0; i < rowIndexes.length; i++) 
-			output[i] = data[rowIndexes[i]];
+			output[i] = getRow(rowIndexes[i]);
 		
 		return output;
 	}
@@ -353,23 +404,23 @@ public class CSVData {
 	 */
 	public double[][] getRows(int startIndex, int endIndex) {
 		int difference = endIndex - startIndex, currentIndex = 0;
-		double[][] output = new double[data.length][difference];
+		double[][] output = new double[difference + 1][];
 		
 		for (int i = startIndex; i <= endIndex; i++) 
-			output[currentIndex++] = data[i];
+			output[currentIndex++] = getRow(i);
 		
 		return output;
 	}
 	
 	/***
-	 * Returns all the values in columns. 
-	 * It keeps the columns sorted.
+	 * Returns all the values in columns, as an array of columns. 
+	 * It keeps the columns sorted. The columns are not copied.
 	 * 
 	 * @param columnIndexes the indexes of the columns to return
 	 * @return the values in the columns specified
 	 */
 	public double[][] getColumns(int[] columnIndexes) {
-		double[][] output = new double[data[0].length][columnIndexes.length];
+		double[][] output = new double[columnIndexes.length][];
 		
 		for (int i = 0; i < columnIndexes.length; i++) 
 			output[i] = getColumn(columnIndexes[i]);
@@ -378,16 +429,16 @@ public class CSVData {
 	}
 	
 	/***
-	 * Returns all the values in columns. 
-	 * It keeps the columns sorted.
+	 * Returns all the values in columns, as an array of columns. 
+	 * It keeps the columns sorted. The columns are not copied.
 	 * 
 	 * @param startIndex the index to start from
-	 * @param endIndex the index to end at
+	 * @param endIndex the index to end at (not included)
 	 * @return the values in the columns specified
 	 */
 	public double[][] getColumns(int startIndex, int endIndex) {
 		int difference = endIndex-startIndex;
-		double[][] output = new double[data[0].length][difference];
+		double[][] output = new double[difference][];
 		
 		for (int i = 0; i < difference; i++) 
 			output[i] = getColumn(startIndex+i);
@@ -396,8 +447,8 @@ public class CSVData {
 	}
 	
 	/***
-	 * Returns all the values in columns. 
-	 * It keeps the columns sorted.
+	 * Returns all the values in columns, as an array of columns. 
+	 * It keeps the columns sorted. The columns are not copied.
 	 * 
 	 * @param colNames the names of the columns to return values from
 	 * @return the values in the columns specified
@@ -419,7 +470,7 @@ public class CSVData {
 	 * @return the value at that point
 	 */
 	public double getValue(int rowIndex, int colIndex) {
-		return this.data[rowIndex][colIndex];
+		return this.columns[colIndex][rowIndex];
 	}
 	
 	/***
@@ -430,7 +481,7 @@ public class CSVData {
 	 * @param value the value to save
 	 */
 	public void setValue(int rowIndex, int columnIndex, double value) {
-		data[rowIndex][columnIndex] = value;
+		columns[columnIndex][rowIndex] = value;
 	}
 	
 	/***
@@ -442,9 +493,9 @@ public class CSVData {
 	 * @return the old value in that spot
 	 */
 	public double returnSetValue(int rowIndex, int columnIndex, double value) {
-		double output = data[rowIndex][columnIndex];
+		double output = columns[columnIndex][rowIndex];
 		
-		data[rowIndex][columnIndex] = value;
+		columns[columnIndex][rowIndex] = value;
 		
 		return output;
 	}
@@ -456,7 +507,8 @@ public class CSVData {
 	 * @param rowValues the values to save into the row
 	 */
 	public void setRow(int rowIndex, double[] rowValues) {
-		data[rowIndex] = rowValues;
+		for (int j = 0; j < columns.length; j++)
+			columns[j][rowIndex] = rowValues[j];
 	}
 	
 	/***
@@ -466,8 +518,7 @@ public class CSVData {
 	 * @param columnValues the values to store in the column
 	 */
 	public void setColumn(int columnIndex, double[] columnValues) {
-		for (int i = 0; i < data[0].length; i++)
-			data[i][columnIndex] = columnValues[i];
+		System.arraycopy(columnValues, 0, columns[columnIndex], 0, numRows);
 	}
 	
 	/***
@@ -485,10 +536,11 @@ public class CSVData {
 	/***
 	 * Sets all the data to the input data 
 	 * 
-	 * @param data the double array data
+	 * @param data the double array data, where each row is a sample
 	 */
 	public void setData(double[][] data) {
-		this.data = data;
+		this.columns = ArrayHelper.transposeArray(data);
+		this.numRows = data.length;
 	}
 	
 	/***
@@ -518,12 +570,29 @@ public class CSVData {
 		File outFile = new File(filepath);
 		
 		try (BufferedWriter writer = new BufferedWriter(new FileWriter(outFile))) {
-			writer.write(this.dataToString());
+			writeRows(writer, 0, numRows);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/***
+	 * Saves the data in the binary format read by readBinary. The sample rate is 
+	 * estimated from column 0, which must be the time in milliseconds.
+	 * 
+	 * @param filepath the file path to save the file
+	 * @param stepCount the number of steps taken in the recording, or -1 if it is not known
+	 */
+	public void saveBinary(String filepath, int stepCount) {
+		double sampleRate = BinaryRecording.estimateSampleRate(columns[0]);
+		
+		try {
+			new BinaryRecording(this, sampleRate, stepCount).write(filepath);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	
 	
 	/***
@@ -553,20 +622,13 @@ public class CSVData {
 	 * @return a string version of those rows after the titles
 	 */
 	public String displayNRows(int startIndex, int numRows) {
-		StringBuilder output = new StringBuilder();
+		StringWriter output = new StringWriter();
 		
-		for (String columnName : this.columnNames)
-			output.append(columnName + ", ");
-		
-		for (int i = startIndex; i < numRows; i++) {
-			int length = output.length();
-			output.delete(length-2, length);
-			output.append("\n");
-			for (int j = 0; j < data[0].length; j++) {
-				output.append(data[i][j] + ", ");
-			}
+		try {
+			writeRows(output, startIndex, numRows);
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		output.delete(output.length()-2, output.length());
 		
 		return output.toString();
 	}
@@ -576,22 +638,29 @@ public class CSVData {
 	 * @return a string version of the CSVData object that could be turned into a .txt file
 	 */
 	public String dataToString() {
-		StringBuilder output = new StringBuilder(); 
-		
-		for (String columnName : this.columnNames)
-			output.append(columnName + ", ");
-		
-		for (int i = 0; i < data.length; i++) {
-			int length = output.length();
-			output.delete(length-2, length);
-			output.append("\n");
-			for (int j = 0; j < data[0].length; j++) {
-				output.append(data[i][j] + ", ");
+		return displayNRows(0, numRows);
+	}
+	
+	/***
+	 * Writes the titles and then the rows from startIndex up to endIndex, with the 
+	 * values separated by ", "
+	 * 
+	 * @param writer where to write the text
+	 * @param startIndex the first row to write
+	 * @param endIndex the row to stop at (not written)
+	 * @throws IOException if the writer fails
+	 */
+	private void writeRows(Writer writer, int startIndex, int endIndex) throws IOException {
+		writer.write(ArrayHelper.join(this.columnNames, ", "));
+		
+		for (int i = startIndex; i < endIndex; i++) {
+			writer.write("\n");
+			for (int j = 0; j < columns.length; j++) {
+				if (j > 0)
+					writer.write(", ");
+				writer.write(Double.toString(columns[j][i]));
 			}
 		}
-		output.delete(output.length()-2, output.length());
-		
-		return output.toString();
 	}
 	
 	/***
@@ -599,12 +668,12 @@ public class CSVData {
 	 * @param a a CSV Data object
 	 */
 	public static void correctTime(CSVData a) {
-		double startTime = a.data[0][0];
+		double startTime = a.columns[0][0];
 		
-		System.out.println(a.data[0][0] - a.data[0][0] + "\n\n\n\n");
+		System.out.println(a.columns[0][0] - a.columns[0][0] + "\n\n\n\n");
 		
-		for (int i = 0; i < a.data.length; i++)
-			a.data[i][0] -= startTime;
+		for (int i = 0; i < a.numRows; i++)
+			a.columns[0][i] -= startTime;
 		
 		a.columnNames[0] = "Elapsed Time";
 	}
@@ -614,13 +683,14 @@ public class CSVData {
 	 * @param a a CSV Data object
 	 */
 	public void correctTime() {
-		double startTime = this.data[0][0];
+		double[] time = this.columns[0];
+		double startTime = time[0];
 		
-		System.out.println(this.data[0][0] - this.data[0][0] + "\n\n\n\n");
+		System.out.println(time[0] - time[0] + "\n\n\n\n");
 		
-		for (int i = 0; i < this.data.length; i++){
-			this.data[i][0] -= startTime;
-			this.data[i][0] *= 1000;
+		for (int i = 0; i < numRows; i++){
+			time[i] -= startTime;
+			time[i] *= 1000;
 		}
 			
 		this.columnNames[0] = "Elapsed Time";
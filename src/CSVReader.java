@@ -0,0 +1,581 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/***
+ * Reads numeric CSV files straight from the bytes on disk into one array per
+ * column. Lines are never turned into Strings (except header lines), and
+ * numbers are parsed in place, so the only large allocations are the output
+ * columns.
+ *
+ * Lines can end with "\n", "\r\n" or just "\r" (old Mac files).
+ *
+ * Files can also be read from a stream, like an entry of a zip file, which is
+ * read straight into the same buffer.
+ *
+ * Values may have spaces around them and a trailing '#' (HyperIMU files).
+ * Empty or missing fields, like the trailing ",,,,,," in SensorLog files,
+ * are read as NaN.
+ */
+public class CSVReader implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MIN_ROWS = 16;
+
+	// powers of ten that are exact doubles, for the fast number path
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	private final FileChannel channel; // null when reading from a stream
+	private final InputStream in; // null when reading from a file
+	private final long fileSize; // -1 if it isn't known
+	private final long startOffset; // where in the file reading started
+	private long bytesRead = 0;
+	private boolean endOfFile = false;
+	private boolean completeLinesOnly = false;
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0; // start of the next unread line
+	private int limit = 0; // end of the bytes in the buffer
+	private int lineEnd = -1; // end of the current line once it is in the buffer, -1 otherwise
+	private boolean skipLineFeed = false; // the last line ended with '\r', so a '\n' after it belongs to it
+
+	private final NumberParser parser = new NumberParser();
+
+	// the columns readRow was last asked for, and the single row it parses them into
+	private int[] rowSources, rowTarget;
+	private double[][] rowColumns;
+
+	public CSVReader(String filepath) throws IOException {
+		this(filepath, 0);
+	}
+
+	/***
+	 * Reads a file from part way through, like the lines added to a log since
+	 * it was last read
+	 *
+	 * @param filepath the file to read
+	 * @param offset the byte to start at, which should be the start of a line
+	 * @throws IOException if the file can't be read
+	 */
+	public CSVReader(String filepath, long offset) throws IOException {
+		this.channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+		this.in = null;
+		this.fileSize = channel.size();
+		this.startOffset = offset;
+		channel.position(offset);
+	}
+
+	/***
+	 * Reads from a stream instead of a file. Closing the reader closes the stream.
+	 *
+	 * @param in the stream to read
+	 * @param size the number of bytes in the stream, or -1 if it isn't known,
+	 *            which is only used to size the columns
+	 */
+	public CSVReader(InputStream in, long size) {
+		this.channel = null;
+		this.in = in;
+		this.fileSize = size;
+		this.startOffset = 0;
+	}
+
+	/***
+	 * Stops reading at the last line ending, so a line that is still being
+	 * written at the end of a growing file is left for the next read
+	 *
+	 * @param completeLinesOnly true to ignore a last line without a line ending
+	 */
+	public void setCompleteLinesOnly(boolean completeLinesOnly) {
+		this.completeLinesOnly = completeLinesOnly;
+	}
+
+	/***
+	 * Returns where the next line starts, to carry on from there later
+	 *
+	 * @return the byte offset in the file of the first line that hasn't been read
+	 */
+	public long getOffset() {
+		return startOffset + bytesRead - (limit - position);
+	}
+
+	/***
+	 * Reads the numeric columns from a file
+	 *
+	 * @param filepath the file to read
+	 * @param linesToSkip the number of lines before the data starts
+	 * @param sourceColumns the columns in the file to keep, in the order to store them
+	 * @return one array for each entry of sourceColumns
+	 * @throws IOException if the file can't be read
+	 */
+	public static double[][] readColumns(String filepath, int linesToSkip, int[] sourceColumns) throws IOException {
+		try (CSVReader reader = new CSVReader(filepath)) {
+			reader.skipLines(linesToSkip);
+			return reader.readColumns(sourceColumns);
+		}
+	}
+
+	/***
+	 * Returns the indexes 0 to n - 1, to read the first n columns of a file
+	 *
+	 * @param n the number of columns
+	 * @return an array with the indexes 0 to n - 1
+	 */
+	public static int[] firstColumns(int n) {
+		int[] columns = new int[n];
+		for (int i = 0; i < n; i++)
+			columns[i] = i;
+		return columns;
+	}
+
+	/***
+	 * Checks if a line holds data, which means every field is empty or a number
+	 * and at least one field is a number
+	 *
+	 * @param line the line to check
+	 * @return true if the line holds data
+	 */
+	public static boolean isDataLine(String line) {
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		return isDataLine(new NumberParser(), bytes, 0, bytes.length);
+	}
+
+	/***
+	 * Skips lines at the top of the file
+	 *
+	 * @param n the number of lines to skip
+	 * @throws IOException if the file can't be read
+	 */
+	public void skipLines(int n) throws IOException {
+		for (int i = 0; i < n && nextLine(); i++)
+			finishLine();
+	}
+
+	/***
+	 * Reads the next line as a String, for header and comment lines
+	 *
+	 * @return the line without its line ending, or null at the end of the file
+	 * @throws IOException if the file can't be read
+	 */
+	public String readLine() throws IOException {
+		if (!nextLine())
+			return null;
+
+		String line = new String(buffer, position, lineEnd - position, StandardCharsets.UTF_8);
+		finishLine();
+		return line;
+	}
+
+	/***
+	 * Skips everything up to the first line of data, and returns the last
+	 * non-blank line before it, which is usually the column names
+	 *
+	 * @return the header line, or null if the data starts right away
+	 * @throws IOException if the file can't be read
+	 */
+	public String readHeader() throws IOException {
+		String header = null;
+
+		while (nextLine() && !isDataLine(parser, buffer, position, lineEnd)) {
+			String line = readLine();
+			if (!line.trim().isEmpty())
+				header = line;
+		}
+		return header;
+	}
+
+	/***
+	 * Counts the fields in the next line without moving past it
+	 *
+	 * @return the number of fields in the next line, or 0 at the end of the file
+	 * @throws IOException if the file can't be read
+	 */
+	public int countFields() throws IOException {
+		if (!nextLine())
+			return 0;
+
+		int fields = 1;
+		for (int i = position; i < lineEnd; i++)
+			if (buffer[i] == ',')
+				fields++;
+		return fields;
+	}
+
+	/***
+	 * Reads all the remaining data lines. Blank lines are skipped.
+	 *
+	 * @param sourceColumns the columns in the file to keep, in the order to store them
+	 * @return one array for each entry of sourceColumns
+	 * @throws IOException if the file can't be read
+	 */
+	public double[][] readColumns(int[] sourceColumns) throws IOException {
+		if (sourceColumns.length == 0)
+			return new double[0][];
+
+		int[] target = targetsFor(sourceColumns);
+		double[][] columns = new double[sourceColumns.length][MIN_ROWS];
+		int numRows = 0;
+
+		while (nextLine()) {
+			if (isBlank(position, lineEnd)) {
+				finishLine();
+				continue;
+			}
+
+			if (numRows == columns[0].length) {
+				int capacity = estimateRows(numRows);
+				for (int i = 0; i < columns.length; i++)
+					columns[i] = Arrays.copyOf(columns[i], capacity);
+			}
+
+			for (int i = 0; i < columns.length; i++)
+				columns[i][numRows] = Double.NaN;
+			parseRow(columns, target, numRows);
+			numRows++;
+			finishLine();
+		}
+
+		for (int i = 0; i < columns.length; i++)
+			if (columns[i].length != numRows)
+				columns[i] = Arrays.copyOf(columns[i], numRows);
+
+		return columns;
+	}
+
+	/***
+	 * Reads the next data line into an array, for reading a file one row at a
+	 * time without allocating anything per line. Blank lines are skipped.
+	 *
+	 * @param sourceColumns the columns in the file to keep, in the order to store them
+	 * @param row where to store them, at least as long as sourceColumns;
+	 *            fields the line doesn't have are NaN
+	 * @return false at the end of the file
+	 * @throws IOException if the file can't be read
+	 */
+	public boolean readRow(int[] sourceColumns, double[] row) throws IOException {
+		if (sourceColumns != rowSources) {
+			rowTarget = targetsFor(sourceColumns);
+			rowColumns = new double[sourceColumns.length][1];
+			rowSources = sourceColumns;
+		}
+
+		while (nextLine()) {
+			if (isBlank(position, lineEnd)) {
+				finishLine();
+				continue;
+			}
+
+			for (int i = 0; i < rowColumns.length; i++)
+				rowColumns[i][0] = Double.NaN;
+			parseRow(rowColumns, rowTarget, 0);
+			finishLine();
+
+			for (int i = 0; i < rowColumns.length; i++)
+				row[i] = rowColumns[i][0];
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+		else
+			in.close();
+	}
+
+	/***
+	 * Maps each field in a line to the output column it goes in, or -1
+	 */
+	private static int[] targetsFor(int[] sourceColumns) {
+		int numFields = 0;
+		for (int column : sourceColumns)
+			numFields = Math.max(numFields, column + 1);
+		int[] target = new int[numFields];
+		Arrays.fill(target, -1);
+		for (int i = 0; i < sourceColumns.length; i++)
+			target[sourceColumns[i]] = i;
+		return target;
+	}
+
+	/***
+	 * Guesses how many rows the file holds from how many bytes the rows so far took
+	 */
+	private int estimateRows(int numRows) {
+		long consumed = bytesRead - (limit - position);
+		long remaining = Math.max(0, fileSize - startOffset - consumed);
+		long estimate = numRows + remaining * numRows / Math.max(1, consumed) + MIN_ROWS;
+
+		estimate = Math.max(estimate, numRows + numRows / 2 + 1);
+		return (int) Math.min(estimate, Integer.MAX_VALUE - 8);
+	}
+
+	/***
+	 * Parses the fields of the current line into row of the columns
+	 */
+	private void parseRow(double[][] columns, int[] target, int row) {
+		int i = position;
+		int field = 0;
+
+		while (field < target.length) {
+			int column = target[field];
+
+			if (column >= 0) {
+				double value = parser.parseNumber(buffer, i, lineEnd);
+				if (parser.parseFailed)
+					throw new NumberFormatException("For input string: \"" + fieldText(i) + "\"");
+				columns[column][row] = value;
+				i = parser.parseEnd;
+			} else {
+				while (i < lineEnd && buffer[i] != ',')
+					i++;
+			}
+
+			if (i >= lineEnd)
+				break;
+			i++; // skip the comma
+			field++;
+		}
+	}
+
+	private String fieldText(int start) {
+		int end = start;
+		while (end < lineEnd && buffer[end] != ',')
+			end++;
+		return new String(buffer, start, end - start, StandardCharsets.UTF_8).trim();
+	}
+
+	private static boolean isDataLine(NumberParser parser, byte[] bytes, int start, int end) {
+		boolean anyNumbers = false;
+		int i = start;
+
+		while (i < end) {
+			double value = parser.parseNumber(bytes, i, end);
+			if (parser.parseFailed)
+				return false;
+			if (!Double.isNaN(value))
+				anyNumbers = true;
+			i = parser.parseEnd + 1;
+		}
+		return anyNumbers;
+	}
+
+	private boolean isBlank(int start, int end) {
+		for (int i = start; i < end; i++)
+			if (!isSpace(buffer[i]))
+				return false;
+		return true;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/***
+	 * Makes sure the whole next line is in the buffer and sets lineEnd to the
+	 * index of its line ending (or the end of the data for the last line)
+	 *
+	 * @return false if there are no lines left
+	 */
+	private boolean nextLine() throws IOException {
+		if (lineEnd >= 0)
+			return true;
+
+		if (skipLineFeed) {
+			if (position == limit && !endOfFile)
+				fill();
+			if (position < limit && buffer[position] == '\n')
+				position++;
+			skipLineFeed = false;
+		}
+
+		int searchFrom = position;
+		while (true) {
+			for (int i = searchFrom; i < limit; i++) {
+				if (buffer[i] == '\n' || buffer[i] == '\r') {
+					lineEnd = i;
+					return true;
+				}
+			}
+			searchFrom = limit;
+
+			if (endOfFile) {
+				if (position == limit || completeLinesOnly)
+					return false;
+				lineEnd = limit;
+				return true;
+			}
+			searchFrom -= fill();
+		}
+	}
+
+	/***
+	 * Moves past the current line
+	 */
+	private void finishLine() {
+		if (lineEnd < limit) {
+			skipLineFeed = buffer[lineEnd] == '\r';
+			position = lineEnd + 1;
+		} else {
+			position = limit;
+		}
+		lineEnd = -1;
+	}
+
+	/***
+	 * Moves the unread bytes to the front of the buffer and reads more from the file
+	 *
+	 * @return how far the unread bytes moved back
+	 */
+	private int fill() throws IOException {
+		int shift = position;
+		if (shift > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+		int n = channel != null ? channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit))
+				: in.read(buffer, limit, buffer.length - limit);
+		if (n < 0)
+			endOfFile = true;
+		else {
+			limit += n;
+			bytesRead += n;
+		}
+		return shift;
+	}
+
+	/***
+	 * Parses numbers from bytes in memory. The state of the last parse is kept
+	 * here rather than returned, so parsing allocates nothing, and checking a
+	 * line that isn't in a reader's buffer doesn't need a reader.
+	 */
+	private static final class NumberParser {
+		// where the last parsed number stopped, and whether it was a valid number
+		private int parseEnd;
+		private boolean parseFailed;
+
+		/***
+		 * Parses one field starting at start. Sets parseEnd to the comma or line end
+		 * after it, and parseFailed if the field is not a number.
+		 *
+		 * @return the value, or NaN for an empty field
+		 */
+		private double parseNumber(byte[] bytes, int start, int end) {
+			int i = start;
+			parseFailed = false;
+
+			while (i < end && isSpace(bytes[i]))
+				i++;
+			if (i == end || bytes[i] == ',') {
+				parseEnd = i;
+				return Double.NaN;
+			}
+
+			int fieldStart = i;
+			boolean negative = false;
+			if (bytes[i] == '-' || bytes[i] == '+') {
+				negative = bytes[i] == '-';
+				i++;
+			}
+
+			long mantissa = 0;
+			int significantDigits = 0;
+			int exponent = 0;
+			boolean anyDigits = false;
+			boolean fast = true;
+
+			while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+				anyDigits = true;
+				if (significantDigits < 18) {
+					mantissa = mantissa * 10 + (bytes[i] - '0');
+					if (mantissa != 0)
+						significantDigits++;
+				} else {
+					fast = false;
+				}
+				i++;
+			}
+			if (i < end && bytes[i] == '.') {
+				i++;
+				while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+					anyDigits = true;
+					if (significantDigits < 18) {
+						mantissa = mantissa * 10 + (bytes[i] - '0');
+						if (mantissa != 0)
+							significantDigits++;
+						exponent--;
+					} else {
+						fast = false;
+					}
+					i++;
+				}
+			}
+			if (anyDigits && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+				i++;
+				boolean negativeExponent = false;
+				if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+					negativeExponent = bytes[i] == '-';
+					i++;
+				}
+				int value = 0;
+				boolean exponentDigits = false;
+				while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+					value = Math.min(value * 10 + (bytes[i] - '0'), 100000);
+					exponentDigits = true;
+					i++;
+				}
+				if (!exponentDigits)
+					anyDigits = false;
+				exponent += negativeExponent ? -value : value;
+			}
+
+			int numberEnd = i;
+			if (i < end && bytes[i] == '#')
+				i++;
+			while (i < end && isSpace(bytes[i]))
+				i++;
+
+			if (i < end && bytes[i] != ',' || !anyDigits) {
+				// not a plain number (NaN, Infinity, hex...), so let the JDK decide
+				while (i < end && bytes[i] != ',')
+					i++;
+				parseEnd = i;
+				return parseSlow(bytes, fieldStart, i);
+			}
+			parseEnd = i;
+
+			if (fast && significantDigits <= 15 && exponent >= -22 && exponent <= 22) {
+				// both parts are exact doubles, so one multiply or divide rounds correctly
+				double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+				return negative ? -value : value;
+			}
+			return parseSlow(bytes, fieldStart, numberEnd);
+		}
+
+		private double parseSlow(byte[] bytes, int start, int end) {
+			String text = new String(bytes, start, end - start, StandardCharsets.UTF_8).trim();
+			if (text.endsWith("#"))
+				text = text.substring(0, text.length() - 1);
+			try {
+				return Double.parseDouble(text);
+			} catch (NumberFormatException e) {
+				parseFailed = true;
+				return Double.NaN;
+			}
+		}
+	}
+}
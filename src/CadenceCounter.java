@@ -0,0 +1,201 @@
+import java.util.Arrays;
+
+/***
+ * Counts steps from the frequency of walking instead of from single peaks.
+ *
+ * The magnitudes are cut into overlapping frames a few seconds long. In each
+ * frame the strongest frequency between 0.5 and 4 Hz is taken as the cadence
+ * (steps per second), and the cadence is added up over time to give the step
+ * count. Frames where the phone barely moves count as standing still.
+ *
+ * Cadence is never above 4 Hz, so the magnitudes are first averaged in blocks
+ * down to about 20 samples a second. That makes every FFT several times
+ * smaller than one at the recording's own rate. The FFT plan is shared and
+ * the frame buffers are kept between calls, so a counter allocates nothing
+ * per frame. A counter is not thread safe; use one per thread.
+ */
+public class CadenceCounter {
+	public static final double MIN_CADENCE = 0.5; // Hz
+	public static final double MAX_CADENCE = 4; // Hz
+
+	private static final double TARGET_RATE = 20; // Hz, the rate magnitudes are averaged down to
+	private static final double MIN_VARIATION = 0.05; // standard deviation over mean below which a frame is still
+
+	private final double frameSeconds;
+	private final double hopSeconds;
+
+	// kept between calls and only grown
+	private FFT plan;
+	private double[] decimated = new double[0];
+	private double[] real = new double[0], imaginary = new double[0];
+	private double[] window = new double[0];
+	private double[] cadences = new double[0];
+	private int numFrames;
+
+	/***
+	 * Creates a counter with 4 second frames, one every second
+	 */
+	public CadenceCounter() {
+		this(4, 1);
+	}
+
+	/***
+	 * Creates a counter
+	 *
+	 * @param frameSeconds the length of each frame, at least two periods of the slowest cadence
+	 * @param hopSeconds the time between the starts of frames
+	 */
+	public CadenceCounter(double frameSeconds, double hopSeconds) {
+		this.frameSeconds = frameSeconds;
+		this.hopSeconds = hopSeconds;
+	}
+
+	/***
+	 * Counts the steps in a recording
+	 *
+	 * @param magnitudes the magnitudes of the acceleration
+	 * @param times the time of each magnitude in milliseconds
+	 * @return the number of steps
+	 */
+	public int countSteps(double[] magnitudes, double[] times) {
+		return (int) Math.round(estimateSteps(magnitudes, times));
+	}
+
+	/***
+	 * Estimates the steps in a recording without rounding to a whole step
+	 *
+	 * @param magnitudes the magnitudes of the acceleration
+	 * @param times the time of each magnitude in milliseconds
+	 * @return the cadence added up over the length of the recording
+	 */
+	public double estimateSteps(double[] magnitudes, double[] times) {
+		double rate = BinaryRecording.estimateSampleRate(times);
+		if (Double.isNaN(rate) || rate <= 0)
+			return 0;
+
+		// average blocks of samples down to about TARGET_RATE
+		int block = Math.max(1, (int) Math.round(rate / TARGET_RATE));
+		int length = magnitudes.length / block;
+		double decimatedRate = rate / block;
+		if (length < 2)
+			return 0;
+		if (decimated.length < length)
+			decimated = new double[length];
+		for (int i = 0; i < length; i++) {
+			double sum = 0;
+			for (int j = i * block; j < (i + 1) * block; j++)
+				sum += magnitudes[j];
+			decimated[i] = sum / block;
+		}
+
+		int frame = Math.min(length, (int) Math.round(frameSeconds * decimatedRate));
+		int hop = Math.max(1, (int) Math.round(hopSeconds * decimatedRate));
+		prepare(frame, FFT.sizeFor(frame));
+
+		numFrames = 0;
+		double steps = 0;
+		int covered = 0; // decimated samples whose cadence has been added
+		for (int start = 0; start + frame <= length; start += hop) {
+			double cadence = dominantFrequency(decimated, start, frame, decimatedRate);
+			cadences[numFrames++] = cadence;
+
+			// each frame covers the hop around its middle, the first and last frames also cover the ends
+			boolean last = start + hop + frame > length;
+			int end = last ? length : start + (frame + hop) / 2;
+			steps += cadence * (end - covered) / decimatedRate;
+			covered = end;
+		}
+		return steps;
+	}
+
+	/***
+	 * Returns the cadence found in each frame by the last count
+	 *
+	 * @return the cadence of each frame in Hz, 0 for still frames
+	 */
+	public double[] getCadences() {
+		return Arrays.copyOf(cadences, numFrames);
+	}
+
+	/***
+	 * Finds the strongest frequency in the cadence band in part of a signal
+	 *
+	 * @param signal the signal
+	 * @param start the first sample of the frame
+	 * @param frame the number of samples in the frame
+	 * @param rate the sample rate in Hz
+	 * @return the frequency in Hz, or 0 if the frame is too still to be walking
+	 */
+	private double dominantFrequency(double[] signal, int start, int frame, double rate) {
+		double mean = 0;
+		for (int i = 0; i < frame; i++)
+			mean += signal[start + i];
+		mean /= frame;
+
+		double variance = 0;
+		for (int i = 0; i < frame; i++) {
+			double d = signal[start + i] - mean;
+			variance += d * d;
+		}
+		if (Math.sqrt(variance / frame) < MIN_VARIATION * Math.abs(mean))
+			return 0;
+
+		int size = real.length;
+		for (int i = 0; i < frame; i++) {
+			real[i] = (signal[start + i] - mean) * window[i];
+			imaginary[i] = 0;
+		}
+		for (int i = frame; i < size; i++) {
+			real[i] = 0;
+			imaginary[i] = 0;
+		}
+		plan.transform(real, imaginary);
+
+		int low = Math.max(1, (int) Math.ceil(MIN_CADENCE * size / rate));
+		int high = Math.min(size / 2 - 1, (int) Math.floor(MAX_CADENCE * size / rate));
+		if (high < low)
+			return 0;
+
+		int best = low;
+		double bestPower = -1;
+		for (int k = low; k <= high; k++) {
+			double power = real[k] * real[k] + imaginary[k] * imaginary[k];
+			if (power > bestPower) {
+				bestPower = power;
+				best = k;
+			}
+		}
+
+		// fit a parabola through the peak bin and its neighbours to find the peak between bins
+		double offset = 0;
+		double before = power(best - 1), after = power(best + 1);
+		double curve = before - 2 * bestPower + after;
+		if (curve < 0)
+			offset = 0.5 * (before - after) / curve;
+
+		return (best + offset) * rate / size;
+	}
+
+	private double power(int k) {
+		return real[k] * real[k] + imaginary[k] * imaginary[k];
+	}
+
+	/***
+	 * Makes sure the buffers fit the frame and FFT sizes, and builds the Hann window
+	 */
+	private void prepare(int frame, int size) {
+		if (real.length != size) {
+			plan = FFT.forSize(size);
+			real = new double[size];
+			imaginary = new double[size];
+		}
+		if (window.length != frame) {
+			window = new double[frame];
+			for (int i = 0; i < frame; i++)
+				window[i] = frame == 1 ? 1 : 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (frame - 1));
+		}
+		int maxFrames = decimated.length + 1;
+		if (cadences.length < maxFrames)
+			cadences = new double[maxFrames];
+	}
+}
@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/***
+ * Finds the time, acceleration and gyro columns of a file from their names,
+ * so every layout can be read into the same table no matter what order its
+ * columns are in.
+ *
+ * Names are compared after dropping case, units in brackets and punctuation,
+ * so "user_acc_x(G)", "Accel (x)", "x-accel" and "accelerometerAccelerationX"
+ * are all the x acceleration. When several columns match, the first one wins.
+ */
+public class ColumnMapping {
+	public static final int TIME = 0;
+	public static final int ACCEL_X = 1, ACCEL_Y = 2, ACCEL_Z = 3;
+	public static final int GYRO_X = 4, GYRO_Y = 5, GYRO_Z = 6;
+
+	/***
+	 * The names of the columns in the standard table
+	 */
+	public static final String[] NAMES = { "time (ms)", "accel x", "accel y", "accel z", "gyro x", "gyro y", "gyro z" };
+
+	// matched against normalized names, see normalize
+	private static final Pattern TIME_NAME = Pattern.compile("(elapsed|logging|accelerometer)?time(stamp)?(inms)?");
+	private static final Pattern[] CHANNEL_NAMES = new Pattern[NAMES.length];
+	static {
+		CHANNEL_NAMES[TIME] = TIME_NAME;
+		String[] axes = { "x", "y", "z" };
+		for (int a = 0; a < 3; a++) {
+			String axis = axes[a];
+			CHANNEL_NAMES[ACCEL_X + a] = Pattern
+					.compile("(accelerometer)?(user)?(r?accel(eration|erometer)?|acc)" + axis + "|" + axis + "acc(el(eration)?)?");
+			CHANNEL_NAMES[GYRO_X + a] = Pattern
+					.compile("(gyro|gryo)(rotation)?" + axis + "|rotationrate" + axis + "|" + axis + "gyro");
+		}
+	}
+
+	// brackets around a single axis letter are kept, "Accel (x)" is the x axis
+	private static final Pattern UNITS = Pattern.compile("\\((?![xyz]\\))[^)]*\\)");
+	private static final Pattern PUNCTUATION = Pattern.compile("[^a-z0-9]");
+
+	private final int[] sources = new int[NAMES.length];
+
+	private ColumnMapping() {
+		for (int i = 0; i < sources.length; i++)
+			sources[i] = -1;
+	}
+
+	/***
+	 * Maps the columns of a file from its column names
+	 *
+	 * @param names the names of the columns in the file
+	 * @return the mapping, which may be missing any of the channels
+	 */
+	public static ColumnMapping byName(String[] names) {
+		ColumnMapping mapping = new ColumnMapping();
+
+		for (int column = 0; column < names.length; column++) {
+			String name = normalize(names[column]);
+			for (int channel = 0; channel < NAMES.length; channel++) {
+				if (mapping.sources[channel] < 0 && CHANNEL_NAMES[channel].matcher(name).matches()) {
+					mapping.sources[channel] = column;
+					break;
+				}
+			}
+		}
+		return mapping;
+	}
+
+	/***
+	 * Maps a file without column names, which holds the time and then the x, y
+	 * and z acceleration
+	 *
+	 * @param numColumns the number of columns in the file
+	 * @return the mapping, which has no channels if there are fewer than 4 columns
+	 */
+	public static ColumnMapping byPosition(int numColumns) {
+		ColumnMapping mapping = new ColumnMapping();
+		if (numColumns >= 4)
+			for (int channel = TIME; channel <= ACCEL_Z; channel++)
+				mapping.sources[channel] = channel;
+		return mapping;
+	}
+
+	/***
+	 * Turns a column name into the form the patterns match against
+	 *
+	 * @param name the name from the file
+	 * @return the name in lower case without units or punctuation
+	 */
+	static String normalize(String name) {
+		String lower = name.toLowerCase();
+		return PUNCTUATION.matcher(UNITS.matcher(lower).replaceAll("")).replaceAll("");
+	}
+
+	/***
+	 * Returns the column of the file that holds a channel
+	 *
+	 * @param channel a channel, like ACCEL_X
+	 * @return the index of the column in the file, or -1 if the file doesn't have it
+	 */
+	public int getSource(int channel) {
+		return sources[channel];
+	}
+
+	/***
+	 * Checks that the time and all three axes of acceleration were found
+	 *
+	 * @return true if the file can be counted
+	 */
+	public boolean hasAcceleration() {
+		return sources[TIME] >= 0 && sources[ACCEL_X] >= 0 && sources[ACCEL_Y] >= 0 && sources[ACCEL_Z] >= 0;
+	}
+
+	/***
+	 * Checks that all three axes of the gyro were found
+	 *
+	 * @return true if the file has a gyro
+	 */
+	public boolean hasGyro() {
+		return sources[GYRO_X] >= 0 && sources[GYRO_Y] >= 0 && sources[GYRO_Z] >= 0;
+	}
+
+	/***
+	 * Returns the number of channels in the standard table for this file: 4
+	 * without a gyro, 7 with one
+	 *
+	 * @return the number of channels to read
+	 */
+	public int getNumChannels() {
+		return hasGyro() ? NAMES.length : GYRO_X;
+	}
+
+	/***
+	 * Returns the columns to read from the file, in the order of the standard table
+	 *
+	 * @return the index in the file of each channel to read
+	 */
+	public int[] getSourceColumns() {
+		int[] columns = new int[getNumChannels()];
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = sources[i];
+		return columns;
+	}
+
+	/***
+	 * Builds the standard table from columns read in the order of getSourceColumns,
+	 * putting the time in milliseconds. Rows that can't be counted (see
+	 * isComplete) are left out. The columns are used as they are, not copied,
+	 * unless rows were left out.
+	 *
+	 * @param filepath the file the columns came from
+	 * @param columns the channels, in the order of the standard table
+	 * @return the standard table
+	 */
+	public static CSVData toTable(String filepath, double[][] columns) {
+		columns = dropIncompleteRows(columns);
+		columns[TIME] = Resampler.toMilliseconds(columns[TIME]);
+		String[] names = new String[columns.length];
+		System.arraycopy(NAMES, 0, names, 0, names.length);
+		return CSVData.fromColumns(filepath, names, columns);
+	}
+
+	/***
+	 * Checks that a row has a time and all three axes of acceleration. Some
+	 * apps log rows with only a GPS fix between the sensor readings, and a NaN
+	 * from one of those would spoil every threshold its window reaches.
+	 *
+	 * @param time the time of the row
+	 * @param x the x acceleration
+	 * @param y the y acceleration
+	 * @param z the z acceleration
+	 * @return true if the row can be counted
+	 */
+	public static boolean isComplete(double time, double x, double y, double z) {
+		return !Double.isNaN(time) && !Double.isNaN(x) && !Double.isNaN(y) && !Double.isNaN(z);
+	}
+
+	/***
+	 * Leaves out the rows that can't be counted, moving the others up in place
+	 *
+	 * @param columns the channels, in the order of the standard table
+	 * @return the columns, shortened if any rows were left out
+	 */
+	static double[][] dropIncompleteRows(double[][] columns) {
+		int numRows = columns[TIME].length;
+		int kept = 0;
+		for (int i = 0; i < numRows; i++) {
+			if (!isComplete(columns[TIME][i], columns[ACCEL_X][i], columns[ACCEL_Y][i], columns[ACCEL_Z][i]))
+				continue;
+			if (kept < i)
+				for (double[] column : columns)
+					column[kept] = column[i];
+			kept++;
+		}
+
+		if (kept < numRows)
+			for (int c = 0; c < columns.length; c++)
+				columns[c] = Arrays.copyOf(columns[c], kept);
+		return columns;
+	}
+}
@@ -6,9 +6,10 @@ import org.math.plot.Plot2DPanel;
 
 public class CountSteps {
 	
-	private static final int DEADZONE_THRESHOLD = 50;
-	private static final int ADAPTIVE_THRESHOLD_RANGE = 20;
-	private static final int TIME_THRESHOLD = 150;
+	// the defaults of StepCounterConfig
+	static final int ADAPTIVE_THRESHOLD_RANGE = 30000;
+	static final int TIME_THRESHOLD = 150;
+	static final int DETECTION_RATE = 50; // Hz, fast enough to keep the shape of every step
 
 	/***
 	 * Counts the number of steps based on sensor data.
@@ -25,68 +26,266 @@ public class CountSteps {
 	 * @return an int representing the number of steps
 	 */
 	public static int countStepsByMagnitudes(double[][] sensorData, double[] times) {
+		return countSteps(sensorData, times, ThresholdStrategy.ADAPTIVE);
+	}
+	
+	public static int countSteps(double[][] sensorData, double[] times) {
+		return countSteps(sensorData, times, ThresholdStrategy.GLOBAL);
+	}
+
+	/***
+	 * Counts the number of steps, using a strategy to pick the threshold the peaks are compared to
+	 * 
+	 * @param sensorData the sensor data, with the x, y and z acceleration in columns 0-2
+	 * @param times the elapsed times in milliseconds for each row in sensorData
+	 * @param strategy how to calculate the thresholds
+	 * @return an int representing the number of steps
+	 */
+	public static int countSteps(double[][] sensorData, double[] times, ThresholdStrategy strategy) {
+		return countStepsForMagnitudes(calculateMagnitudesFor(sensorData), times, strategy);
+	}
+
+	/***
+	 * Counts the number of steps from acceleration stored as columns, like the ones
+	 * returned by CSVData.getColumn
+	 * 
+	 * @param x the x acceleration for each sample
+	 * @param y the y acceleration for each sample
+	 * @param z the z acceleration for each sample
+	 * @param times the elapsed times in milliseconds for each sample
+	 * @param strategy how to calculate the thresholds
+	 * @return an int representing the number of steps
+	 */
+	public static int countSteps(double[] x, double[] y, double[] z, double[] times, ThresholdStrategy strategy) {
+		return countStepsForMagnitudes(calculateMagnitudesFor(x, y, z), times, strategy);
+	}
+
+	/***
+	 * Counts the number of steps once the magnitudes are known
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the elapsed times in milliseconds for each magnitude
+	 * @param strategy how to calculate the thresholds
+	 * @return an int representing the number of steps
+	 */
+	public static int countStepsForMagnitudes(double[] magnitudes, double[] times, ThresholdStrategy strategy) {
+		return countStepsForMagnitudes(magnitudes, times, strategy, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Counts the number of steps once the magnitudes are known, with tuned parameters
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the elapsed times in milliseconds for each magnitude
+	 * @param strategy how to calculate the thresholds
+	 * @param config the deadzone, threshold window and threshold limits to use
+	 * @return an int representing the number of steps
+	 */
+	public static int countStepsForMagnitudes(double[] magnitudes, double[] times, ThresholdStrategy strategy,
+			StepCounterConfig config) {
+		int[] peaks = findPeaks(magnitudes, times, config);
+		double[] thresholds = strategy.calculateThresholds(magnitudes, times, new double[magnitudes.length], config);
+
+		return countPeaksAboveThresholds(peaks, magnitudes, thresholds, strategy, config);
+	}
+
+	/***
+	 * Counts the peaks that the strategy says are tall enough to be steps, once
+	 * the peaks and thresholds are known
+	 * 
+	 * @param peaks 1 where there is a peak, 0 otherwise
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param thresholds the threshold at each magnitude
+	 * @param strategy the strategy the thresholds were calculated with
+	 * @return an int representing the number of steps
+	 */
+	public static int countPeaksAboveThresholds(int[] peaks, double[] magnitudes, double[] thresholds,
+			ThresholdStrategy strategy) {
+		return countPeaksAboveThresholds(peaks, magnitudes, thresholds, strategy, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Counts the peaks that the strategy says are tall enough to be steps, with
+	 * the minimum threshold of a config
+	 * 
+	 * @param peaks 1 where there is a peak, 0 otherwise
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param thresholds the threshold at each magnitude
+	 * @param strategy the strategy the thresholds were calculated with
+	 * @param config the parameters the thresholds were calculated with
+	 * @return an int representing the number of steps
+	 */
+	public static int countPeaksAboveThresholds(int[] peaks, double[] magnitudes, double[] thresholds,
+			ThresholdStrategy strategy, StepCounterConfig config) {
+		return findSteps(peaks, magnitudes, thresholds, null, strategy, config, null);
+	}
+
+	/***
+	 * Finds the steps once the magnitudes are known and sends each one to a
+	 * sink, with its time, magnitude and confidence
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the elapsed times in milliseconds for each magnitude
+	 * @param strategy how to calculate the thresholds
+	 * @param config the deadzone, threshold window and threshold limits to use
+	 * @param sink the sink to send the steps to
+	 * @return an int representing the number of steps
+	 */
+	public static int findSteps(double[] magnitudes, double[] times, ThresholdStrategy strategy,
+			StepCounterConfig config, StepSink sink) {
+		int[] peaks = findPeaks(magnitudes, times, config);
+		double[] thresholds = strategy.calculateThresholds(magnitudes, times, new double[magnitudes.length], config);
+
+		return findSteps(peaks, magnitudes, thresholds, times, strategy, config, sink);
+	}
+
+	/***
+	 * Sends the peaks that the strategy says are tall enough to be steps to a
+	 * sink, once the peaks and thresholds are known
+	 * 
+	 * @param peaks 1 where there is a peak, 0 otherwise
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param thresholds the threshold at each magnitude
+	 * @param times the times of the magnitudes, or null if there is no sink
+	 * @param strategy the strategy the thresholds were calculated with
+	 * @param config the parameters the thresholds were calculated with
+	 * @param sink the sink to send the steps to, or null to only count them
+	 * @return an int representing the number of steps
+	 */
+	public static int findSteps(int[] peaks, double[] magnitudes, double[] thresholds, double[] times,
+			ThresholdStrategy strategy, StepCounterConfig config, StepSink sink) {
 		int stepCount = 0;
-		double[] magnitudes = calculateMagnitudesFor(sensorData);
-		int[] peaks = findPeaks(magnitudes, times);
-		double[] thresholds = calculateThresholds(magnitudes, times);
 
 		for (int i = 0; i < magnitudes.length; i++) {
-			if (thresholds[i] > 0.5 && magnitudes[i] > thresholds[i] && peaks[i] == 1)
+			if (peaks[i] == 1 && strategy.isStep(magnitudes[i], thresholds[i], config)) {
 				stepCount++;
+				if (sink != null)
+					sink.onStep(times[i], magnitudes[i], stepConfidence(magnitudes[i], thresholds[i]));
+			}
 		}
 
 		return stepCount;
 	}
-	
-	public static int countSteps(double[][] sensorData, double[] times) {
-		int stepCount = 0;
-		double[] magnitudes = calculateMagnitudesFor(sensorData);
-		int[] peaks = findPeaks(magnitudes, times);
 
-		for (int i = 0; i < magnitudes.length; i++) {
-			double threshold = calculateThreshold(magnitudes, calculateMean(magnitudes));
+	/***
+	 * Rates how clearly a peak passed its threshold: the share of the peak's
+	 * magnitude that is above the threshold. A peak that only just passed is
+	 * near 0, and one far above its threshold is near 1.
+	 * 
+	 * @param magnitude the magnitude of the peak
+	 * @param threshold the threshold at the peak
+	 * @return the confidence, from 0 to 1
+	 */
+	public static double stepConfidence(double magnitude, double threshold) {
+		if (!(magnitude > 0))
+			return 0;
+		return Math.max(0, Math.min(1, (magnitude - threshold) / magnitude));
+	}
 
-			if (magnitudes[i] > threshold && peaks[i] == 1)
-				stepCount++;
-		}
+	/***
+	 * Counts the number of steps after smoothing the magnitudes, so the small bumps
+	 * that noise adds around a real peak aren't counted as peaks of their own
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the elapsed times in milliseconds for each magnitude
+	 * @param strategy how to calculate the thresholds
+	 * @param filter the filter to smooth the magnitudes with before finding peaks
+	 * @return an int representing the number of steps
+	 */
+	public static int countStepsForMagnitudes(double[] magnitudes, double[] times, ThresholdStrategy strategy,
+			SmoothingFilter filter) {
+		return countStepsForMagnitudes(NoiseSmoothing.smooth(magnitudes, filter), times, strategy);
+	}
 
-		return stepCount;
+	/***
+	 * Counts the number of steps after resampling the magnitudes to DETECTION_RATE,
+	 * so recordings from every device are counted at the same rate and the ones
+	 * sampled faster than that cost less to count
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the times for each magnitude, in milliseconds or seconds
+	 * @param strategy how to calculate the thresholds
+	 * @return an int representing the number of steps
+	 */
+	public static int countStepsResampled(double[] magnitudes, double[] times, ThresholdStrategy strategy) {
+		return countStepsResampled(magnitudes, times, strategy, DETECTION_RATE);
 	}
 
 	/***
-	 * calculates a threshold range using the time data
+	 * Counts the number of steps after resampling the magnitudes to a fixed rate
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the times for each magnitude, in milliseconds or seconds
+	 * @param strategy how to calculate the thresholds
+	 * @param rate the rate to count at, in Hz
+	 * @return an int representing the number of steps
+	 */
+	public static int countStepsResampled(double[] magnitudes, double[] times, ThresholdStrategy strategy, double rate) {
+		double[][] resampled = Resampler.resample(Resampler.toMilliseconds(times), magnitudes, rate);
+		return countStepsForMagnitudes(resampled[1], resampled[0], strategy);
+	}
+
+	/***
+	 * Counts how many samples it takes for the elapsed time to reach a duration. 
+	 * Times are measured from the first sample so both elapsed and absolute
+	 * timestamps work, and the range never runs past the end of the data.
 	 * 
 	 * @param times the times that each data point was collected
-	 * @return the number of values to use as a range
+	 * @param duration the duration in milliseconds
+	 * @return the number of values that fit in the duration
 	 */
-	private static int calculateThresholdRange(double[] times) {
+	static int calculateIndexRange(double[] times, double duration) {
 		int range = 0;
-		while (times[range] < ADAPTIVE_THRESHOLD_RANGE)
+		while (range < times.length - 1 && times[range] - times[0] < duration)
 			range++;
 		return range;
 	}
 
 	/***
 	 * Calculates a threshold value for each magnitude with a new window and returns an
-	 * array containing all the values
+	 * array containing all the values. The window slides along the data so this is one
+	 * linear pass.
 	 * 
 	 * @param magnitudes the magnitudes of the acceleration data
 	 * @param times the times from the data
 	 * @return an array with threshold values recalculated for each vale
 	 */
 	public static double[] calculateThresholds(double[] magnitudes, double[] times) {
-		double[] thresholds = new double[magnitudes.length];
-		int range = calculateThresholdRange(times);
+		return calculateThresholds(magnitudes, times, new double[magnitudes.length]);
+	}
 
-		for (int i = 0; i < magnitudes.length; i++) {
-			double[] magCluster = getMagnitudeCluster(magnitudes, range, i);
-			thresholds[i] = calculateThreshold(magCluster, calculateMean(magCluster));
-		}
-		return thresholds;
+	/***
+	 * Calculates a threshold value for each magnitude with a new window and stores them
+	 * in the thresholds array
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the times from the data
+	 * @param thresholds the array to store the thresholds in
+	 * @return the thresholds array
+	 */
+	public static double[] calculateThresholds(double[] magnitudes, double[] times, double[] thresholds) {
+		return calculateThresholds(magnitudes, times, thresholds, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Calculates a threshold value for each magnitude with the threshold window
+	 * and number of deviations of a config
+	 * 
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the times from the data
+	 * @param thresholds the array to store the thresholds in
+	 * @param config the threshold window and number of deviations to use
+	 * @return the thresholds array
+	 */
+	public static double[] calculateThresholds(double[] magnitudes, double[] times, double[] thresholds,
+			StepCounterConfig config) {
+		int range = calculateIndexRange(times, config.getThresholdWindow());
+
+		return AdaptiveThreshold.calculateThresholds(magnitudes, range, config.getDeviations(), thresholds);
 	}
 
 	public static double calculateMagnitude(double x, double y, double z) {
-		return Math.pow(x * x + y * y + z * z, 0.5);
+		return Math.sqrt(x * x + y * y + z * z);
 	}
 
 	public static double[] calculateMagnitudesFor(double[][] sensorData) {
@@ -97,22 +296,62 @@ public class CountSteps {
 		return output;
 	}
 
+	/***
+	 * Calculates the magnitudes for acceleration stored as columns, using SIMD
+	 * instructions when they are available (see MagnitudeKernel)
+	 * 
+	 * @param x the x acceleration for each sample
+	 * @param y the y acceleration for each sample
+	 * @param z the z acceleration for each sample
+	 * @return the magnitude for each sample
+	 */
+	public static double[] calculateMagnitudesFor(double[] x, double[] y, double[] z) {
+		double[] output = new double[x.length];
+		MagnitudeKernel.get().calculate(x, y, z, output, output.length);
+		return output;
+	}
+
 	public static double calculateStandardDeviation(double[] arr, double mean) {
+		return calculateStandardDeviation(arr, 0, arr.length, mean);
+	}
+
+	/***
+	 * Calculates the standard deviation of part of an array
+	 * 
+	 * @param arr the array of values
+	 * @param start the first index to include
+	 * @param end the index to stop at (not included)
+	 * @param mean the average of the values in the range
+	 * @return the standard deviation of the values in the range
+	 */
+	public static double calculateStandardDeviation(double[] arr, int start, int end, double mean) {
 		double sum = 0;
 
-		for (Double dataValue : arr)
-			sum += Math.pow(dataValue - mean, 2);
-		sum /= (arr.length - 1);
+		for (int i = start; i < end; i++)
+			sum += Math.pow(arr[i] - mean, 2);
+		sum /= (end - start - 1);
 
 		return Math.pow(sum, 0.5);
 	}
 
 	public static double calculateMean(double[] arr) {
+		return calculateMean(arr, 0, arr.length);
+	}
+
+	/***
+	 * Calculates the mean of part of an array
+	 * 
+	 * @param arr the array of values
+	 * @param start the first index to include
+	 * @param end the index to stop at (not included)
+	 * @return the mean of the values in the range
+	 */
+	public static double calculateMean(double[] arr, int start, int end) {
 		double sum = 0;
-		for (int i = 0; i < arr.length; i++) {
+		for (int i = start; i < end; i++) {
 			sum += arr[i];
 		}
-		return sum / arr.length;
+		return sum / (end - start);
 	}
 
 	/***
@@ -123,17 +362,40 @@ public class CountSteps {
 	 * @return a double array with values of 1 where there are peaks, and 0 otherwise
 	 */
 	public static int[] findPeaks(double[] magnitudes, double[] times) {
-		int[] peaks = new int[magnitudes.length];
+		return findPeaks(magnitudes, times, StepCounterConfig.DEFAULT);
+	}
 
-		for (int i = 1; i < magnitudes.length - 1; i++)
-			if (magnitudes[i] > magnitudes[i - 1] && magnitudes[i] > magnitudes[i + 1]) {
-				peaks[i] = 1;
-			}
-		clearExtraPeaks(peaks, magnitudes, DEADZONE_THRESHOLD, times);
+	/***
+	 * Locates the peaks within the data, clearing the ones within the config's deadzone of a taller one
+	 * 
+	 * @param magnitudes the magnitudes of the data
+	 * @param times the times of the data
+	 * @param config the deadzone to use
+	 * @return a double array with values of 1 where there are peaks, and 0 otherwise
+	 */
+	public static int[] findPeaks(double[] magnitudes, double[] times, StepCounterConfig config) {
+		int[] peaks = findRawPeaks(magnitudes);
+		clearExtraPeaks(peaks, magnitudes, times, config.getDeadzone());
 
 		return peaks;
 	}
 	
+	/***
+	 * Locates the peaks within the data after smoothing it
+	 * 
+	 * @param magnitudes the magnitudes of the data
+	 * @param times the times of the data
+	 * @param filter the filter to smooth the magnitudes with
+	 * @param smoothed an array to store the smoothed magnitudes in, at least as long as magnitudes
+	 * @return a double array with values of 1 where there are peaks, and 0 otherwise
+	 */
+	public static int[] findPeaks(double[] magnitudes, double[] times, SmoothingFilter filter, double[] smoothed) {
+		filter.smooth(magnitudes, smoothed, magnitudes.length);
+		if (smoothed.length != magnitudes.length)
+			smoothed = Arrays.copyOf(smoothed, magnitudes.length);
+		return findPeaks(smoothed, times);
+	}
+	
 	/***
 	 * finds all the peaks
 	 * @param magnitudes the array with the magnitude values from acceleration data
@@ -150,19 +412,32 @@ public class CountSteps {
 	}
 	
 	/***
-	 * Clears extra peaks
+	 * Clears extra peaks, keeping only the tallest peak within TIME_THRESHOLD milliseconds
 	 * 
 	 * @param peaks the peak locations
 	 * @param magnitudes the magnitudes of the peaks
-	 * @param deadzone the absolute value range of values to check
+	 * @param deadzone ignored, as it always has been
+	 * @param times the times of the data
+	 * @deprecated the deadzone is measured in time, so pass it in milliseconds
+	 *             to clearExtraPeaks(peaks, magnitudes, times, deadzone)
 	 */
+	@Deprecated
 	public static void clearExtraPeaks(int[] peaks, double[] magnitudes, int deadzone, double[] times) {
-		int range = calculateTimeRange(times);
-		
-		for (int i = 0; i < peaks.length; i++) {
-			if (peaks[i] == 1)
-				checkDeadzoneForTallestPeak(peaks, i, range, magnitudes, times);
-		}
+		clearExtraPeaks(peaks, magnitudes, times, TIME_THRESHOLD);
+	}
+
+	/***
+	 * Clears every peak that has a taller peak less than a deadzone away in time.
+	 * This runs in linear time and doesn't depend on the order the peaks are
+	 * checked in, see PeakSuppressor.
+	 * 
+	 * @param peaks the peak locations
+	 * @param magnitudes the magnitudes of the peaks
+	 * @param times the times of the data in milliseconds
+	 * @param deadzone the time in milliseconds on each side of a peak to check
+	 */
+	public static void clearExtraPeaks(int[] peaks, double[] magnitudes, double[] times, double deadzone) {
+		PeakSuppressor.suppress(peaks, magnitudes, times, peaks.length, deadzone);
 	}
 
 	/***
@@ -172,7 +447,13 @@ public class CountSteps {
 	 * @param index the index to search values around
 	 * @param deadzone the number of values in front of the index to search (also searches deadzone number of values behind it)
 	 * @param magnitudes the magnitudes for the peaks
+	 * @param times not used
+	 * @deprecated only compares the peak with the first other peak in the
+	 *             deadzone, and counts the deadzone in samples; use
+	 *             clearExtraPeaks(peaks, magnitudes, times, deadzone) to clear
+	 *             every peak within a deadzone in milliseconds
 	 */
+	@Deprecated
 	public static void checkDeadzoneForTallestPeak(int[] peaks, int index, int deadzone, double[] magnitudes, double[] times) {
 		int startIndex = index - deadzone, endIndex = index + deadzone;
 		double currentMag = magnitudes[index];
@@ -191,18 +472,6 @@ public class CountSteps {
 		}
 	}
 
-	/***
-	 * returns the range of times
-	 * @param times the times from the data
-	 * @return the integer value of the times to contain the range
-	 */
-	private static int calculateTimeRange(double[] times) {
-		int range = 0;
-		while (times[range] < TIME_THRESHOLD)
-			range++;
-		return range;
-	}
-
 	/***
 	 * returns a small array of the current window of magnitudes to observe
 	 * @param magnitudes the array of the magnitudes of acceleration data
@@ -211,19 +480,16 @@ public class CountSteps {
 	 * @return a small array of the current window of magnitudes to observe
 	 */
 	public static double[] getMagnitudeCluster(double[] magnitudes, int range, int currentValue) {
-		int startIndex = range - currentValue;
-		int endIndex = range + currentValue;
+		int startIndex = currentValue - range;
+		int endIndex = currentValue + range;
 		int currentIndex = 0;
 		
-		if (startIndex < 0) {
-			endIndex -= startIndex;
-			startIndex = 0;
-		}
+		if (startIndex < 0) startIndex = 0;
 		if (endIndex >= magnitudes.length) endIndex = magnitudes.length - 1;
 		
-		double[] output = new double[endIndex - startIndex];
+		double[] output = new double[endIndex - startIndex + 1];
 		
-		for (int i = startIndex; i < endIndex; i++) {
+		for (int i = startIndex; i <= endIndex; i++) {
 			output[currentIndex++] = magnitudes[i];
 		}
 		return output;
@@ -322,6 +588,18 @@ public class CountSteps {
 		return (calculateStandardDeviation(magnitudes, mean) + mean);
 	}
 
+	/***
+	 * Calculates a threshold value for part of the magnitudes without copying them
+	 * @param magnitudes the array with the magnitudes of acceleration
+	 * @param start the first index of the window
+	 * @param end the index to stop at (not included)
+	 * @return the threshold value
+	 */
+	public static double calculateThreshold(double[] magnitudes, int start, int end) {
+		double mean = calculateMean(magnitudes, start, end);
+		return (calculateStandardDeviation(magnitudes, start, end, mean) + mean);
+	}
+
 	public static void displayJFrame(Plot2DPanel plot) {
 		JFrame frame = new JFrame("Results");
 		frame.setSize(800, 600);
@@ -336,8 +614,16 @@ public class CountSteps {
 	 * @return the number of steps taken during the data
 	 */
 	public static int countStepsByFrequencies(double[] time, double[][] sensorData) {
+		return countStepsByFrequencies(calculateMagnitudesFor(sensorData));
+	}
+
+	/***
+	 * Count steps using frequencies, when the magnitudes are already calculated
+	 * @param magnitudes the magnitudes of the accelerations
+	 * @return the number of steps taken during the data
+	 */
+	public static int countStepsByFrequencies(double[] magnitudes) {
 		int stepCount = 0;
-		double[] magnitudes = calculateMagnitudesFor(sensorData);
 		int[] peaks = findRawPeaks(magnitudes);
 		int currentPeriodBetweenPeaks = -1;
 		int lastPeriodBetweenPeaks = -1;
@@ -354,13 +640,24 @@ public class CountSteps {
 	}
 
 	/***
-	 * Finds the next peak
+	 * Count steps from the cadence, the strongest frequency between 0.5 and 4 Hz, 
+	 * added up over the recording (see CadenceCounter)
+	 * @param magnitudes the magnitudes of the accelerations
+	 * @param times the times of the magnitudes in milliseconds
+	 * @return the number of steps taken during the data
+	 */
+	public static int countStepsBySpectrum(double[] magnitudes, double[] times) {
+		return new CadenceCounter().countSteps(magnitudes, times);
+	}
+
+	/***
+	 * Finds the next peak after the current one
 	 * @param currentIndex the current index of the peak
 	 * @param peaks the array with the locations of all the peaks
-	 * @return the index of the next peak
+	 * @return the index of the next peak, or currentIndex if there are no more peaks
 	 */
 	public static int getNextPeak(int currentIndex, int[]peaks) {
-		for (int j = currentIndex; j < peaks.length; j++) {
+		for (int j = currentIndex + 1; j < peaks.length; j++) {
 			if(peaks[j] == 1){
 				return j;
 			}
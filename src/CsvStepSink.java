@@ -0,0 +1,84 @@
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/***
+ * Writes step events as CSV, one line per step under a "time,magnitude,confidence"
+ * header, for spreadsheets and other tools.
+ */
+public class CsvStepSink implements StepSink {
+	public static final String HEADER = "time,magnitude,confidence";
+
+	private final Writer out;
+	private final StringBuilder line = new StringBuilder(64);
+	private IOException error; // the first error, thrown from close
+
+	/***
+	 * Opens a file to write
+	 *
+	 * @param filepath the file, which is replaced
+	 * @throws IOException if the file can't be opened
+	 */
+	public CsvStepSink(String filepath) throws IOException {
+		this(Files.newBufferedWriter(Paths.get(filepath), StandardCharsets.UTF_8));
+	}
+
+	/***
+	 * Writes to a writer, like one for System.out
+	 *
+	 * @param out the writer, which close closes
+	 */
+	public CsvStepSink(Writer out) {
+		this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+		line.append(HEADER).append('\n');
+		write();
+	}
+
+	/***
+	 * Makes a sink that writes to standard output
+	 *
+	 * @return the sink
+	 */
+	public static CsvStepSink toStandardOutput() {
+		return new CsvStepSink(new FilterWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+			@Override
+			public void close() throws IOException {
+				flush(); // standard output stays open
+			}
+		});
+	}
+
+	@Override
+	public void onStep(double time, double magnitude, double confidence) {
+		line.append(time).append(',').append(magnitude).append(',').append(confidence).append('\n');
+		write();
+	}
+
+	private void write() {
+		if (error == null) {
+			try {
+				out.append(line);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		line.setLength(0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (error == null)
+				error = e;
+		}
+		if (error != null)
+			throw error;
+	}
+}
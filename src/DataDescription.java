@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/***
+ * One entry of a data_description.txt file, which lists the recordings in a
+ * folder and how many steps were really taken in each one:
+ *
+ * <pre>
+ * - filename: 10StepJogging.csv
+ * - steps: 10
+ * - gait: jog
+ * ...
+ * ***********************************
+ * </pre>
+ *
+ * The files were written by hand, so the parser is forgiving: the dashes and
+ * spaces are optional, entries can all be on one line, and files saved as RTF
+ * by TextEdit are read too.
+ */
+public class DataDescription {
+	// a key is a word followed by a colon, the value runs to the next key, line or row of stars
+	private static final Pattern KEY = Pattern.compile("\\b([A-Za-z_]+)[ \\t]*:");
+	private static final Pattern VALUE_END = Pattern.compile("\\n|\\*{3,}");
+
+	// RTF control words like \cf0 or \'e9, and a backslash at the end of a line (a new paragraph)
+	private static final Pattern RTF_CONTROL = Pattern.compile("\\\\(?:[A-Za-z]+-?\\d* ?|'[0-9a-fA-F]{2}|\\*)");
+	private static final Pattern RTF_PARAGRAPH = Pattern.compile("\\\\\\r?\\n");
+
+	// "64StepsInHandJogging.csv", "armwalk_40steps_after_5_seconds.txt"
+	private static final Pattern STEPS_IN_NAME = Pattern.compile("(\\d+)[ _-]?steps?", Pattern.CASE_INSENSITIVE);
+
+	private final String filename;
+	private final Map<String, String> fields;
+
+	public DataDescription(String filename, Map<String, String> fields) {
+		this.filename = filename;
+		this.fields = fields;
+	}
+
+	/***
+	 * Reads every entry in a description file
+	 *
+	 * @param descriptionFile the data_description.txt file
+	 * @return the entries, in the order they appear in the file
+	 * @throws IOException if the file can't be read
+	 */
+	public static List<DataDescription> read(File descriptionFile) throws IOException {
+		String text = new String(Files.readAllBytes(descriptionFile.toPath()), StandardCharsets.UTF_8);
+		return parse(text);
+	}
+
+	/***
+	 * Parses the text of a description file
+	 *
+	 * @param text the contents of the file
+	 * @return the entries, in the order they appear
+	 */
+	public static List<DataDescription> parse(String text) {
+		if (text.startsWith("{\\rtf"))
+			text = stripRTF(text);
+		text = text.replace("\r\n", "\n").replace('\r', '\n');
+
+		List<DataDescription> entries = new ArrayList<DataDescription>();
+		Map<String, String> fields = null;
+
+		Matcher key = KEY.matcher(text);
+		Matcher end = VALUE_END.matcher(text);
+		boolean found = key.find();
+		while (found) {
+			String name = key.group(1).toLowerCase();
+			int valueStart = key.end();
+
+			found = key.find();
+			int valueEnd = found ? key.start() : text.length();
+			if (end.find(valueStart) && end.start() < valueEnd)
+				valueEnd = end.start();
+
+			String value = trimValue(text.substring(valueStart, valueEnd));
+			if (name.equals("filename")) {
+				fields = new LinkedHashMap<String, String>();
+				entries.add(new DataDescription(value, fields));
+			} else if (fields != null && !fields.containsKey(name)) {
+				fields.put(name, value);
+			}
+		}
+		return entries;
+	}
+
+	/***
+	 * Finds the entry for a recording, preferring one that has a step count when
+	 * a recording is listed more than once
+	 *
+	 * @param recordingName the file name of the recording
+	 * @param descriptions the entries of the description files in its folder
+	 * @return the entry, or null if the recording isn't described
+	 */
+	public static DataDescription find(String recordingName, List<DataDescription> descriptions) {
+		DataDescription found = null;
+		for (DataDescription description : descriptions) {
+			if (description.describes(recordingName)) {
+				if (!Double.isNaN(description.getSteps()))
+					return description;
+				if (found == null)
+					found = description;
+			}
+		}
+		return found;
+	}
+
+	/***
+	 * Returns the number of steps in a recording's name, for recordings that
+	 * aren't in a description file
+	 *
+	 * @param filename the name of the recording, like "64StepsInHandJogging.csv"
+	 * @return the number of steps, or NaN if the name doesn't say
+	 */
+	public static double stepsFromFilename(String filename) {
+		Matcher matcher = STEPS_IN_NAME.matcher(filename);
+		return matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	/***
+	 * Returns a field of the entry
+	 *
+	 * @param name the name of the field, like "gait" or "phone_location"
+	 * @return the value, or null if the entry doesn't have that field
+	 */
+	public String get(String name) {
+		return fields.get(name);
+	}
+
+	public Map<String, String> getFields() {
+		return fields;
+	}
+
+	/***
+	 * Returns the number of steps really taken in the recording
+	 *
+	 * @return the number of steps, or NaN if it's missing or not a number
+	 */
+	public double getSteps() {
+		String steps = fields.get("steps");
+		if (steps == null)
+			return Double.NaN;
+		try {
+			return Double.parseDouble(steps);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/***
+	 * Checks if this entry describes a recording. Case, spaces, punctuation and
+	 * the extension are ignored, since the names were typed by hand and often
+	 * don't match the files exactly.
+	 *
+	 * @param recordingName the file name of the recording
+	 * @return true if the entry is for that recording
+	 */
+	public boolean describes(String recordingName) {
+		return normalizeName(filename).equals(normalizeName(recordingName));
+	}
+
+	private static String normalizeName(String name) {
+		int dot = name.lastIndexOf('.');
+		if (dot > 0 && name.length() - dot <= 4)
+			name = name.substring(0, dot);
+		return name.toLowerCase().replaceAll("[^a-z0-9]", "");
+	}
+
+	private static String trimValue(String value) {
+		value = value.trim();
+		// entries written on one line run straight into the next "- key:"
+		while (value.endsWith("-"))
+			value = value.substring(0, value.length() - 1).trim();
+		return value;
+	}
+
+	/***
+	 * Turns RTF text into plain text with one line per paragraph
+	 *
+	 * @param rtf the RTF text
+	 * @return the plain text
+	 */
+	static String stripRTF(String rtf) {
+		// line breaks in RTF are only there to wrap long lines, a paragraph is a backslash at the end of a line
+		String text = RTF_PARAGRAPH.matcher(rtf).replaceAll("\u0000");
+		text = text.replace("\r", "").replace("\n", "").replace('\u0000', '\n');
+		text = RTF_CONTROL.matcher(text).replaceAll("");
+		return text.replace("{", "").replace("}", "");
+	}
+}
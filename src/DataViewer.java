@@ -7,6 +7,8 @@ import processing.video.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class DataViewer {
 	public GPlot plot;
@@ -31,8 +33,15 @@ public class DataViewer {
 
 	private int vidX = 70;
 
-	private PImage frame;
-	private Movie movie;
+	private volatile PImage frame; // set by the decoding thread
+	private FrameSeeker frameSeeker;
+	private TimeIndex timeIndex;
+
+	// the x of each row on the plot, and each column at every level of detail
+	private float[] plotTimes;
+	private TimeIndex plotIndex;
+	private MinMaxPyramid[] pyramids;
+	private float shownStart = Float.NaN, shownEnd = Float.NaN; // the x range the layers hold points for
 	private int movieHeight;
 
 	private DataTableDisplay dataDisplay;
@@ -54,10 +63,17 @@ public class DataViewer {
 		this.data = data;
 		this.names = names;
 
-		movie = new Movie(window, moviePath);
-		this.jumpToTime(0); // start at time 0
-		this.movieWidth = movie.width;
-		this.movieHeight = movie.height;
+		timeIndex = new TimeIndex(data);
+		frameSeeker = new FrameSeeker(window, moviePath);
+		try {
+			this.jumpToTime(0).get(); // start at time 0, waiting for the frame to size the plot
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+		}
+		if (frame != null) {
+			this.movieWidth = frame.width;
+			this.movieHeight = frame.height;
+		}
 
 		int completely_clear = window.color(255, 255, 255, 0);
 		int tinted = window.color(200, 200, 200, 100);
@@ -76,38 +92,38 @@ public class DataViewer {
 		plot.setXLim(0, WINDOW_SIZE);
 		// plot2.activateZooming(1.5f);
 
-		// Find min & max data values to pre-scale y-axis.
-		double min = Double.MAX_VALUE, max = Double.MIN_VALUE;
+		plotTimes = new float[data.length];
+		double[] plotTimesForIndex = new double[data.length];
+		for (int row = 0; row < data.length; row++) {
+			if (isTimeDataElapsed) {
+				plotTimes[row] = (float) data[row][0];
+			} else {
+				plotTimes[row] = (float) ((data[row][0] - data[0][0]) / 1000.0);
+			}
+			plotTimesForIndex[row] = plotTimes[row];
+		}
+		plotIndex = new TimeIndex(plotTimesForIndex);
 
-		ArrayList<GPointsArray> pointArrays = new ArrayList<GPointsArray>();
+		// Only the visible window is handed to grafica, at about one block per
+		// pixel (see updateVisiblePoints), so long recordings draw as fast as short ones
+		pyramids = new MinMaxPyramid[data[0].length - 1];
+		float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
 		for (int col = 1; col < data[0].length; col++) {
-			GPointsArray points = new GPointsArray();
-
-			for (int row = 0; row < data.length; row++) {
-				float time;
-				if (isTimeDataElapsed) {
-					time = (float) data[row][0];
-				} else {
-					time = (float) ((data[row][0] - data[0][0]) / 1000.0);
-				}
+			MinMaxPyramid pyramid = new MinMaxPyramid(data, col);
+			pyramids[col - 1] = pyramid;
 
-				points.add(time, (float) data[row][col]);
-
-				if (data[row][col] < min)
-					min = data[row][col];
-				if (data[row][col] > max)
-					max = data[row][col];
-			}
-
-			pointArrays.add(points);
+			// Find min & max data values to pre-scale y-axis, from the one block at the top
+			int top = pyramid.getNumLevels() - 1;
+			min = Math.min(min, pyramid.getMin(top, 0));
+			max = Math.max(max, pyramid.getMax(top, 0));
 		}
 
 		// set y axis scale
-		plot.setYLim((float) min, (float) max);
+		plot.setYLim(min, max);
 
-		System.out.println("Points array size: " + pointArrays.size());
-		for (int i = 0; i < pointArrays.size(); i++) {
-			plot.addLayer(names[i+1], pointArrays.get(i));
+		System.out.println("Points array size: " + pyramids.length);
+		for (int i = 0; i < pyramids.length; i++) {
+			plot.addLayer(names[i+1], new GPointsArray());
 			plot.getLayer(names[i+1]).setLineColor(getUniqueLineColor());
 		}
 
@@ -146,45 +162,31 @@ public class DataViewer {
 	}
 
 	public void jumpBy(int tick) {
+		// the frames one tick either side are decoded ahead, ready for the next jump
+		frameSeeker.setPrefetchStep(Math.abs(tick));
 		jumpToTime(time_inMs + tick);
 	}
 
-	public void jumpToTime(int newTime_inMs) {
-		double elapsedTimeSinceInitial = (newTime_inMs - this.initialElapsedTime_inMs)/1000.0;
-		double elapsedDataTimeSinceInitial = (data[currentDataIndex][0] - data[0][0]) / 1000.0;
-		
-		// adjust current data index
-		if (this.currentTime_inSec < newTime_inMs / 1000.0) {
-
-			while (this.currentDataIndex < data.length
-					&& elapsedDataTimeSinceInitial <= elapsedTimeSinceInitial ){
-				currentDataIndex++;
-				elapsedDataTimeSinceInitial = (data[currentDataIndex][0] - data[0][0]) / 1000.0;
-			}
-
-			currentDataIndex--;
-		} else if (this.currentTime_inSec > newTime_inMs / 1000.0) {
-
-			while (this.currentDataIndex >= 0
-					&& elapsedDataTimeSinceInitial >= elapsedTimeSinceInitial){
-				elapsedDataTimeSinceInitial = (data[currentDataIndex][0] - data[0][0]) / 1000.0;
-				currentDataIndex--;
-			}
-		}
+	/***
+	 * Moves the video and the data to a time. The data row is found right
+	 * away; the frame is decoded in the background and shown once it's ready.
+	 * 
+	 * @param newTime_inMs the time in the video in milliseconds
+	 * @return the frame, once it has been decoded
+	 */
+	public Future<PImage> jumpToTime(int newTime_inMs) {
+		// the last row recorded at or before the same time since the zero point
+		currentDataIndex = timeIndex.rowAt(newTime_inMs - this.initialElapsedTime_inMs);
 
-		movie.jump((float) (newTime_inMs / 1000.0));
-		movie.play();
-
-		while (!movie.available()) { // There's certainly a better way to do
-										// this
-			System.out.print("."); // if need be; figure it out
-		}
-		
-		movie.read();
-		frame = movie.get();
-		movie.pause();
 		this.time_inMs = newTime_inMs;
 		this.currentTime_inSec = newTime_inMs / 1000.0;
+
+		return frameSeeker.seek(newTime_inMs, new FrameSeeker.FrameListener() {
+			@Override
+			public void onFrame(int time_inMs, PImage decoded) {
+				frame = decoded;
+			}
+		});
 	}
 
 	public void draw() {
@@ -199,6 +201,9 @@ public class DataViewer {
 					"Use the arrow keys to move to the frame where you start recording data with your phone.  Then hit the 'z' key to zero it there. ",
 					movieWidth / 2, (float) (movieHeight * 1.5));
 		} else {
+			float plotTime = (time_inMs - this.initialElapsedTime_inMs) / 1000.0f;
+			updateVisiblePoints(plotTime - WINDOW_SIZE, plotTime + WINDOW_SIZE);
+
 			// Draw the second plot
 			plot.beginDraw();
 			// plot.drawBackground();
@@ -234,6 +239,47 @@ public class DataViewer {
 		window.text("time since vid start: " + this.currentTime_inSec + " sec.", 60, this.movieHeight + 10);
 	}
 
+	/***
+	 * Gives each layer the points between two times, at the level of detail
+	 * where each pixel of the plot holds about one block, so the number of
+	 * points drawn depends on the plot's width and not on the recording. Does
+	 * nothing if the layers already hold that window.
+	 * 
+	 * @param start the earliest time on the plot
+	 * @param end the latest time on the plot
+	 */
+	private void updateVisiblePoints(float start, float end) {
+		if (start == shownStart && end == shownEnd)
+			return;
+		shownStart = start;
+		shownEnd = end;
+
+		// one row either side, so the lines run off the edges of the plot
+		int first = plotIndex.rowAt(start - plotTimes[0]);
+		int last = Math.min(plotIndex.rowAt(end - plotTimes[0]) + 1, plotTimes.length - 1);
+		int width = Math.max(1, (int) plot.getDim()[0]);
+
+		for (int i = 0; i < pyramids.length; i++) {
+			MinMaxPyramid pyramid = pyramids[i];
+			int level = pyramid.levelFor(last - first + 1, width);
+			GPointsArray points = new GPointsArray(2 * width + 4);
+
+			if (level == 0) {
+				for (int row = first; row <= last; row++)
+					points.add(plotTimes[row], pyramid.getMin(0, row));
+			} else {
+				// each block is drawn through its smallest and largest value, in the order they happened
+				for (int block = first >> level; block <= last >> level; block++) {
+					int low = pyramid.getMinIndex(level, block), high = pyramid.getMaxIndex(level, block);
+					points.add(plotTimes[Math.min(low, high)], pyramid.getValue(Math.min(low, high)));
+					if (low != high)
+						points.add(plotTimes[Math.max(low, high)], pyramid.getValue(Math.max(low, high)));
+				}
+			}
+			plot.setPoints(points, names[i+1]);
+		}
+	}
+
 	public void setDisplaySuperImposed(boolean superImposed) {
 		if (superImposed)
 			plot.setPos(0, 0);
@@ -0,0 +1,611 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+/***
+ * An index of every recording in the data folders, with what its
+ * data_description.txt says about it and a few statistics of its data, so a
+ * batch job can pick recordings ("every jog with the phone in a pocket") and
+ * know how big they are without opening them.
+ *
+ * The description files were written by hand in slightly different ways, so
+ * the fields are tidied up: "data_lof_freq" is read as data_log_freq,
+ * "location" as phone_location and phone_model as the device, and gait and
+ * phone location are lower case with words joined by '_', so "Comfortable
+ * walk" and "comfortable-walk" are both "comfortable_walk". Recordings that
+ * aren't described take their step count from their file name.
+ *
+ * The index is saved as a tab separated file. Statistics are only worked out
+ * for recordings that are new, or whose size or time changed since the index
+ * was saved, so keeping it up to date reads nothing twice.
+ *
+ * Usage: java DatasetManifest [-o manifest.tsv] [folder or zip ...]
+ */
+public class DatasetManifest implements Closeable {
+	public static final String DEFAULT_PATH = "dataset_manifest.tsv";
+	public static final String[] FIELDS = { "path", "steps", "gait", "phone_location", "data_log_freq", "device",
+			"bytes", "modified", "samples", "duration_ms", "magnitude_mean", "magnitude_std" };
+
+	/***
+	 * One recording in the index
+	 */
+	public static class Entry {
+		String zipPath; // the zip the recording is in, or null for a file on disk
+		String name; // the file path, or the entry name in the zip
+		double steps = Double.NaN;
+		String gait = "";
+		String phoneLocation = "";
+		double dataLogFreq = Double.NaN;
+		String device = "";
+		long bytes; // the size of the file
+		long modified; // the time the file was last changed
+
+		int samples = -1; // -1 until the statistics are worked out, 0 if the recording couldn't be read
+		double durationMs = Double.NaN;
+		double magnitudeMean = Double.NaN;
+		double magnitudeStd = Double.NaN;
+
+		/***
+		 * Returns where the recording is, like "data/15StepWalking.csv" or
+		 * "data.zip!/data/15StepWalking.csv"
+		 *
+		 * @return the path of the recording
+		 */
+		public String getPath() {
+			return zipPath == null ? name : zipPath + "!/" + name;
+		}
+
+		public String getZipPath() {
+			return zipPath;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/***
+		 * Returns the number of steps really taken
+		 *
+		 * @return the number of steps, or NaN if neither the description nor the file name says
+		 */
+		public double getSteps() {
+			return steps;
+		}
+
+		public String getGait() {
+			return gait;
+		}
+
+		public String getPhoneLocation() {
+			return phoneLocation;
+		}
+
+		/***
+		 * Returns the sample rate the description says the recording was logged at
+		 *
+		 * @return the rate in Hz, or NaN if it isn't described
+		 */
+		public double getDataLogFreq() {
+			return dataLogFreq;
+		}
+
+		public String getDevice() {
+			return device;
+		}
+
+		public boolean hasStatistics() {
+			return samples >= 0;
+		}
+
+		/***
+		 * Returns the number of samples in the recording
+		 *
+		 * @return the number of samples, 0 if it couldn't be read, or -1 if it hasn't been read
+		 */
+		public int getSamples() {
+			return samples;
+		}
+
+		public double getDurationMs() {
+			return durationMs;
+		}
+
+		public double getMagnitudeMean() {
+			return magnitudeMean;
+		}
+
+		public double getMagnitudeStd() {
+			return magnitudeStd;
+		}
+
+		/***
+		 * Returns a field by its name in FIELDS, as it is written to the index
+		 *
+		 * @param field the name of the field
+		 * @return the value as text
+		 */
+		public String get(String field) {
+			switch (field) {
+			case "path":
+				return getPath();
+			case "steps":
+				return format(steps);
+			case "gait":
+				return gait;
+			case "phone_location":
+				return phoneLocation;
+			case "data_log_freq":
+				return format(dataLogFreq);
+			case "device":
+				return device;
+			case "bytes":
+				return String.valueOf(bytes);
+			case "modified":
+				return String.valueOf(modified);
+			case "samples":
+				return String.valueOf(samples);
+			case "duration_ms":
+				return format(durationMs);
+			case "magnitude_mean":
+				return format(magnitudeMean);
+			case "magnitude_std":
+				return format(magnitudeStd);
+			default:
+				throw new IllegalArgumentException("Unknown manifest field " + field);
+			}
+		}
+
+		private void set(String field, String value) {
+			switch (field) {
+			case "path":
+				int split = value.indexOf("!/");
+				zipPath = split < 0 ? null : value.substring(0, split);
+				name = split < 0 ? value : value.substring(split + 2);
+				break;
+			case "steps":
+				steps = Double.parseDouble(value);
+				break;
+			case "gait":
+				gait = value;
+				break;
+			case "phone_location":
+				phoneLocation = value;
+				break;
+			case "data_log_freq":
+				dataLogFreq = Double.parseDouble(value);
+				break;
+			case "device":
+				device = value;
+				break;
+			case "bytes":
+				bytes = Long.parseLong(value);
+				break;
+			case "modified":
+				modified = Long.parseLong(value);
+				break;
+			case "samples":
+				samples = Integer.parseInt(value);
+				break;
+			case "duration_ms":
+				durationMs = Double.parseDouble(value);
+				break;
+			case "magnitude_mean":
+				magnitudeMean = Double.parseDouble(value);
+				break;
+			case "magnitude_std":
+				magnitudeStd = Double.parseDouble(value);
+				break;
+			}
+		}
+
+		private void copyStatistics(Entry from) {
+			samples = from.samples;
+			durationMs = from.durationMs;
+			magnitudeMean = from.magnitudeMean;
+			magnitudeStd = from.magnitudeStd;
+		}
+	}
+
+	/***
+	 * Picks entries out of the index
+	 */
+	public interface Filter {
+		boolean accept(Entry entry);
+	}
+
+	private final List<Entry> entries;
+	private final Map<String, ZipDataset> zips = new HashMap<String, ZipDataset>();
+
+	public DatasetManifest(List<Entry> entries) {
+		this.entries = entries;
+	}
+
+	public static void main(String[] args) {
+		String output = DEFAULT_PATH;
+		List<String> sources = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-o"))
+				output = args[++i];
+			else
+				sources.add(args[i]);
+		}
+		if (sources.isEmpty())
+			sources.addAll(Arrays.asList(BatchEvaluation.DEFAULT_FOLDERS));
+
+		try (DatasetManifest manifest = scan(sources)) {
+			DatasetManifest previous = new File(output).exists() ? load(output) : null;
+			long start = System.nanoTime();
+			int read = manifest.update(previous);
+			manifest.save(output);
+
+			System.out.println(String.format("%d recordings indexed in %s, %d read in %.3f s", manifest.entries.size(),
+					output, read, (System.nanoTime() - start) / 1e9));
+			printCounts(manifest, "gait");
+			printCounts(manifest, "phone_location");
+			printCounts(manifest, "device");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void printCounts(DatasetManifest manifest, String field) {
+		Map<String, Integer> counts = new TreeMap<String, Integer>();
+		for (Entry entry : manifest.entries) {
+			String value = entry.get(field).isEmpty() ? "(none)" : entry.get(field);
+			counts.put(value, counts.containsKey(value) ? counts.get(value) + 1 : 1);
+		}
+		System.out.println(field + ": " + counts);
+	}
+
+	/***
+	 * Finds every recording in some folders and zip files, with what their
+	 * descriptions say, but without reading them
+	 *
+	 * @param sources the folders and zip files to search
+	 * @return the index, without statistics
+	 * @throws IOException if a zip or a description can't be read
+	 */
+	public static DatasetManifest scan(List<String> sources) throws IOException {
+		DatasetManifest manifest = new DatasetManifest(new ArrayList<Entry>());
+		for (String source : sources) {
+			if (source.toLowerCase().endsWith(".zip"))
+				scan(manifest.getZip(source), manifest.entries);
+			else
+				scan(new File(source), manifest.entries);
+		}
+		return manifest;
+	}
+
+	/***
+	 * Finds every recording in a folder and its subfolders
+	 *
+	 * @param folder the folder to search
+	 * @param entries the list to add the recordings to
+	 */
+	public static void scan(File folder, List<Entry> entries) {
+		File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files);
+
+		List<DataDescription> descriptions = new ArrayList<DataDescription>();
+		for (File file : files) {
+			if (file.isFile() && isDescription(file.getName())) {
+				try {
+					descriptions.addAll(DataDescription.read(file));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		for (File file : files) {
+			if (file.isDirectory()) {
+				scan(file, entries);
+			} else if (isRecording(file.getName())) {
+				Entry entry = describe(file.getName(), descriptions);
+				entry.name = file.getPath();
+				entry.bytes = file.length();
+				entry.modified = file.lastModified();
+				entries.add(entry);
+			}
+		}
+	}
+
+	/***
+	 * Finds every recording in a zip file. Each folder in the zip is described
+	 * by its own description files, like a folder on disk.
+	 *
+	 * @param zip the zip to search
+	 * @param entries the list to add the recordings to
+	 * @throws IOException if a description can't be read
+	 */
+	public static void scan(ZipDataset zip, List<Entry> entries) throws IOException {
+		List<String> names = zip.getEntryNames();
+		Collections.sort(names);
+
+		Map<String, List<DataDescription>> descriptions = new HashMap<String, List<DataDescription>>();
+		for (String name : names) {
+			String folder = name.substring(0, name.lastIndexOf('/') + 1);
+			if (!descriptions.containsKey(folder))
+				descriptions.put(folder, new ArrayList<DataDescription>());
+			if (isDescription(name.substring(folder.length())))
+				descriptions.get(folder).addAll(DataDescription.parse(zip.readText(name)));
+		}
+
+		for (String name : names) {
+			String folder = name.substring(0, name.lastIndexOf('/') + 1);
+			String filename = name.substring(folder.length());
+			if (!isRecording(filename))
+				continue;
+
+			ZipEntry zipEntry = zip.getEntry(name);
+			Entry entry = describe(filename, descriptions.get(folder));
+			entry.zipPath = zip.getPath();
+			entry.name = name;
+			entry.bytes = zipEntry.getSize();
+			entry.modified = zipEntry.getTime();
+			entries.add(entry);
+		}
+	}
+
+	/***
+	 * Reads an index saved by save. Columns are found by name, so an index
+	 * written with fewer fields can still be read.
+	 *
+	 * @param path the index file
+	 * @return the index
+	 * @throws IOException if the file can't be read or isn't an index
+	 */
+	public static DatasetManifest load(String path) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith("path\t"))
+				throw new IOException(path + " is not a dataset manifest");
+			String[] fields = header.split("\t", -1);
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				String[] values = line.split("\t", -1);
+				Entry entry = new Entry();
+				try {
+					for (int i = 0; i < fields.length && i < values.length; i++)
+						entry.set(fields[i], values[i]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Bad line in " + path + ": " + line, e);
+				}
+				entries.add(entry);
+			}
+		}
+		return new DatasetManifest(entries);
+	}
+
+	/***
+	 * Saves the index as a tab separated file with a header line
+	 *
+	 * @param path the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void save(String path) throws IOException {
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+			writer.print(String.join("\t", FIELDS) + "\n");
+			for (Entry entry : entries) {
+				String[] values = new String[FIELDS.length];
+				for (int i = 0; i < FIELDS.length; i++)
+					values[i] = entry.get(FIELDS[i]).replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+				writer.print(String.join("\t", values) + "\n");
+			}
+		}
+	}
+
+	/***
+	 * Works out the statistics of every entry that doesn't have them. Entries
+	 * that were in a previous index, and whose file has the same size and time,
+	 * take their statistics from it instead of being read again.
+	 *
+	 * @param previous the index saved last time, or null
+	 * @return the number of recordings that had to be read
+	 */
+	public int update(DatasetManifest previous) {
+		Map<String, Entry> known = new HashMap<String, Entry>();
+		if (previous != null)
+			for (Entry entry : previous.entries)
+				known.put(entry.getPath(), entry);
+
+		int read = 0;
+		for (Entry entry : entries) {
+			Entry old = known.get(entry.getPath());
+			if (old != null && old.hasStatistics() && old.bytes == entry.bytes && old.modified == entry.modified)
+				entry.copyStatistics(old);
+			if (!entry.hasStatistics()) {
+				computeStatistics(entry);
+				read++;
+			}
+		}
+		return read;
+	}
+
+	private void computeStatistics(Entry entry) {
+		CSVData data;
+		try {
+			data = read(entry);
+		} catch (IOException e) {
+			entry.samples = 0;
+			return;
+		}
+
+		double[] times = data.getColumn(ColumnMapping.TIME);
+		double[] magnitudes = CountSteps.calculateMagnitudesFor(data.getColumn(ColumnMapping.ACCEL_X),
+				data.getColumn(ColumnMapping.ACCEL_Y), data.getColumn(ColumnMapping.ACCEL_Z));
+
+		entry.samples = times.length;
+		entry.durationMs = times.length > 0 ? times[times.length - 1] - times[0] : 0;
+
+		double sum = 0;
+		int count = 0;
+		for (double magnitude : magnitudes) {
+			if (!Double.isNaN(magnitude)) {
+				sum += magnitude;
+				count++;
+			}
+		}
+		double mean = sum / count;
+		double squares = 0;
+		for (double magnitude : magnitudes)
+			if (!Double.isNaN(magnitude))
+				squares += (magnitude - mean) * (magnitude - mean);
+
+		entry.magnitudeMean = count > 0 ? mean : Double.NaN;
+		entry.magnitudeStd = count > 0 ? Math.sqrt(squares / count) : Double.NaN;
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/***
+	 * Picks the entries every filter accepts
+	 *
+	 * @param filters the filters
+	 * @return the entries, in index order
+	 */
+	public List<Entry> select(Filter... filters) {
+		List<Entry> selected = new ArrayList<Entry>();
+		for (Entry entry : entries) {
+			boolean accepted = true;
+			for (Filter filter : filters)
+				accepted &= filter.accept(entry);
+			if (accepted)
+				selected.add(entry);
+		}
+		return selected;
+	}
+
+	/***
+	 * Makes a filter on one field. Numbers must be equal, and text must contain
+	 * the value after both are tidied up the way gait and phone location are,
+	 * so where("phone_location", "pocket") accepts "front_right_pocket".
+	 *
+	 * @param field the name of the field in FIELDS
+	 * @param value the value to look for
+	 * @return the filter
+	 */
+	public static Filter where(final String field, final String value) {
+		return new Filter() {
+			@Override
+			public boolean accept(Entry entry) {
+				String actual = entry.get(field);
+				try {
+					return Double.parseDouble(actual) == Double.parseDouble(value);
+				} catch (NumberFormatException e) {
+					return normalizeValue(actual).contains(normalizeValue(value));
+				}
+			}
+		};
+	}
+
+	/***
+	 * Reads the recording of an entry with the reader for its layout
+	 *
+	 * @param entry the entry
+	 * @return the standard table
+	 * @throws IOException if the recording can't be read
+	 */
+	public CSVData read(Entry entry) throws IOException {
+		if (entry.zipPath == null)
+			return RecordingReaders.read(entry.name);
+		return getZip(entry.zipPath).read(entry.name);
+	}
+
+	/***
+	 * Returns the zip a recording is in, opening it the first time
+	 *
+	 * @param entry the entry
+	 * @return the zip, or null for a recording on disk
+	 * @throws IOException if the zip can't be opened
+	 */
+	public ZipDataset getZip(Entry entry) throws IOException {
+		return entry.zipPath == null ? null : getZip(entry.zipPath);
+	}
+
+	private synchronized ZipDataset getZip(String path) throws IOException {
+		ZipDataset zip = zips.get(path);
+		if (zip == null) {
+			zip = new ZipDataset(path);
+			zips.put(path, zip);
+		}
+		return zip;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (ZipDataset zip : zips.values())
+			zip.close();
+		zips.clear();
+	}
+
+	static boolean isDescription(String filename) {
+		String name = filename.toLowerCase();
+		return name.endsWith(".txt") && name.contains("description");
+	}
+
+	static boolean isRecording(String filename) {
+		String name = filename.toLowerCase();
+		return !isDescription(filename) && (name.endsWith(".csv") || name.endsWith(".txt") || name.endsWith(".bin"));
+	}
+
+	/***
+	 * Makes an entry with what the descriptions say about a recording
+	 */
+	private static Entry describe(String filename, List<DataDescription> descriptions) {
+		Entry entry = new Entry();
+		DataDescription description = DataDescription.find(filename, descriptions);
+		if (description != null) {
+			entry.steps = description.getSteps();
+			entry.gait = normalizeValue(firstField(description, "gait"));
+			entry.phoneLocation = normalizeValue(firstField(description, "phone_location", "location"));
+			entry.device = firstField(description, "phone_model", "device");
+			try {
+				entry.dataLogFreq = Double.parseDouble(firstField(description, "data_log_freq", "data_lof_freq"));
+			} catch (NumberFormatException e) {
+				entry.dataLogFreq = Double.NaN;
+			}
+		}
+		if (Double.isNaN(entry.steps))
+			entry.steps = DataDescription.stepsFromFilename(filename);
+		return entry;
+	}
+
+	private static String firstField(DataDescription description, String... names) {
+		for (String name : names) {
+			String value = description.get(name);
+			if (value != null && !value.isEmpty())
+				return value;
+		}
+		return "";
+	}
+
+	private static String normalizeValue(String value) {
+		return value.toLowerCase().replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "");
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) && !Double.isInfinite(value) ? String.valueOf((long) value) : String.valueOf(value);
+	}
+}
@@ -0,0 +1,78 @@
+/***
+ * An exponential moving average: each output moves a fraction alpha of the
+ * way from the last output to the new sample. It only looks back, so it has
+ * no delay, but the smoothed signal lags behind the real one a little.
+ */
+public class ExponentialFilter implements SmoothingFilter {
+	private final double alpha;
+
+	private double last;
+	private boolean started = false;
+
+	/***
+	 * Creates an exponential moving average
+	 *
+	 * @param alpha how much of each new sample to take, between 0 (ignore new samples) and 1 (no smoothing)
+	 */
+	public ExponentialFilter(double alpha) {
+		if (!(alpha > 0 && alpha <= 1))
+			throw new IllegalArgumentException("alpha must be in (0, 1], not " + alpha);
+		this.alpha = alpha;
+	}
+
+	/***
+	 * Creates an exponential moving average that smooths about as much as a
+	 * moving average over window samples
+	 *
+	 * @param window the window of the moving average to match
+	 * @return the filter
+	 */
+	public static ExponentialFilter forWindow(int window) {
+		return new ExponentialFilter(2.0 / (window + 1));
+	}
+
+	@Override
+	public void smooth(double[] input, double[] output, int length) {
+		if (length == 0)
+			return;
+		double value = input[0];
+		output[0] = value;
+		for (int i = 1; i < length; i++) {
+			value += alpha * (input[i] - value);
+			output[i] = value;
+		}
+	}
+
+	@Override
+	public double add(double value) {
+		if (!started) {
+			started = true;
+			last = value;
+		} else {
+			last += alpha * (value - last);
+		}
+		return last;
+	}
+
+	@Override
+	public int finish(double[] output) {
+		// add already returned every sample
+		reset();
+		return 0;
+	}
+
+	@Override
+	public int getDelay() {
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "ExponentialFilter(" + alpha + ")";
+	}
+
+	@Override
+	public void reset() {
+		started = false;
+	}
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+
+/***
+ * Writes the steps found in a recording as events, to a binary step log (see
+ * BinaryStepLog) or CSV, or prints a binary step log as CSV. Without an
+ * output file the events are printed as CSV.
+ *
+ * Usage: java ExportSteps [-strategy adaptive|global] recording [output.stev | output.csv]
+ * <br>
+ * or: java ExportSteps -read log.stev
+ */
+public class ExportSteps {
+
+	public static void main(String[] args) {
+		ThresholdStrategy strategy = ThresholdStrategy.ADAPTIVE;
+		String logToRead = null;
+		String recording = null, output = null;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-strategy"))
+				strategy = ThresholdStrategy.valueOf(args[++i].toUpperCase());
+			else if (args[i].equals("-read"))
+				logToRead = args[++i];
+			else if (recording == null)
+				recording = args[i];
+			else
+				output = args[i];
+		}
+		if (logToRead == null && recording == null) {
+			System.out.println("Usage: java ExportSteps [-strategy adaptive|global] recording [output.stev | output.csv]");
+			System.out.println("   or: java ExportSteps -read log.stev");
+			return;
+		}
+
+		try {
+			if (logToRead != null) {
+				try (StepSink out = CsvStepSink.toStandardOutput()) {
+					BinaryStepLog.read(logToRead, out);
+				}
+				return;
+			}
+
+			AnalysisContext analysis = AnalysisContext.of(RecordingReaders.read(recording));
+			int steps;
+			try (StepSink out = open(output)) {
+				steps = analysis.findSteps(strategy, null, StepCounterConfig.DEFAULT, out);
+			}
+			if (output != null)
+				System.out.println(steps + " steps written to " + output);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * Opens a sink for a file, picking the format by its extension
+	 *
+	 * @param output the file, or null for standard output
+	 * @return the sink
+	 * @throws IOException if the file can't be opened
+	 */
+	private static StepSink open(String output) throws IOException {
+		if (output == null)
+			return CsvStepSink.toStandardOutput();
+		if (output.toLowerCase().endsWith(".csv"))
+			return new CsvStepSink(output);
+		return new BinaryStepLog(output);
+	}
+}
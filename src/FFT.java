@@ -0,0 +1,102 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * An in-place radix-2 fast Fourier transform. The twiddle factors and the
+ * bit-reversal order depend only on the size, so they are worked out once per
+ * size and shared: get a plan with FFT.forSize and reuse it for every frame.
+ * A plan never changes after it is made, so threads can share it.
+ */
+public class FFT {
+	private static final Map<Integer, FFT> PLANS = new ConcurrentHashMap<Integer, FFT>();
+
+	private final int size;
+	private final int[] reversed; // reversed[i] is i with its bits reversed
+	private final double[] cos, sin; // the twiddle factors for the largest butterfly
+
+	private FFT(int size) {
+		if (size < 1 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("The FFT size must be a power of 2, not " + size);
+		this.size = size;
+
+		int bits = Integer.numberOfTrailingZeros(size);
+		reversed = new int[size];
+		for (int i = 0; i < size; i++)
+			reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+
+		cos = new double[size / 2];
+		sin = new double[size / 2];
+		for (int i = 0; i < size / 2; i++) {
+			cos[i] = Math.cos(2 * Math.PI * i / size);
+			sin[i] = -Math.sin(2 * Math.PI * i / size);
+		}
+	}
+
+	/***
+	 * Returns the plan for a size, making it the first time the size is used
+	 *
+	 * @param size the number of points, a power of 2
+	 * @return the plan
+	 */
+	public static FFT forSize(int size) {
+		FFT plan = PLANS.get(size);
+		if (plan == null) {
+			plan = new FFT(size);
+			PLANS.put(size, plan);
+		}
+		return plan;
+	}
+
+	/***
+	 * Returns the smallest power of 2 that is at least n
+	 *
+	 * @param n the number of points needed
+	 * @return a power of 2
+	 */
+	public static int sizeFor(int n) {
+		return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/***
+	 * Replaces a signal with its discrete Fourier transform
+	 *
+	 * @param real the real parts, size long
+	 * @param imaginary the imaginary parts, size long (all zeros for a real signal)
+	 */
+	public void transform(double[] real, double[] imaginary) {
+		for (int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				double swap = real[i];
+				real[i] = real[j];
+				real[j] = swap;
+				swap = imaginary[i];
+				imaginary[i] = imaginary[j];
+				imaginary[j] = swap;
+			}
+		}
+
+		for (int length = 2; length <= size; length <<= 1) {
+			int half = length >> 1;
+			int step = size / length;
+
+			for (int start = 0; start < size; start += length) {
+				for (int k = 0; k < half; k++) {
+					double wr = cos[k * step], wi = sin[k * step];
+					int a = start + k, b = a + half;
+
+					double tr = wr * real[b] - wi * imaginary[b];
+					double ti = wr * imaginary[b] + wi * real[b];
+					real[b] = real[a] - tr;
+					imaginary[b] = imaginary[a] - ti;
+					real[a] += tr;
+					imaginary[a] += ti;
+				}
+			}
+		}
+	}
+}
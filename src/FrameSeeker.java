@@ -0,0 +1,245 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+import processing.video.Movie;
+
+/***
+ * Decodes the frames of a movie away from the drawing thread, so seeking
+ * doesn't hold up the sketch.
+ *
+ * A seek jumps the movie and then sleeps until the video library reports the
+ * new frame through its movieEvent callback, instead of polling available().
+ * Seeks run one at a time on a single decoding thread, since a Movie can only
+ * be at one place at once. A seek that is replaced by a newer one before it
+ * starts is dropped, so holding down an arrow key never builds up a backlog.
+ *
+ * After each seek the frames a few steps before and after it are decoded
+ * while the decoder is idle, and the last few frames are kept, so scrubbing
+ * back and forth mostly finds its frames already decoded.
+ */
+public class FrameSeeker {
+	public static final int DEFAULT_PREFETCH_RADIUS = 3;
+	public static final int DEFAULT_PREFETCH_STEP = 50; // in milliseconds
+
+	// how long to wait for a frame before giving up, in case the movie has none there
+	private static final long FRAME_TIMEOUT_MS = 2000;
+
+	/***
+	 * Told about a frame once it has been decoded
+	 */
+	public interface FrameListener {
+		/***
+		 * Called on the decoding thread, or on the seeking thread if the frame
+		 * had already been decoded. It isn't called for a seek that a newer one
+		 * replaced.
+		 *
+		 * @param time_inMs the time of the frame in the movie
+		 * @param frame a copy of the frame
+		 */
+		void onFrame(int time_inMs, PImage frame);
+	}
+
+	private final Movie movie;
+	private final ExecutorService decoder;
+	private final int prefetchRadius;
+	private volatile int prefetchStep = DEFAULT_PREFETCH_STEP;
+
+	// the decoded frames by time, in access order so the first is the one used longest ago
+	private final LinkedHashMap<Integer, PImage> frames;
+
+	// counts the seeks, so a task can tell that a newer seek replaced it
+	private final AtomicInteger latestSeek = new AtomicInteger();
+
+	private final Object frameLock = new Object();
+	private boolean frameReady = false;
+
+	public FrameSeeker(PApplet window, String moviePath) {
+		this(window, moviePath, DEFAULT_PREFETCH_RADIUS);
+	}
+
+	/***
+	 * Opens a movie
+	 *
+	 * @param window the sketch the movie belongs to
+	 * @param moviePath the movie file
+	 * @param prefetchRadius how many frames to decode on each side of a seek
+	 */
+	public FrameSeeker(PApplet window, String moviePath, int prefetchRadius) {
+		final FrameSeeker seeker = this;
+		this.movie = new Movie(window, moviePath) {
+			{
+				// send new frames to movieEvent below instead of to the sketch
+				setEventHandlerObject(seeker);
+			}
+		};
+		this.prefetchRadius = prefetchRadius;
+
+		final int capacity = 2 * prefetchRadius + 2;
+		this.frames = new LinkedHashMap<Integer, PImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, PImage> eldest) {
+				return size() > capacity;
+			}
+		};
+
+		this.decoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "FrameSeeker " + moviePath);
+				thread.setDaemon(true); // so an open movie doesn't keep the sketch running
+				return thread;
+			}
+		});
+	}
+
+	/***
+	 * Sets how far apart the prefetched frames are, normally the distance the
+	 * viewer moves at a time
+	 *
+	 * @param step_inMs the distance between prefetched frames in milliseconds
+	 */
+	public void setPrefetchStep(int step_inMs) {
+		if (step_inMs > 0)
+			this.prefetchStep = step_inMs;
+	}
+
+	/***
+	 * Starts getting the frame at a time and returns right away. Frames that
+	 * were decoded already are handed to the listener before this returns.
+	 *
+	 * @param time_inMs the time in the movie
+	 * @param listener told about the frame once it is decoded, or null
+	 * @return the frame once it is decoded, or null if a newer seek replaced
+	 *         this one or the movie has no frame there
+	 */
+	public Future<PImage> seek(final int time_inMs, final FrameListener listener) {
+		final int seek = latestSeek.incrementAndGet();
+
+		Future<PImage> result;
+		PImage decoded = getDecoded(time_inMs);
+		if (decoded != null) {
+			if (listener != null)
+				listener.onFrame(time_inMs, decoded);
+			result = CompletableFuture.completedFuture(decoded);
+		} else {
+			result = decoder.submit(new Callable<PImage>() {
+				@Override
+				public PImage call() {
+					if (seek != latestSeek.get())
+						return null;
+					PImage frame = decode(time_inMs);
+					if (frame != null && listener != null && seek == latestSeek.get())
+						listener.onFrame(time_inMs, frame);
+					return frame;
+				}
+			});
+		}
+
+		prefetchAround(time_inMs, seek);
+		return result;
+	}
+
+	/***
+	 * Queues the frames around a seek, nearest first and ahead before behind,
+	 * to be decoded unless another seek comes first
+	 */
+	private void prefetchAround(int time_inMs, final int seek) {
+		int step = prefetchStep;
+		float duration_inMs = movie.duration() * 1000;
+		for (int i = 1; i <= prefetchRadius; i++) {
+			for (int direction = 1; direction >= -1; direction -= 2) {
+				final int time = time_inMs + direction * i * step;
+				if (time < 0 || (duration_inMs > 0 && time > duration_inMs))
+					continue;
+
+				decoder.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (seek == latestSeek.get() && getDecoded(time) == null)
+							decode(time);
+					}
+				});
+			}
+		}
+	}
+
+	private PImage getDecoded(int time_inMs) {
+		synchronized (frames) {
+			return frames.get(time_inMs);
+		}
+	}
+
+	/***
+	 * Jumps the movie and waits for the frame there. Only called on the decoding thread.
+	 *
+	 * @return a copy of the frame, or null if none came
+	 */
+	private PImage decode(int time_inMs) {
+		synchronized (frameLock) {
+			frameReady = false;
+		}
+		movie.jump(Math.max(0, time_inMs) / 1000f);
+		movie.play();
+
+		try {
+			synchronized (frameLock) {
+				long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+				long left = FRAME_TIMEOUT_MS;
+				while (!frameReady && left > 0) {
+					frameLock.wait(left);
+					left = deadline - System.currentTimeMillis();
+				}
+				if (!frameReady) {
+					System.err.println("No frame at " + time_inMs + " ms in " + movie.filename);
+					movie.pause();
+					return null;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			movie.pause();
+			return null;
+		}
+
+		movie.read();
+		PImage frame = movie.get();
+		movie.pause();
+
+		synchronized (frames) {
+			frames.put(time_inMs, frame);
+		}
+		return frame;
+	}
+
+	/***
+	 * Called by the video library on its own thread when a new frame is ready.
+	 * It must be public for the library to find it.
+	 *
+	 * @param m the movie
+	 */
+	public void movieEvent(Movie m) {
+		synchronized (frameLock) {
+			frameReady = true;
+			frameLock.notifyAll();
+		}
+	}
+
+	/***
+	 * Stops decoding and closes the movie
+	 */
+	public void dispose() {
+		decoder.shutdownNow();
+		movie.dispose();
+	}
+}
@@ -0,0 +1,25 @@
+/***
+ * Reads the text logs of the HyperIMU app. They start with "@" lines that
+ * describe the recording, followed by lines of unix time in milliseconds and
+ * the x, y and z acceleration, each ending in '#'. There are no column names.
+ */
+public class HyperIMUReader extends TextRecordingReader {
+
+	@Override
+	public String getName() {
+		return "HyperIMU";
+	}
+
+	@Override
+	public int sniff(String filename, byte[] head, int length) {
+		Head text = readHead(head, length);
+		if (text == null || !text.firstLine.startsWith("@ HyperIMU"))
+			return 0;
+		return text.numFields >= 4 ? 20 : 0;
+	}
+
+	@Override
+	protected ColumnMapping mapColumns(String header, int numFields) {
+		return ColumnMapping.byPosition(numFields);
+	}
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/***
+ * Counts the steps in a log file that keeps growing, like a recording a phone
+ * uploads in chunks. Each update parses only the lines added since the last
+ * one and feeds them to a StepDetector, so its cost depends on the new data
+ * and not on the size of the file.
+ *
+ * The counter remembers the byte offset of the first line it hasn't read and
+ * the state of the detector, so a step whose peak, deadzone or threshold
+ * window spans two chunks is counted exactly as if the file had been read in
+ * one go. A line that is still being written is left for the next update.
+ * The counter can be saved and loaded to carry on in a later run.
+ *
+ * Text recordings whose time and x, y, z acceleration are plain columns are
+ * supported (see TextRecordingReader). PowerSense logs, whose acceleration is
+ * split in two, and binary recordings are not.
+ *
+ * Usage: java IncrementalStepCounter [-state file] [-finish] log.csv
+ */
+public class IncrementalStepCounter implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final String filepath;
+	private long offset = 0; // the start of the first line that hasn't been counted
+	private int[] sourceColumns; // the time and x, y, z columns, null until the header has been read
+	private double timeScale; // 1000 for times in seconds, 1 for milliseconds, 0 until known
+	private StepDetector detector = new StepDetector();
+
+	public IncrementalStepCounter(String filepath) {
+		this.filepath = filepath;
+	}
+
+	public static void main(String[] args) {
+		String statePath = null;
+		String filepath = null;
+		boolean finish = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-state"))
+				statePath = args[++i];
+			else if (args[i].equals("-finish"))
+				finish = true;
+			else
+				filepath = args[i];
+		}
+		if (filepath == null) {
+			System.out.println("Usage: java IncrementalStepCounter [-state file] [-finish] log.csv");
+			return;
+		}
+		if (statePath == null)
+			statePath = filepath + ".steps";
+
+		try {
+			IncrementalStepCounter counter = null;
+			if (new File(statePath).exists()) {
+				counter = load(statePath);
+				if (!counter.getFilepath().equals(filepath))
+					counter = null;
+			}
+			if (counter == null)
+				counter = new IncrementalStepCounter(filepath);
+
+			long before = counter.getOffset();
+			long start = System.nanoTime();
+			int steps = finish ? counter.finish() : counter.update();
+			long nanos = System.nanoTime() - start;
+			counter.save(statePath);
+
+			System.out.println(String.format("%d steps in %d samples, read %d new bytes in %.3f ms%s", steps,
+					counter.getNumSamples(), counter.getOffset() - before, nanos / 1e6, finish ? " (finished)" : ""));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * Reads the lines added since the last update and counts their steps
+	 *
+	 * @return the number of steps confirmed so far
+	 * @throws IOException if the file can't be read or has no acceleration
+	 */
+	public int update() throws IOException {
+		read(true);
+		return detector.getStepCount();
+	}
+
+	/***
+	 * Reads the rest of the file, including a last line without a line ending,
+	 * and counts the steps that were waiting on samples that will never come.
+	 * Nothing more can be added afterwards.
+	 *
+	 * @return the number of steps in the whole file
+	 * @throws IOException if the file can't be read or has no acceleration
+	 */
+	public int finish() throws IOException {
+		read(false);
+		detector.finish();
+		return detector.getStepCount();
+	}
+
+	private void read(boolean completeLinesOnly) throws IOException {
+		if (Files.size(Paths.get(filepath)) < offset) {
+			// the file was replaced by a shorter one, so it has to be counted again
+			offset = 0;
+			sourceColumns = null;
+			timeScale = 0;
+			detector = new StepDetector();
+		}
+
+		try (CSVReader reader = new CSVReader(filepath, offset)) {
+			reader.setCompleteLinesOnly(completeLinesOnly);
+
+			int[] columns = sourceColumns;
+			if (columns == null) {
+				columns = findColumns(reader);
+				if (columns == null)
+					return; // no data yet
+			}
+
+			double[][] read = ColumnMapping.dropIncompleteRows(reader.readColumns(columns));
+			double[] times = read[0];
+			double scale = timeScale;
+			if (scale == 0) {
+				// two times are needed to tell seconds from milliseconds
+				if (times.length < 2 && completeLinesOnly)
+					return;
+				scale = Resampler.isInSeconds(times, times.length) ? 1000 : 1;
+			}
+
+			for (int i = 0; i < times.length; i++)
+				detector.addSample(times[i] * scale, read[1][i], read[2][i], read[3][i]);
+
+			sourceColumns = columns;
+			timeScale = scale;
+			offset = reader.getOffset();
+		}
+	}
+
+	/***
+	 * Reads the header at the start of the file and finds the time and
+	 * acceleration columns the same way TextRecordingReader does
+	 *
+	 * @return the columns, or null if the file has no complete line of data yet
+	 */
+	private int[] findColumns(CSVReader reader) throws IOException {
+		String header = reader.readHeader();
+		int numFields = reader.countFields();
+		if (numFields == 0)
+			return null;
+
+		RecordingReader format = RecordingReaders.detect(filepath);
+		if (format instanceof PowerSenseReader || format instanceof BinaryRecordingReader)
+			throw new IOException(format.getName() + " recordings can't be counted as they grow: " + filepath);
+
+		ColumnMapping mapping = new TextRecordingReader().mapColumns(header, numFields);
+		if (!mapping.hasAcceleration())
+			throw new IOException("No time and acceleration columns in " + filepath);
+
+		int[] sources = mapping.getSourceColumns();
+		return new int[] { sources[ColumnMapping.TIME], sources[ColumnMapping.ACCEL_X], sources[ColumnMapping.ACCEL_Y],
+				sources[ColumnMapping.ACCEL_Z] };
+	}
+
+	public String getFilepath() {
+		return filepath;
+	}
+
+	/***
+	 * Returns how much of the file has been counted
+	 *
+	 * @return the byte offset of the first line that hasn't been read
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getStepCount() {
+		return detector.getStepCount();
+	}
+
+	public long getNumSamples() {
+		return detector.getNumSamples();
+	}
+
+	/***
+	 * Saves the counter, so a later run can carry on from where this one stopped
+	 *
+	 * @param path the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void save(String path) throws IOException {
+		// written next to the old state and then moved over it, so a crash never leaves half a file
+		File temp = new File(path + ".tmp");
+		try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(temp.toPath()))) {
+			out.writeObject(this);
+		}
+		Files.move(temp.toPath(), Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/***
+	 * Loads a counter written by save
+	 *
+	 * @param path the file to read
+	 * @return the counter
+	 * @throws IOException if the file can't be read or isn't a saved counter
+	 */
+	public static IncrementalStepCounter load(String path) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(Paths.get(path)))) {
+			return (IncrementalStepCounter) in.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException(path + " is not a saved step counter", e);
+		}
+	}
+}
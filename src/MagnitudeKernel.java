@@ -0,0 +1,75 @@
+/***
+ * Computes the magnitude sqrt(x*x + y*y + z*z) of acceleration stored as
+ * columns, the first stage of every step counter.
+ *
+ * When the jdk.incubator.vector module is available, the SIMD kernel in
+ * src-vector (VectorMagnitudeKernel) is used. Otherwise a scalar loop is
+ * used. Both do the same operations in the same order, and square roots are
+ * correctly rounded in both, so they give exactly the same magnitudes.
+ *
+ * To build and run with the SIMD kernel (Java 16 or later):
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin src-vector/*.java
+ * java --add-modules jdk.incubator.vector -cp bin ...
+ * </pre>
+ * Running with -Dmagnitudes=scalar forces the scalar kernel, to compare the two.
+ */
+public abstract class MagnitudeKernel {
+	private static final MagnitudeKernel SCALAR = new ScalarKernel();
+	private static final MagnitudeKernel BEST = load();
+
+	/***
+	 * Returns the fastest kernel this JVM can run
+	 *
+	 * @return the SIMD kernel if it can be loaded, otherwise the scalar one
+	 */
+	public static MagnitudeKernel get() {
+		return BEST;
+	}
+
+	/***
+	 * Returns the scalar kernel, which works everywhere
+	 *
+	 * @return the scalar kernel
+	 */
+	public static MagnitudeKernel scalar() {
+		return SCALAR;
+	}
+
+	/***
+	 * Calculates the magnitudes of the first length samples
+	 *
+	 * @param x the x acceleration for each sample
+	 * @param y the y acceleration for each sample
+	 * @param z the z acceleration for each sample
+	 * @param output the array to write the magnitudes into
+	 * @param length the number of samples
+	 */
+	public abstract void calculate(double[] x, double[] y, double[] z, double[] output, int length);
+
+	public abstract String getName();
+
+	private static MagnitudeKernel load() {
+		if ("scalar".equals(System.getProperty("magnitudes")))
+			return SCALAR;
+		try {
+			return (MagnitudeKernel) Class.forName("VectorMagnitudeKernel").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// not compiled, or the jdk.incubator.vector module wasn't added
+			return SCALAR;
+		}
+	}
+
+	private static class ScalarKernel extends MagnitudeKernel {
+		@Override
+		public void calculate(double[] x, double[] y, double[] z, double[] output, int length) {
+			for (int i = 0; i < length; i++)
+				output[i] = Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]);
+		}
+
+		@Override
+		public String getName() {
+			return "scalar";
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/***
+ * Replaces each sample with the median of a window centered on it. A single
+ * spike never gets through a median, which makes it good at removing the
+ * jolts that show up as false peaks. Near the ends of the signal the window
+ * only holds the samples that exist.
+ *
+ * The window is kept in two heaps, the smaller half in a max-heap and the
+ * larger half in a min-heap, so the median is always at the top. Each sample
+ * remembers where it is in its heap, so the sample leaving the window is
+ * removed in O(log window) instead of searching for it.
+ */
+public class MedianFilter implements SmoothingFilter {
+	private final int halfWindow;
+	private final int window;
+
+	// a slot for each sample in the window, reused as the window slides
+	private final double[] values;
+	private final int[] heapPosition; // where the slot is in its heap
+	private final boolean[] inLower; // which heap the slot is in
+
+	private final int[] lower; // max-heap of slots
+	private final int[] upper; // min-heap of slots
+	private int lowerSize = 0, upperSize = 0;
+
+	private long count = 0; // samples added to the stream
+
+	/***
+	 * Creates a median filter
+	 *
+	 * @param window the number of samples to take the median of, an odd number so the window can be centered
+	 */
+	public MedianFilter(int window) {
+		if (window < 1 || window % 2 == 0)
+			throw new IllegalArgumentException("The window must be a positive odd number, not " + window);
+		this.window = window;
+		this.halfWindow = window / 2;
+
+		values = new double[window];
+		heapPosition = new int[window];
+		inLower = new boolean[window];
+		lower = new int[window];
+		upper = new int[window];
+	}
+
+	@Override
+	public void smooth(double[] input, double[] output, int length) {
+		// heaps of its own, so neither a running stream nor another thread smoothing is disturbed
+		MedianFilter batch = new MedianFilter(window);
+
+		int next = 0;
+		for (int i = 0; i < length; i++) {
+			if (i - halfWindow - 1 >= 0)
+				batch.delete(i - halfWindow - 1);
+			while (next < length && next <= i + halfWindow) {
+				batch.insert(input[next], next);
+				next++;
+			}
+			output[i] = batch.median();
+		}
+	}
+
+	@Override
+	public double add(double value) {
+		if (count >= window)
+			delete(count - window);
+		insert(value, count);
+		count++;
+
+		return count - 1 - halfWindow < 0 ? Double.NaN : median();
+	}
+
+	@Override
+	public int finish(double[] output) {
+		// the window of each sample left shrinks at the end, down to the samples that exist
+		long start = Math.max(0, count - window);
+		int n = 0;
+		for (long center = Math.max(0, count - halfWindow); center < count; center++) {
+			while (start < center - halfWindow)
+				delete(start++);
+			output[n++] = median();
+		}
+		reset();
+		return n;
+	}
+
+	@Override
+	public int getDelay() {
+		return halfWindow;
+	}
+
+	@Override
+	public String toString() {
+		return "MedianFilter(" + window + ")";
+	}
+
+	@Override
+	public void reset() {
+		lowerSize = 0;
+		upperSize = 0;
+		count = 0;
+	}
+
+	private double median() {
+		if (lowerSize > upperSize)
+			return values[lower[0]];
+		return (values[lower[0]] + values[upper[0]]) / 2;
+	}
+
+	/***
+	 * Adds sample number index to the window
+	 */
+	private void insert(double value, long index) {
+		int slot = (int) (index % window);
+		values[slot] = value;
+
+		if (lowerSize == 0 || value <= values[lower[0]]) {
+			inLower[slot] = true;
+			lower[lowerSize] = slot;
+			heapPosition[slot] = lowerSize;
+			siftUp(lower, lowerSize++, true);
+		} else {
+			inLower[slot] = false;
+			upper[upperSize] = slot;
+			heapPosition[slot] = upperSize;
+			siftUp(upper, upperSize++, false);
+		}
+		rebalance();
+	}
+
+	/***
+	 * Removes sample number index from the window
+	 */
+	private void delete(long index) {
+		int slot = (int) (index % window);
+		int position = heapPosition[slot];
+
+		if (inLower[slot]) {
+			lowerSize--;
+			if (position < lowerSize) {
+				move(lower, lowerSize, position);
+				restore(lower, position, lowerSize, true);
+			}
+		} else {
+			upperSize--;
+			if (position < upperSize) {
+				move(upper, upperSize, position);
+				restore(upper, position, upperSize, false);
+			}
+		}
+		rebalance();
+	}
+
+	/***
+	 * Keeps the lower half the same size as the upper half, or one bigger
+	 */
+	private void rebalance() {
+		if (lowerSize > upperSize + 1) {
+			int slot = popTop(lower, lowerSize--, true);
+			inLower[slot] = false;
+			upper[upperSize] = slot;
+			heapPosition[slot] = upperSize;
+			siftUp(upper, upperSize++, false);
+		} else if (upperSize > lowerSize) {
+			int slot = popTop(upper, upperSize--, false);
+			inLower[slot] = true;
+			lower[lowerSize] = slot;
+			heapPosition[slot] = lowerSize;
+			siftUp(lower, lowerSize++, true);
+		}
+	}
+
+	private int popTop(int[] heap, int size, boolean isMax) {
+		int top = heap[0];
+		if (size > 1) {
+			move(heap, size - 1, 0);
+			siftDown(heap, 0, size - 1, isMax);
+		}
+		return top;
+	}
+
+	/***
+	 * Moves the slot at position up or down until the heap is in order again
+	 */
+	private void restore(int[] heap, int position, int size, boolean isMax) {
+		int slot = heap[position];
+		siftUp(heap, position, isMax);
+		if (heapPosition[slot] == position)
+			siftDown(heap, position, size, isMax);
+	}
+
+	private void siftUp(int[] heap, int position, boolean isMax) {
+		int slot = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (!before(slot, heap[parent], isMax))
+				break;
+			move(heap, parent, position);
+			position = parent;
+		}
+		heap[position] = slot;
+		heapPosition[slot] = position;
+	}
+
+	private void siftDown(int[] heap, int position, int size, boolean isMax) {
+		int slot = heap[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && before(heap[child + 1], heap[child], isMax))
+				child++;
+			if (!before(heap[child], slot, isMax))
+				break;
+			move(heap, child, position);
+			position = child;
+		}
+		heap[position] = slot;
+		heapPosition[slot] = position;
+	}
+
+	private void move(int[] heap, int from, int to) {
+		heap[to] = heap[from];
+		heapPosition[heap[to]] = to;
+	}
+
+	/***
+	 * Checks if slot a belongs above slot b in the heap
+	 */
+	private boolean before(int a, int b, boolean isMax) {
+		return isMax ? values[a] > values[b] : values[a] < values[b];
+	}
+}
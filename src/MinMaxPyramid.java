@@ -0,0 +1,166 @@
+/***
+ * The smallest and largest value of a signal over blocks of samples, at every
+ * power of two block size, so a plot can draw any stretch of it with about one
+ * block per pixel however long the recording is. Level 0 is the samples
+ * themselves, level 1 holds pairs of samples, level 2 blocks of four, and so
+ * on up to a single block for the whole signal.
+ *
+ * Drawing the smallest and largest value of each block keeps every spike
+ * visible, where skipping samples would lose the ones it skipped. Each block
+ * keeps which sample its smallest and largest value came from, so a plot can
+ * draw the two in the order they happened, at their own times, and a falling
+ * edge still falls. The levels above 0 take twice as much memory as the
+ * signal does again.
+ *
+ * Missing samples (NaN), like the rows of a recording that only hold a GPS
+ * fix, are left out of the blocks. A block with nothing but missing samples
+ * is NaN.
+ */
+public class MinMaxPyramid {
+	private final float[] values;
+	private final int[][] mins, maxs; // the sample each block's smallest and largest value is at, index 0 is level 1
+
+	/***
+	 * Builds the levels for a signal
+	 *
+	 * @param values the samples
+	 */
+	public MinMaxPyramid(float[] values) {
+		this.values = values;
+
+		int numLevels = 0;
+		while (numBlocks(values.length, numLevels) > 1)
+			numLevels++;
+		mins = new int[numLevels][];
+		maxs = new int[numLevels][];
+
+		for (int level = 0; level < numLevels; level++) {
+			int blocks = numBlocks(values.length, level + 1);
+			int below = numBlocks(values.length, level);
+			mins[level] = new int[blocks];
+			maxs[level] = new int[blocks];
+
+			// each block is the two blocks of the level below it, or one at the end
+			for (int b = 0; b < blocks; b++) {
+				int first = 2 * b, second = Math.min(2 * b + 1, below - 1);
+				mins[level][b] = smaller(getMinIndex(level, first), getMinIndex(level, second));
+				maxs[level][b] = larger(getMaxIndex(level, first), getMaxIndex(level, second));
+			}
+		}
+	}
+
+	/***
+	 * Builds the levels for one column of a table
+	 *
+	 * @param data the table
+	 * @param col the column
+	 */
+	public MinMaxPyramid(double[][] data, int col) {
+		this(column(data, col));
+	}
+
+	private static float[] column(double[][] data, int col) {
+		float[] values = new float[data.length];
+		for (int row = 0; row < data.length; row++)
+			values[row] = (float) data[row][col];
+		return values;
+	}
+
+	/***
+	 * Picks the sample with the smaller value, leaving out missing ones, and
+	 * the earlier one on a tie
+	 */
+	private int smaller(int a, int b) {
+		return Float.isNaN(values[a]) || values[b] < values[a] ? b : a;
+	}
+
+	private int larger(int a, int b) {
+		return Float.isNaN(values[a]) || values[b] > values[a] ? b : a;
+	}
+
+	private static int numBlocks(int numSamples, int level) {
+		return (int) ((numSamples + (1L << level) - 1) >> level);
+	}
+
+	/***
+	 * Returns the number of levels, including level 0
+	 *
+	 * @return the number of levels
+	 */
+	public int getNumLevels() {
+		return mins.length + 1;
+	}
+
+	public int getNumSamples() {
+		return values.length;
+	}
+
+	/***
+	 * Returns a sample, like the one getMinIndex or getMaxIndex points at
+	 *
+	 * @param index the index of the sample
+	 * @return the value, or NaN if it is missing
+	 */
+	public float getValue(int index) {
+		return values[index];
+	}
+
+	/***
+	 * Picks the most detailed level that shows a range of samples in at most a
+	 * number of blocks
+	 *
+	 * @param numSamples the number of samples to show
+	 * @param maxBlocks the most blocks to show them in, like the width of the plot in pixels
+	 * @return the level
+	 */
+	public int levelFor(int numSamples, int maxBlocks) {
+		int level = 0;
+		while (level < mins.length && numBlocks(numSamples, level) > Math.max(1, maxBlocks))
+			level++;
+		return level;
+	}
+
+	/***
+	 * Returns the smallest value in a block
+	 *
+	 * @param level the level
+	 * @param block the block, which holds samples block * 2^level onwards
+	 * @return the smallest value
+	 */
+	public float getMin(int level, int block) {
+		return values[getMinIndex(level, block)];
+	}
+
+	/***
+	 * Returns the largest value in a block
+	 *
+	 * @param level the level
+	 * @param block the block, which holds samples block * 2^level onwards
+	 * @return the largest value
+	 */
+	public float getMax(int level, int block) {
+		return values[getMaxIndex(level, block)];
+	}
+
+	/***
+	 * Returns which sample the smallest value in a block is
+	 *
+	 * @param level the level
+	 * @param block the block, which holds samples block * 2^level onwards
+	 * @return the index of the sample
+	 */
+	public int getMinIndex(int level, int block) {
+		return level == 0 ? block : mins[level - 1][block];
+	}
+
+	/***
+	 * Returns which sample the largest value in a block is
+	 *
+	 * @param level the level
+	 * @param block the block, which holds samples block * 2^level onwards
+	 * @return the index of the sample
+	 */
+	public int getMaxIndex(int level, int block) {
+		return level == 0 ? block : maxs[level - 1][block];
+	}
+}
@@ -0,0 +1,89 @@
+/***
+ * Replaces each sample with the average of a window centered on it, kept as a
+ * running sum so the cost per sample doesn't depend on the window size. Near
+ * the ends of the signal the window only holds the samples that exist.
+ */
+public class MovingAverageFilter implements SmoothingFilter {
+	private final int halfWindow;
+
+	// the stream: the last window samples, as a ring
+	private final double[] recent;
+	private long count = 0;
+	private double sum = 0;
+
+	/***
+	 * Creates a moving average
+	 *
+	 * @param window the number of samples to average, an odd number so the window can be centered
+	 */
+	public MovingAverageFilter(int window) {
+		if (window < 1 || window % 2 == 0)
+			throw new IllegalArgumentException("The window must be a positive odd number, not " + window);
+		this.halfWindow = window / 2;
+		this.recent = new double[window];
+	}
+
+	@Override
+	public void smooth(double[] input, double[] output, int length) {
+		double sum = 0;
+		int start = 0, end = 0; // the window is input[start..end)
+
+		for (int i = 0; i < length; i++) {
+			while (end < length && end <= i + halfWindow)
+				sum += input[end++];
+			while (start < i - halfWindow)
+				sum -= input[start++];
+			output[i] = sum / (end - start);
+		}
+	}
+
+	@Override
+	public double add(double value) {
+		int window = recent.length;
+		int slot = (int) (count % window);
+
+		if (count >= window)
+			sum -= recent[slot];
+		recent[slot] = value;
+		sum += value;
+		count++;
+
+		// the sample being smoothed, and the window around it that has arrived
+		long center = count - 1 - halfWindow;
+		if (center < 0)
+			return Double.NaN;
+		long start = Math.max(0, center - halfWindow);
+		return sum / (count - start);
+	}
+
+	@Override
+	public int finish(double[] output) {
+		// the window of each sample left shrinks at the end, down to the samples that exist
+		double sum = this.sum;
+		long start = Math.max(0, count - recent.length);
+		int n = 0;
+		for (long center = Math.max(0, count - halfWindow); center < count; center++) {
+			while (start < center - halfWindow)
+				sum -= recent[(int) (start++ % recent.length)];
+			output[n++] = sum / (count - start);
+		}
+		reset();
+		return n;
+	}
+
+	@Override
+	public int getDelay() {
+		return halfWindow;
+	}
+
+	@Override
+	public String toString() {
+		return "MovingAverageFilter(" + (2 * halfWindow + 1) + ")";
+	}
+
+	@Override
+	public void reset() {
+		count = 0;
+		sum = 0;
+	}
+}
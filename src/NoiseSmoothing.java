@@ -9,13 +9,13 @@ public class NoiseSmoothing {
 		int size = 100;
 
 		double[] sample = getRandomSample(100, 5, 30);
-		//double[] result = generalRunningAverage(sample, 20);
+		double[] result = generalRunningAverage(sample, 20);
 		
 		Plot2DPanel plot = new Plot2DPanel();
 
 		// add a line plot to the PlotPanel
 		plot.addLinePlot("Original Signal", sample);
-		//plot.addLinePlot("Output of Running Average", result);
+		plot.addLinePlot("Output of Running Average", result);
 
 		// put the PlotPanel in a JFrame, as a JPanel
 		JFrame frame = new JFrame("Smoothing result");
@@ -31,8 +31,7 @@ public class NoiseSmoothing {
 	 * pair of averaged elements from array
 	 */
 	public static double[] runningAverage(double[] array) {
-
-		return null;
+		return generalRunningAverage(array, 2);
 	}
 
 	/***
@@ -42,17 +41,55 @@ public class NoiseSmoothing {
 	 * averaged elements from array
 	 */
 	public static double[] runningAverageOfThree(double[] array) {
-		return null;
+		return generalRunningAverage(array, 3);
 	}
 	
 	/***
 	 * Returns a new array whose elements are each an average of n adjacent elements of array
 	 * @param array the sample signal values (to be averaged)
-	 * @return double[] an array, each of whose elements is the average of n adjacent values from array
+	 * @param n the number of adjacent elements to average
+	 * @return double[] an array of length array.length-n+1, each of whose elements is the average of n adjacent values from array
 	 */
 	public static double[] generalRunningAverage(double[] array, int n) {
-	
-		return null;
+		return generalRunningAverage(array, n, new double[Math.max(0, array.length - n + 1)]);
+	}
+
+	/***
+	 * Averages every n adjacent elements of array into output. The sum of the n elements is kept
+	 * as the window slides, so each average costs one add and one subtract whatever n is.
+	 * @param array the sample signal values (to be averaged)
+	 * @param n the number of adjacent elements to average
+	 * @param output the array to store the averages in, at least array.length-n+1 long
+	 * @return the output array
+	 */
+	public static double[] generalRunningAverage(double[] array, int n, double[] output) {
+		if (n < 1)
+			throw new IllegalArgumentException("Can't average " + n + " elements");
+		if (array.length < n)
+			return output;
+
+		double sum = 0;
+		for (int i = 0; i < n; i++)
+			sum += array[i];
+		output[0] = sum / n;
+
+		for (int i = n; i < array.length; i++) {
+			sum += array[i] - array[i - n];
+			output[i - n + 1] = sum / n;
+		}
+		return output;
+	}
+
+	/***
+	 * Smooths a signal with a filter into a new array the same length as the signal
+	 * @param array the sample signal values
+	 * @param filter the filter to use, like a MovingAverageFilter or MedianFilter
+	 * @return the smoothed signal
+	 */
+	public static double[] smooth(double[] array, SmoothingFilter filter) {
+		double[] output = new double[array.length];
+		filter.smooth(array, output, array.length);
+		return output;
 	}
 	
 	/***
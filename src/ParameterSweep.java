@@ -0,0 +1,439 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/***
+ * Tunes the parameters of the peak counter (see StepCounterConfig) against the
+ * labelled recordings, and reports the best ones overall and for each gait and
+ * phone location.
+ *
+ * Every recording is loaded once into an AnalysisContext, so its magnitudes
+ * are worked out once and trials share whatever they have in common: trials
+ * with the same deadzone share their peaks, and trials with the same threshold
+ * window and deviations share their thresholds. Only the final count is done
+ * for every trial. The recordings are split across a fork-join pool and each
+ * task runs every trial on its recording.
+ *
+ * The trials are picked in one of three ways:
+ * <ul>
+ * <li>-grid tries every combination of the values in DEADZONES, WINDOWS,
+ * DEVIATIONS and MINIMUMS</li>
+ * <li>-random n tries n configs picked at random within the ranges of the grid</li>
+ * <li>-refine n tries a quarter of n at random, then spends the rest on
+ * configs near the best ones found so far, looking closer each round</li>
+ * </ul>
+ *
+ * A trial is scored by its mean accuracy over the recordings, the way
+ * BatchEvaluation scores the counters. The GLOBAL strategy ignores the
+ * threshold window and minimum threshold, so its grid has many ties.
+ *
+ * Usage: java ParameterSweep [-grid | -random n | -refine n] [-strategy adaptive|global] [-threads n]
+ * [-seed n] [-where field=value ...] [folder or zip ...]
+ */
+public class ParameterSweep {
+	public static final double[] DEADZONES = { 50, 75, 100, 125, 150, 175, 200, 250, 300, 350, 400 };
+	public static final double[] WINDOWS = { 125, 250, 375, 500, 750, 1000, 1500, 2000, 5000, 10000, 20000, 30000 };
+	public static final double[] DEVIATIONS = { 0, 0.25, 0.5, 0.75, 1, 1.25, 1.5, 1.75, 2 };
+	public static final double[] MINIMUMS = { 0, 0.5, 1 };
+
+	// groups with fewer recordings than this are too small to tune for
+	public static final int MIN_GROUP_SIZE = 3;
+	public static final int TOP_TRIALS = 5;
+
+	/***
+	 * A labelled recording, loaded and ready to count
+	 */
+	public static class Subject {
+		public final DatasetManifest.Entry entry;
+		public final AnalysisContext analysis;
+
+		public Subject(DatasetManifest.Entry entry, AnalysisContext analysis) {
+			this.entry = entry;
+			this.analysis = analysis;
+		}
+	}
+
+	/***
+	 * How one config did on a set of recordings
+	 */
+	public static class Score {
+		public final int trial; // the index of the config in the sweep
+		public final StepCounterConfig config;
+		public final double accuracy; // the mean accuracy
+		public final double error; // the mean number of steps the counts were off by
+
+		public Score(int trial, StepCounterConfig config, double accuracy, double error) {
+			this.trial = trial;
+			this.config = config;
+			this.accuracy = accuracy;
+			this.error = error;
+		}
+	}
+
+	private final List<Subject> subjects;
+	private final ThresholdStrategy strategy;
+	private final ForkJoinPool pool;
+
+	private final List<StepCounterConfig> configs = new ArrayList<StepCounterConfig>();
+	private final List<int[]> counts = new ArrayList<int[]>(); // the count of each subject, for each config
+
+	public ParameterSweep(List<Subject> subjects, ThresholdStrategy strategy, ForkJoinPool pool) {
+		this.subjects = subjects;
+		this.strategy = strategy;
+		this.pool = pool;
+	}
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ThresholdStrategy strategy = ThresholdStrategy.ADAPTIVE;
+		String mode = "-grid";
+		int numTrials = 0;
+		long seed = 1;
+		List<DatasetManifest.Filter> filters = new ArrayList<DatasetManifest.Filter>();
+		List<String> folders = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-strategy")) {
+				strategy = ThresholdStrategy.valueOf(args[++i].toUpperCase());
+			} else if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-grid")) {
+				mode = args[i];
+			} else if (args[i].equals("-random") || args[i].equals("-refine")) {
+				mode = args[i];
+				numTrials = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-where")) {
+				String[] condition = args[++i].split("=", 2);
+				filters.add(DatasetManifest.where(condition[0], condition.length > 1 ? condition[1] : ""));
+			} else {
+				folders.add(args[i]);
+			}
+		}
+		if (folders.isEmpty())
+			folders.addAll(Arrays.asList(BatchEvaluation.DEFAULT_FOLDERS));
+
+		try (DatasetManifest manifest = DatasetManifest.scan(folders)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+
+			long start = System.nanoTime();
+			List<Subject> subjects = load(manifest, manifest.select(filters.toArray(new DatasetManifest.Filter[0])), pool);
+			long loaded = System.nanoTime();
+
+			ParameterSweep sweep = new ParameterSweep(subjects, strategy, pool);
+			Random random = new Random(seed);
+			// the defaults go first, so they win any tie
+			sweep.run(Collections.singletonList(StepCounterConfig.DEFAULT));
+			if (mode.equals("-random"))
+				sweep.run(randomConfigs(numTrials, random));
+			else if (mode.equals("-refine"))
+				sweep.refine(numTrials, random);
+			else
+				sweep.run(grid());
+			long swept = System.nanoTime();
+
+			System.out.println(String.format("%d recordings loaded in %.3f s, %d %s trials in %.3f s on %d threads",
+					subjects.size(), (loaded - start) / 1e9, sweep.getNumTrials(), strategy, (swept - loaded) / 1e9,
+					threads));
+			System.out.println();
+			sweep.printReport();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * Loads the labelled recordings among some entries on a pool. A recording
+	 * that can't be read is reported and left out.
+	 *
+	 * @param manifest the manifest the entries are from
+	 * @param entries the entries to load
+	 * @param pool the pool to load on
+	 * @return the recordings that could be loaded, in the order of the entries
+	 */
+	public static List<Subject> load(final DatasetManifest manifest, List<DatasetManifest.Entry> entries,
+			ForkJoinPool pool) {
+		final List<DatasetManifest.Entry> labelled = new ArrayList<DatasetManifest.Entry>();
+		for (DatasetManifest.Entry entry : entries)
+			if (!Double.isNaN(entry.getSteps()))
+				labelled.add(entry);
+
+		final Subject[] loaded = new Subject[labelled.size()];
+		pool.invoke(new SplitTask(0, loaded.length) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			void compute(int index) {
+				DatasetManifest.Entry entry = labelled.get(index);
+				try {
+					CSVData data = manifest.read(entry);
+					double[][] columns = data.getColumns(new int[] { ColumnMapping.TIME, ColumnMapping.ACCEL_X,
+							ColumnMapping.ACCEL_Y, ColumnMapping.ACCEL_Z });
+					loaded[index] = new Subject(entry,
+							new AnalysisContext(columns[1], columns[2], columns[3], columns[0]));
+				} catch (Exception e) {
+					System.err.println("Skipping " + entry.getPath() + ": " + e);
+				}
+			}
+		});
+
+		List<Subject> subjects = new ArrayList<Subject>();
+		for (Subject subject : loaded)
+			if (subject != null)
+				subjects.add(subject);
+		return subjects;
+	}
+
+	/***
+	 * Makes every combination of the grid values. The threshold window and
+	 * deviations change slowest, so the trials that share thresholds run one
+	 * after another and find them in the cache.
+	 *
+	 * @return the configs
+	 */
+	public static List<StepCounterConfig> grid() {
+		List<StepCounterConfig> grid = new ArrayList<StepCounterConfig>();
+		for (double window : WINDOWS)
+			for (double deviations : DEVIATIONS)
+				for (double deadzone : DEADZONES)
+					for (double minimum : MINIMUMS)
+						grid.add(new StepCounterConfig(deadzone, window, deviations, minimum));
+		return grid;
+	}
+
+	/***
+	 * Picks configs at random within the ranges of the grid. Times are rounded
+	 * to whole milliseconds.
+	 *
+	 * @param count the number of configs
+	 * @param random the source of randomness
+	 * @return the configs
+	 */
+	public static List<StepCounterConfig> randomConfigs(int count, Random random) {
+		List<StepCounterConfig> configs = new ArrayList<StepCounterConfig>();
+		for (int i = 0; i < count; i++)
+			configs.add(new StepCounterConfig(Math.rint(pick(DEADZONES, random.nextDouble())),
+					Math.rint(pick(WINDOWS, random.nextDouble())), pick(DEVIATIONS, random.nextDouble()),
+					pick(MINIMUMS, random.nextDouble())));
+		return configs;
+	}
+
+	/***
+	 * Searches for a good config: a quarter of the trials are picked at random,
+	 * then each round moves the best configs found so far by a random amount
+	 * and keeps whatever scores better. The moves start at a quarter of each
+	 * range and shrink every round, so the search starts wide and ends up
+	 * fine tuning the best config.
+	 *
+	 * @param numTrials the number of trials to spend
+	 * @param random the source of randomness
+	 */
+	public void refine(int numTrials, Random random) {
+		int numRandom = Math.max(1, numTrials / 4);
+		run(randomConfigs(numRandom, random));
+
+		int roundSize = Math.max(TOP_TRIALS, 4 * pool.getParallelism());
+		int numRounds = Math.max(1, (numTrials - numRandom + roundSize - 1) / roundSize);
+		for (int round = 0, left = numTrials - numRandom; left > 0; round++) {
+			double spread = 0.25 * Math.pow(0.02 / 0.25, round / (double) Math.max(1, numRounds - 1));
+			List<Score> best = rank(subjects);
+
+			List<StepCounterConfig> nearby = new ArrayList<StepCounterConfig>();
+			for (int i = 0; i < Math.min(roundSize, left); i++) {
+				StepCounterConfig from = best.get(i % Math.min(TOP_TRIALS, best.size())).config;
+				nearby.add(new StepCounterConfig(Math.rint(move(from.getDeadzone(), DEADZONES, spread, random)),
+						Math.rint(move(from.getThresholdWindow(), WINDOWS, spread, random)),
+						move(from.getDeviations(), DEVIATIONS, spread, random),
+						move(from.getMinimumThreshold(), MINIMUMS, spread, random)));
+			}
+			run(nearby);
+			left -= nearby.size();
+		}
+	}
+
+	private static double pick(double[] values, double fraction) {
+		double min = values[0], max = values[values.length - 1];
+		return min + fraction * (max - min);
+	}
+
+	private static double move(double value, double[] values, double spread, Random random) {
+		double min = values[0], max = values[values.length - 1];
+		return Math.max(min, Math.min(max, value + random.nextGaussian() * spread * (max - min)));
+	}
+
+	/***
+	 * Counts the steps in every recording with each config
+	 *
+	 * @param trials the configs to try
+	 */
+	public void run(final List<StepCounterConfig> trials) {
+		final int[][] trialCounts = new int[trials.size()][subjects.size()];
+		pool.invoke(new SplitTask(0, subjects.size()) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			void compute(int index) {
+				AnalysisContext analysis = subjects.get(index).analysis;
+				for (int t = 0; t < trialCounts.length; t++)
+					trialCounts[t][index] = analysis.countSteps(strategy, null, trials.get(t));
+			}
+		});
+		configs.addAll(trials);
+		counts.addAll(Arrays.asList(trialCounts));
+	}
+
+	public int getNumTrials() {
+		return configs.size();
+	}
+
+	/***
+	 * Scores every trial so far on some of the recordings
+	 *
+	 * @param group the recordings, which must be among the ones being swept
+	 * @return the scores, best first
+	 */
+	public List<Score> rank(List<Subject> group) {
+		int[] indices = new int[group.size()];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = subjects.indexOf(group.get(i));
+
+		List<Score> scores = new ArrayList<Score>();
+		for (int t = 0; t < configs.size(); t++) {
+			int[] trialCounts = counts.get(t);
+			double accuracy = 0, error = 0;
+			for (int index : indices) {
+				double steps = subjects.get(index).entry.getSteps();
+				accuracy += BatchEvaluation.accuracy(trialCounts[index], steps);
+				error += Math.abs(trialCounts[index] - steps);
+			}
+			scores.add(new Score(t, configs.get(t), accuracy / indices.length, error / indices.length));
+		}
+
+		// a stable sort, so of two equal trials the earlier one comes first
+		Collections.sort(scores, new Comparator<Score>() {
+			@Override
+			public int compare(Score a, Score b) {
+				return Double.compare(b.accuracy, a.accuracy);
+			}
+		});
+		return scores;
+	}
+
+	/***
+	 * Prints the best configs for every recording, then the best config for
+	 * each gait and each phone location with enough recordings to tune for
+	 */
+	public void printReport() {
+		if (subjects.isEmpty() || configs.isEmpty())
+			return;
+
+		List<Score> overall = rank(subjects);
+		System.out.println(String.format("all %d recordings", subjects.size()));
+		printScore("default", scoreOf(overall, 0));
+		for (int i = 0; i < Math.min(TOP_TRIALS, overall.size()); i++)
+			printScore("#" + (i + 1), overall.get(i));
+
+		printGroups("gait", new Grouping() {
+			@Override
+			public String groupOf(DatasetManifest.Entry entry) {
+				return entry.getGait();
+			}
+		});
+		printGroups("phone location", new Grouping() {
+			@Override
+			public String groupOf(DatasetManifest.Entry entry) {
+				return entry.getPhoneLocation();
+			}
+		});
+	}
+
+	private interface Grouping {
+		String groupOf(DatasetManifest.Entry entry);
+	}
+
+	private void printGroups(String name, Grouping grouping) {
+		Map<String, List<Subject>> groups = new LinkedHashMap<String, List<Subject>>();
+		for (Subject subject : subjects) {
+			String group = grouping.groupOf(subject.entry);
+			if (group == null || group.isEmpty())
+				continue;
+			if (!groups.containsKey(group))
+				groups.put(group, new ArrayList<Subject>());
+			groups.get(group).add(subject);
+		}
+
+		for (Map.Entry<String, List<Subject>> group : groups.entrySet()) {
+			if (group.getValue().size() < MIN_GROUP_SIZE)
+				continue;
+			List<Score> scores = rank(group.getValue());
+			System.out.println();
+			System.out.println(String.format("%s %s: %d recordings", name, group.getKey(), group.getValue().size()));
+			printScore("default", scoreOf(scores, 0));
+			printScore("best", scores.get(0));
+		}
+	}
+
+	private static Score scoreOf(List<Score> scores, int trial) {
+		for (Score score : scores)
+			if (score.trial == trial)
+				return score;
+		return null;
+	}
+
+	private static void printScore(String label, Score score) {
+		System.out.println(String.format("  %-8s accuracy %5.1f%%   mean error %6.2f steps   %s", label,
+				100 * score.accuracy, score.error, score.config));
+	}
+
+	/***
+	 * Runs compute for every index in a range, splitting the range in half
+	 * until each task has one index, so the pool can balance big and small
+	 * recordings
+	 */
+	private static abstract class SplitTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int start, end;
+
+		SplitTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		abstract void compute(int index);
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				compute(start);
+			} else if (end - start > 1) {
+				final SplitTask parent = this;
+				int middle = (start + end) >>> 1;
+				invokeAll(new SplitTask(start, middle) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					void compute(int index) {
+						parent.compute(index);
+					}
+				}, new SplitTask(middle, end) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					void compute(int index) {
+						parent.compute(index);
+					}
+				});
+			}
+		}
+	}
+}
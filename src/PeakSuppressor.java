@@ -0,0 +1,263 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/***
+ * Clears peaks that have a taller peak close to them in time, so one step
+ * that wobbles on its way up or down is only counted once.
+ *
+ * A peak is kept if no other peak within deadzone milliseconds on either side
+ * is taller. When two peaks in the same deadzone are equally tall the earlier
+ * one is kept. Every peak is compared with the original peaks, not with the
+ * ones left after clearing, so the result doesn't depend on the order the
+ * peaks are checked in.
+ *
+ * The peaks in the deadzone are kept in a deque ordered from tallest to
+ * shortest. A peak that is shorter than a newer one can never be the tallest
+ * again, so it is dropped from the back when the newer one arrives, and peaks
+ * that are too old are dropped from the front. The tallest peak near any
+ * time is then at the front, and each peak goes in and out of the deque
+ * once, so clearing n samples takes O(n) time however many peaks the
+ * deadzone holds.
+ *
+ * Peaks can also be added one at a time from a stream. A peak is decided once a
+ * sample more than deadzone milliseconds after it has arrived, since no
+ * later peak can reach it.
+ */
+public class PeakSuppressor implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final double deadzone;
+
+	// peaks that aren't decided yet, in order, the first `inserted` of them are also in the deque
+	private final PeakQueue undecided = new PeakQueue();
+	private int inserted = 0;
+
+	// peaks that can still be the tallest near the next undecided peak, tallest first
+	private final PeakQueue tallest = new PeakQueue();
+
+	/***
+	 * Creates a suppressor
+	 *
+	 * @param deadzone the time in milliseconds on each side of a peak that can't hold a taller peak
+	 */
+	public PeakSuppressor(double deadzone) {
+		this.deadzone = deadzone;
+	}
+
+	/***
+	 * Clears the peaks that have a taller peak within the deadzone
+	 *
+	 * @param peaks the peak locations, 1 for a peak and 0 otherwise
+	 * @param magnitudes the magnitudes of the data
+	 * @param times the times of the data in milliseconds, in increasing order
+	 * @param length the number of values in peaks that hold data
+	 * @param deadzone the time in milliseconds on each side of a peak to check
+	 */
+	public static void suppress(int[] peaks, double[] magnitudes, double[] times, int length, double deadzone) {
+		// every peak found so far in order, from the next one to decide on
+		int[] found = new int[INITIAL_CAPACITY];
+		int first = 0, numFound = 0;
+		// the deque of peaks, tallest first
+		int[] tallest = new int[INITIAL_CAPACITY];
+		int head = 0, tail = 0;
+		// the next sample to check for a peak
+		int next = 0;
+
+		while (true) {
+			if (first == numFound) {
+				// nothing is waiting, skip ahead to the next peak
+				while (next < length && peaks[next] != 1)
+					next++;
+				if (next == length)
+					return;
+			}
+			int i = first < numFound ? found[first] : next;
+
+			// only peaks already decided are cleared, so the ones ahead are still the original ones
+			double end = times[i] + deadzone;
+			for (; next < length && times[next] <= end; next++) {
+				if (peaks[next] != 1)
+					continue;
+				// strictly shorter so the earlier of two equal peaks stays in front
+				while (tail > head && magnitudes[tallest[tail - 1]] < magnitudes[next])
+					tail--;
+				if (tail == tallest.length) {
+					tallest = compact(tallest, head, tail);
+					tail -= head;
+					head = 0;
+				}
+				tallest[tail++] = next;
+				if (numFound == found.length) {
+					found = compact(found, first, numFound);
+					numFound -= first;
+					first = 0;
+				}
+				found[numFound++] = next;
+			}
+
+			double start = times[i] - deadzone;
+			while (times[tallest[head]] < start)
+				head++;
+
+			if (tallest[head] != i)
+				peaks[i] = 0;
+			first++;
+		}
+	}
+
+	/***
+	 * Makes room at the end of an array used as a queue, moving the values in
+	 * use to the start or growing the array if they fill it
+	 *
+	 * @param queue the array
+	 * @param start the first value in use
+	 * @param end the index after the last value in use, the length of the array
+	 * @return the array to keep using
+	 */
+	private static int[] compact(int[] queue, int start, int end) {
+		if (start == 0)
+			return Arrays.copyOf(queue, queue.length * 2);
+		System.arraycopy(queue, start, queue, 0, end - start);
+		return queue;
+	}
+
+	/***
+	 * Adds a peak. Peaks must be added in time order.
+	 *
+	 * @param index the sample number of the peak
+	 * @param time the time of the peak in milliseconds
+	 * @param magnitude the magnitude of the peak
+	 */
+	public void add(long index, double time, double magnitude) {
+		undecided.addLast(index, time, magnitude);
+	}
+
+	/***
+	 * Decides every peak that no peak added later can change, clearing the
+	 * ones that aren't the tallest in their deadzone
+	 *
+	 * @param peaks the peak locations
+	 * @param firstIndex the sample number stored at peaks[0]
+	 * @param knownUntil the time up to which every peak has been added, or
+	 *            infinity at the end of the data
+	 * @return the number of peaks that were decided
+	 */
+	public int decide(int[] peaks, long firstIndex, double knownUntil) {
+		int decided = 0;
+
+		while (undecided.size > 0 && undecided.firstTime() + deadzone < knownUntil) {
+			double time = undecided.firstTime();
+			long index = undecided.firstIndex();
+
+			// bring in the peaks up to deadzone after this one
+			while (inserted < undecided.size && undecided.time(inserted) <= time + deadzone) {
+				double magnitude = undecided.magnitude(inserted);
+				// strictly shorter so the earlier of two equal peaks stays in front
+				while (tallest.size > 0 && tallest.lastMagnitude() < magnitude)
+					tallest.removeLast();
+				tallest.addLast(undecided.index(inserted), undecided.time(inserted), magnitude);
+				inserted++;
+			}
+			// and let go of the ones more than deadzone before it
+			while (tallest.firstTime() < time - deadzone)
+				tallest.removeFirst();
+
+			if (tallest.firstIndex() != index)
+				peaks[(int) (index - firstIndex)] = 0;
+
+			undecided.removeFirst();
+			inserted--;
+			decided++;
+		}
+		return decided;
+	}
+
+	/***
+	 * Returns the sample number of the oldest peak that isn't decided yet.
+	 * Every sample before it has its final peak value.
+	 *
+	 * @return the sample number, or -1 if every peak added so far is decided
+	 */
+	public long getOldestUndecided() {
+		return undecided.size == 0 ? -1 : undecided.firstIndex();
+	}
+
+	public double getDeadzone() {
+		return deadzone;
+	}
+
+	/***
+	 * A growable ring of peaks that can be added to and removed from either end,
+	 * stored as primitive columns so nothing is boxed
+	 */
+	private static class PeakQueue implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private long[] indices = new long[INITIAL_CAPACITY];
+		private double[] times = new double[INITIAL_CAPACITY];
+		private double[] magnitudes = new double[INITIAL_CAPACITY];
+		private int head = 0;
+		int size = 0;
+
+		void addLast(long index, double time, double magnitude) {
+			if (size == indices.length)
+				grow();
+			int slot = (head + size) & (indices.length - 1);
+			indices[slot] = index;
+			times[slot] = time;
+			magnitudes[slot] = magnitude;
+			size++;
+		}
+
+		void removeFirst() {
+			head = (head + 1) & (indices.length - 1);
+			size--;
+		}
+
+		void removeLast() {
+			size--;
+		}
+
+		long index(int i) {
+			return indices[(head + i) & (indices.length - 1)];
+		}
+
+		double time(int i) {
+			return times[(head + i) & (indices.length - 1)];
+		}
+
+		double magnitude(int i) {
+			return magnitudes[(head + i) & (indices.length - 1)];
+		}
+
+		long firstIndex() {
+			return indices[head];
+		}
+
+		double firstTime() {
+			return times[head];
+		}
+
+		double lastMagnitude() {
+			return magnitude(size - 1);
+		}
+
+		// doubles the capacity, unwrapping the ring so it starts at 0
+		private void grow() {
+			int capacity = indices.length * 2;
+			long[] newIndices = new long[capacity];
+			double[] newTimes = new double[capacity];
+			double[] newMagnitudes = new double[capacity];
+			for (int i = 0; i < size; i++) {
+				newIndices[i] = index(i);
+				newTimes[i] = time(i);
+				newMagnitudes[i] = magnitude(i);
+			}
+			indices = newIndices;
+			times = newTimes;
+			magnitudes = newMagnitudes;
+			head = 0;
+		}
+	}
+}
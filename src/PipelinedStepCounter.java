@@ -0,0 +1,306 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/***
+ * Counts the steps in a recording with two threads: one parses the file and
+ * puts each sample in a SampleRingBuffer, and the calling thread takes them
+ * out and feeds a StepDetector. Parsing and detection overlap, and the
+ * reader never gets more than the ring's capacity ahead of the detector.
+ *
+ * Text recordings are parsed one line at a time with CSVReader.readRow, so
+ * no sample allocates anything on its way from the file to the detector.
+ * Other formats (PowerSense logs and binary recordings) are read whole by
+ * their reader first and then put in the ring.
+ *
+ * Times in seconds are converted to milliseconds the way the readers do,
+ * judged from the first samples, so the count matches counting the table
+ * RecordingReaders.read returns.
+ *
+ * Run on its own it counts every recording in the given files and folders
+ * (by default the BatchEvaluation folders) with each wait strategy and
+ * reports the throughput, how much each side waited, and whether the counts
+ * match counting in one batch.
+ *
+ * Usage: java PipelinedStepCounter [-wait busy_spin|yield|park] [-capacity samples] [recording | folder ...]
+ */
+public class PipelinedStepCounter {
+	private static final int BATCH_SIZE = 256;
+	// the number of times Resampler.isInSeconds looks at
+	private static final int SECONDS_CHECK = 513;
+
+	private final String filepath;
+	private final SampleRingBuffer ring;
+	private final StepDetector detector;
+	private volatile Exception readError;
+
+	public PipelinedStepCounter(String filepath) {
+		this(filepath, SampleRingBuffer.DEFAULT_CAPACITY, WaitStrategy.YIELD, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Sets up a count
+	 *
+	 * @param filepath the recording
+	 * @param capacity the most samples the reader can get ahead of the detector
+	 * @param waitStrategy how each thread waits for the other
+	 * @param config the detector parameters
+	 */
+	public PipelinedStepCounter(String filepath, int capacity, WaitStrategy waitStrategy, StepCounterConfig config) {
+		this.filepath = filepath;
+		this.ring = new SampleRingBuffer(capacity, waitStrategy);
+		this.detector = new StepDetector(null, config);
+	}
+
+	public static void main(String[] args) {
+		List<WaitStrategy> strategies = new ArrayList<WaitStrategy>(Arrays.asList(WaitStrategy.values()));
+		int capacity = SampleRingBuffer.DEFAULT_CAPACITY;
+		List<String> paths = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-wait"))
+				strategies = Arrays.asList(WaitStrategy.valueOf(args[++i].toUpperCase()));
+			else if (args[i].equals("-capacity"))
+				capacity = Integer.parseInt(args[++i]);
+			else
+				paths.add(args[i]);
+		}
+		if (paths.isEmpty())
+			paths.addAll(Arrays.asList(BatchEvaluation.DEFAULT_FOLDERS));
+
+		List<File> files = new ArrayList<File>();
+		for (String path : paths)
+			findFiles(new File(path), files);
+
+		List<String> recordings = new ArrayList<String>();
+		List<Integer> expected = new ArrayList<Integer>();
+		for (File file : files) {
+			try {
+				if (RecordingReaders.detect(file.getPath()) == null)
+					continue;
+				CSVData data = RecordingReaders.read(file.getPath());
+				expected.add(CountSteps.countStepsForMagnitudes(CountSteps.calculateMagnitudesFor(data.getColumn(1),
+						data.getColumn(2), data.getColumn(3)), data.getColumn(0), ThresholdStrategy.ADAPTIVE));
+				recordings.add(file.getPath());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (recordings.isEmpty()) {
+			System.out.println("No recordings in " + paths);
+			System.out.println("Usage: java PipelinedStepCounter [-wait busy_spin|yield|park] [-capacity samples] [recording | folder ...]");
+			return;
+		}
+
+		System.out.println(String.format("%d recordings, ring of %d samples, %d cores", recordings.size(),
+				new SampleRingBuffer(capacity, WaitStrategy.YIELD).getCapacity(),
+				Runtime.getRuntime().availableProcessors()));
+		System.out.println(String.format("%-10s %12s %15s %15s %15s %15s %11s", "wait", "samples/s", "producer stalls",
+				"producer ms", "consumer stalls", "consumer ms", "mismatches"));
+
+		try {
+			for (WaitStrategy strategy : strategies) {
+				long samples = 0, producerStalls = 0, producerNanos = 0, consumerStalls = 0, consumerNanos = 0;
+				int mismatches = 0;
+				long start = System.nanoTime();
+				for (int r = 0; r < recordings.size(); r++) {
+					PipelinedStepCounter counter = new PipelinedStepCounter(recordings.get(r), capacity, strategy,
+							StepCounterConfig.DEFAULT);
+					if (counter.count() != expected.get(r))
+						mismatches++;
+
+					SampleRingBuffer ring = counter.getRing();
+					samples += ring.getNumPut();
+					producerStalls += ring.getProducerStalls();
+					producerNanos += ring.getProducerStallNanos();
+					consumerStalls += ring.getConsumerStalls();
+					consumerNanos += ring.getConsumerStallNanos();
+				}
+				double seconds = (System.nanoTime() - start) / 1e9;
+
+				System.out.println(String.format("%-10s %12.0f %15d %15.1f %15d %15.1f %11d", strategy.name().toLowerCase(),
+						samples / seconds, producerStalls, producerNanos / 1e6, consumerStalls, consumerNanos / 1e6,
+						mismatches));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * Adds a file, or the files in a folder and the folders inside it, in name order
+	 */
+	private static void findFiles(File path, List<File> files) {
+		if (path.isFile()) {
+			files.add(path);
+			return;
+		}
+		File[] children = path.listFiles();
+		if (children == null)
+			return;
+		Arrays.sort(children);
+		for (File child : children)
+			findFiles(child, files);
+	}
+
+	/***
+	 * Reads the whole recording and counts its steps. A counter can only count once.
+	 *
+	 * @return the number of steps
+	 * @throws IOException if the recording can't be read
+	 */
+	public int count() throws IOException {
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					read();
+				} catch (IOException | RuntimeException e) {
+					readError = e;
+				} catch (InterruptedException e) {
+					// the detector gave up, nobody is waiting for the rest
+				} finally {
+					ring.close();
+				}
+			}
+		}, "Sample reader " + filepath);
+		reader.setDaemon(true);
+
+		SampleRingBuffer.SampleHandler handler = new SampleRingBuffer.SampleHandler() {
+			@Override
+			public void onSample(double time, double ax, double ay, double az, double gx, double gy, double gz) {
+				detector.addSample(time, ax, ay, az);
+			}
+		};
+
+		reader.start();
+		try {
+			while (ring.take(handler, BATCH_SIZE) >= 0)
+				;
+			reader.join();
+		} catch (InterruptedException e) {
+			reader.interrupt();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while counting " + filepath, e);
+		} catch (RuntimeException e) {
+			reader.interrupt();
+			throw e;
+		}
+
+		if (readError instanceof IOException)
+			throw (IOException) readError;
+		if (readError != null)
+			throw new IOException("Couldn't read " + filepath, readError);
+
+		detector.finish();
+		return detector.getStepCount();
+	}
+
+	/***
+	 * Puts every sample of the recording in the ring, on the reader thread
+	 */
+	private void read() throws IOException, InterruptedException {
+		RecordingReader format = RecordingReaders.detect(filepath);
+		if (format == null)
+			throw new IOException("No reader recognises the layout of " + filepath);
+
+		if (format instanceof TextRecordingReader && !(format instanceof PowerSenseReader))
+			stream((TextRecordingReader) format);
+		else
+			putAll(format.read(filepath));
+	}
+
+	/***
+	 * Parses a text recording line by line into the ring
+	 */
+	private void stream(TextRecordingReader format) throws IOException, InterruptedException {
+		try (CSVReader reader = new CSVReader(filepath)) {
+			String header = reader.readHeader();
+			ColumnMapping mapping = format.mapColumns(header, reader.countFields());
+			if (!mapping.hasAcceleration())
+				throw new IOException("No time and acceleration columns in " + filepath);
+			int[] sources = mapping.getSourceColumns();
+
+			double[] row = new double[SampleRingBuffer.FRAME_SIZE];
+			Arrays.fill(row, Double.NaN); // the gyro stays NaN when there isn't one
+
+			// the first rows wait until there are enough times to tell seconds from milliseconds
+			double[] firstRows = new double[SECONDS_CHECK * row.length];
+			double[] firstTimes = new double[SECONDS_CHECK];
+			int numFirst = 0;
+			double scale = 0;
+
+			while (reader.readRow(sources, row)) {
+				if (!ColumnMapping.isComplete(row[ColumnMapping.TIME], row[ColumnMapping.ACCEL_X],
+						row[ColumnMapping.ACCEL_Y], row[ColumnMapping.ACCEL_Z]))
+					continue; // the readers leave these rows out of the table too
+				if (scale != 0) {
+					put(row, 0, scale);
+					continue;
+				}
+
+				System.arraycopy(row, 0, firstRows, numFirst * row.length, row.length);
+				firstTimes[numFirst++] = row[ColumnMapping.TIME];
+				if (numFirst == SECONDS_CHECK) {
+					scale = Resampler.isInSeconds(firstTimes, numFirst) ? 1000 : 1;
+					for (int i = 0; i < numFirst; i++)
+						put(firstRows, i * row.length, scale);
+				}
+			}
+
+			if (scale == 0) {
+				scale = Resampler.isInSeconds(firstTimes, numFirst) ? 1000 : 1;
+				for (int i = 0; i < numFirst; i++)
+					put(firstRows, i * row.length, scale);
+			}
+		}
+	}
+
+	private void put(double[] rows, int start, double timeScale) throws InterruptedException {
+		ring.put(rows[start] * timeScale, rows[start + 1], rows[start + 2], rows[start + 3], rows[start + 4],
+				rows[start + 5], rows[start + 6]);
+	}
+
+	/***
+	 * Puts the rows of a table that was read whole into the ring
+	 */
+	private void putAll(CSVData data) throws InterruptedException {
+		int numRows = data.getNumRows();
+		if (numRows == 0)
+			return;
+
+		double[][] channels = new double[SampleRingBuffer.FRAME_SIZE][];
+		int numChannels = data.getRow(0).length;
+		for (int c = 0; c < channels.length; c++) {
+			if (c < numChannels) {
+				channels[c] = data.getColumn(c);
+			} else {
+				channels[c] = new double[numRows];
+				Arrays.fill(channels[c], Double.NaN);
+			}
+		}
+
+		for (int i = 0; i < numRows; i++)
+			ring.put(channels[0][i], channels[1][i], channels[2][i], channels[3][i], channels[4][i], channels[5][i],
+					channels[6][i]);
+	}
+
+	public String getFilepath() {
+		return filepath;
+	}
+
+	/***
+	 * Returns the ring between the threads, for its statistics once count has returned
+	 *
+	 * @return the ring
+	 */
+	public SampleRingBuffer getRing() {
+		return ring;
+	}
+
+	public long getNumSamples() {
+		return detector.getNumSamples();
+	}
+}
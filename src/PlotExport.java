@@ -0,0 +1,189 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Writes a StepPlot of every recording to an image file, without opening any
+ * windows, so a whole dataset can be looked over on a server with no display.
+ * Each plot shows the magnitudes, the thresholds, and which peaks were counted
+ * as steps; the title has the real number of steps when it is known.
+ *
+ * Recordings are found and can be picked the same way as for BatchEvaluation,
+ * and are loaded and drawn in parallel on a fork-join pool. A recording that
+ * can't be read is reported without stopping the others.
+ *
+ * Usage: java PlotExport [-format png|svg] [-out folder] [-size widthxheight] [-strategy adaptive|global]
+ * [-threads n] [-where field=value ...] [folder or zip ...]
+ */
+public class PlotExport {
+	public static final String DEFAULT_OUTPUT = "plots";
+
+	private final File output;
+	private final String format;
+	private final int width, height;
+	private final ThresholdStrategy strategy;
+	private final StepCounterConfig config;
+
+	private final AtomicInteger written = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	public PlotExport(File output, String format, int width, int height, ThresholdStrategy strategy,
+			StepCounterConfig config) {
+		this.output = output;
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.strategy = strategy;
+		this.config = config;
+	}
+
+	public static void main(String[] args) {
+		// there may be no display, and no plot here needs one
+		System.setProperty("java.awt.headless", "true");
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		String format = "png";
+		File output = new File(DEFAULT_OUTPUT);
+		int width = StepPlot.DEFAULT_WIDTH, height = StepPlot.DEFAULT_HEIGHT;
+		ThresholdStrategy strategy = ThresholdStrategy.ADAPTIVE;
+		List<DatasetManifest.Filter> filters = new ArrayList<DatasetManifest.Filter>();
+		List<String> folders = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-format")) {
+				format = args[++i].toLowerCase();
+			} else if (args[i].equals("-out")) {
+				output = new File(args[++i]);
+			} else if (args[i].equals("-size")) {
+				String[] size = args[++i].toLowerCase().split("x");
+				width = Integer.parseInt(size[0]);
+				height = Integer.parseInt(size[1]);
+			} else if (args[i].equals("-strategy")) {
+				strategy = ThresholdStrategy.valueOf(args[++i].toUpperCase());
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-where")) {
+				String[] condition = args[++i].split("=", 2);
+				filters.add(DatasetManifest.where(condition[0], condition.length > 1 ? condition[1] : ""));
+			} else {
+				folders.add(args[i]);
+			}
+		}
+		if (!format.equals("png") && !format.equals("svg")) {
+			System.out.println("Usage: java PlotExport [-format png|svg] [-out folder] [-size widthxheight]"
+					+ " [-strategy adaptive|global] [-threads n] [-where field=value ...] [folder or zip ...]");
+			return;
+		}
+		if (folders.isEmpty())
+			folders.addAll(Arrays.asList(BatchEvaluation.DEFAULT_FOLDERS));
+
+		try (DatasetManifest manifest = DatasetManifest.scan(folders)) {
+			if (!output.isDirectory() && !output.mkdirs())
+				throw new IOException("Can't create " + output);
+
+			PlotExport export = new PlotExport(output, format, width, height, strategy, StepCounterConfig.DEFAULT);
+			long start = System.nanoTime();
+			export.exportAll(manifest, manifest.select(filters.toArray(new DatasetManifest.Filter[0])),
+					new ForkJoinPool(threads));
+			System.out.println(String.format("%d plots written to %s in %.3f s on %d threads, %d could not be read",
+					export.getNumWritten(), output, (System.nanoTime() - start) / 1e9, threads, export.getNumFailed()));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * Writes a plot of each recording on a pool
+	 *
+	 * @param manifest the manifest the entries are from
+	 * @param entries the recordings to plot
+	 * @param pool the pool to run on
+	 */
+	public void exportAll(DatasetManifest manifest, List<DatasetManifest.Entry> entries, ForkJoinPool pool) {
+		pool.invoke(new ExportTask(manifest, entries, 0, entries.size()));
+	}
+
+	private class ExportTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final DatasetManifest manifest;
+		private final List<DatasetManifest.Entry> entries;
+		private final int start, end;
+
+		ExportTask(DatasetManifest manifest, List<DatasetManifest.Entry> entries, int start, int end) {
+			this.manifest = manifest;
+			this.entries = entries;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				DatasetManifest.Entry entry = entries.get(start);
+				try {
+					export(manifest.read(entry), entry);
+					written.incrementAndGet();
+				} catch (Exception e) {
+					System.err.println("Could not plot " + entry.getPath() + ": " + e);
+					failed.incrementAndGet();
+				}
+			} else if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new ExportTask(manifest, entries, start, middle), new ExportTask(manifest, entries, middle, end));
+			}
+		}
+	}
+
+	/***
+	 * Writes the plot of one recording
+	 *
+	 * @param data the recording, as RecordingReaders reads it
+	 * @param entry the recording's entry, for its name and real step count
+	 * @return the file written
+	 * @throws IOException if the file can't be written
+	 */
+	public File export(CSVData data, DatasetManifest.Entry entry) throws IOException {
+		String title = entry.getPath();
+		if (!Double.isNaN(entry.getSteps()))
+			title += "   " + formatSteps(entry.getSteps()) + " real steps";
+
+		StepPlot plot = StepPlot.of(title, AnalysisContext.of(data), strategy, config);
+		plot.setSize(width, height);
+
+		File file = new File(output, fileNameFor(entry.getPath()) + "." + format);
+		if (format.equals("svg"))
+			plot.writeSvg(file);
+		else
+			plot.writePng(file);
+		return file;
+	}
+
+	/***
+	 * Turns the path of a recording into a file name, so recordings with the
+	 * same name in different folders don't overwrite each other
+	 *
+	 * @param path the path, like "data.zip!/data/Ben/walk.csv"
+	 * @return the name, like "data.zip_data_Ben_walk.csv"
+	 */
+	public static String fileNameFor(String path) {
+		return path.replaceAll("[^A-Za-z0-9._-]+", "_").replaceAll("^[_.]+", "");
+	}
+
+	public int getNumWritten() {
+		return written.get();
+	}
+
+	public int getNumFailed() {
+		return failed.get();
+	}
+
+	private static String formatSteps(double steps) {
+		return steps == Math.rint(steps) ? String.valueOf((long) steps) : String.valueOf(steps);
+	}
+}
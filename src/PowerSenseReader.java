@@ -0,0 +1,64 @@
+import java.io.IOException;
+
+/***
+ * Reads the raw logs of the PowerSense app. Time is unix time in seconds, and
+ * the phone's acceleration is split into gravity and the user's own
+ * acceleration, both in G. They are added back together so the table holds
+ * the whole acceleration, like every other layout.
+ */
+public class PowerSenseReader extends TextRecordingReader {
+	private static final String[] GRAVITY_NAMES = { "gravityx", "gravityy", "gravityz" };
+
+	@Override
+	public String getName() {
+		return "PowerSense";
+	}
+
+	@Override
+	public int sniff(String filename, byte[] head, int length) {
+		Head text = readHead(head, length);
+		if (text == null || text.header == null)
+			return 0;
+		String header = ColumnMapping.normalize(text.header);
+		return header.contains("useraccx") && header.contains("gravityx") ? 20 : 0;
+	}
+
+	@Override
+	protected CSVData read(CSVReader reader, String filepath) throws IOException {
+		String header = reader.readHeader();
+		if (header == null)
+			throw new IOException("No column names in " + filepath);
+		String[] names = header.split(",");
+		ColumnMapping mapping = ColumnMapping.byName(names);
+		if (!mapping.hasAcceleration())
+			throw new IOException("No time and acceleration columns in " + filepath);
+
+		// the channels, then the gravity columns after them
+		int[] channels = mapping.getSourceColumns();
+		int[] sources = new int[channels.length + 3];
+		System.arraycopy(channels, 0, sources, 0, channels.length);
+		for (int a = 0; a < 3; a++) {
+			sources[channels.length + a] = findColumn(names, GRAVITY_NAMES[a]);
+			if (sources[channels.length + a] < 0)
+				throw new IOException("No gravity columns in " + filepath);
+		}
+
+		double[][] read = reader.readColumns(sources);
+		double[][] columns = new double[channels.length][];
+		System.arraycopy(read, 0, columns, 0, channels.length);
+		for (int a = 0; a < 3; a++) {
+			double[] acceleration = columns[ColumnMapping.ACCEL_X + a];
+			double[] gravity = read[channels.length + a];
+			for (int i = 0; i < acceleration.length; i++)
+				acceleration[i] += gravity[i];
+		}
+		return ColumnMapping.toTable(filepath, columns);
+	}
+
+	private static int findColumn(String[] names, String normalizedName) {
+		for (int i = 0; i < names.length; i++)
+			if (ColumnMapping.normalize(names[i]).equals(normalizedName))
+				return i;
+		return -1;
+	}
+}
@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/***
+ * Reads one layout of recording file into the standard table: a CSVData whose
+ * columns are named as in ColumnMapping.NAMES, with the time in milliseconds
+ * first, then the x, y and z acceleration, then the gyro if the file has one.
+ *
+ * Readers are found by RecordingReaders, which asks every registered reader
+ * how sure it is about a file from its name and first few kilobytes, and uses
+ * the surest one. New readers can be added with RecordingReaders.register, or
+ * listed in META-INF/services/RecordingReader to be found on the classpath.
+ */
+public interface RecordingReader {
+
+	/***
+	 * Returns a short name for the layout, like "PowerSense"
+	 *
+	 * @return the name of the layout
+	 */
+	String getName();
+
+	/***
+	 * Says how sure this reader is that it can read a file. A reader that only
+	 * knows the file is text should return a low number, and one that found its
+	 * own signature a high one.
+	 *
+	 * @param filename the name of the file
+	 * @param head the first bytes of the file
+	 * @param length the number of bytes in head that were read
+	 * @return 0 if the reader can't read the file, otherwise a higher number the surer it is
+	 */
+	int sniff(String filename, byte[] head, int length);
+
+	/***
+	 * Reads a file into the standard table
+	 *
+	 * @param filepath the file to read
+	 * @return the time, acceleration and gyro columns
+	 * @throws IOException if the file can't be read or has no acceleration
+	 */
+	CSVData read(String filepath) throws IOException;
+
+	/***
+	 * Reads a recording from a stream, like an entry of a zip file, into the
+	 * standard table. The stream is closed when the reader is done with it.
+	 *
+	 * @param name the name of the recording, kept as the table's file path
+	 * @param in the stream, at the start of the recording
+	 * @param size the number of bytes in the stream, or -1 if it isn't known
+	 * @return the time, acceleration and gyro columns
+	 * @throws IOException if the stream can't be read or has no acceleration
+	 */
+	CSVData read(String name, InputStream in, long size) throws IOException;
+}
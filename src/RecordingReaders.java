@@ -0,0 +1,138 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/***
+ * Reads any kind of recording by finding the reader that recognises it. The
+ * first few kilobytes of the file are read once and shown to every reader,
+ * and the one that is surest reads the file straight into the standard table
+ * (see RecordingReader), so a folder of mixed layouts loads through one path.
+ *
+ * The built in readers handle binary recordings, PowerSense logs, HyperIMU
+ * logs, and any other CSV or text file whose columns can be found by name
+ * (iPhone SensorLog exports and the class recordings) or that holds just the
+ * time and x, y and z columns.
+ */
+public class RecordingReaders {
+	private static final int HEAD_SIZE = 4096;
+
+	private static final List<RecordingReader> readers = new CopyOnWriteArrayList<RecordingReader>();
+	static {
+		readers.add(new BinaryRecordingReader());
+		readers.add(new PowerSenseReader());
+		readers.add(new HyperIMUReader());
+		readers.add(new TextRecordingReader());
+		for (RecordingReader reader : ServiceLoader.load(RecordingReader.class))
+			readers.add(reader);
+	}
+
+	/***
+	 * Adds a reader. It is asked about files along with the built in readers,
+	 * and wins ties with the readers added before it.
+	 *
+	 * @param reader the reader to add
+	 */
+	public static void register(RecordingReader reader) {
+		readers.add(0, reader);
+	}
+
+	public static List<RecordingReader> getReaders() {
+		return new ArrayList<RecordingReader>(readers);
+	}
+
+	/***
+	 * Reads a recording with the reader that recognises it
+	 *
+	 * @param filepath the file to read
+	 * @return the standard table of time, acceleration and, if there is one, gyro
+	 * @throws IOException if no reader recognises the file or it can't be read
+	 */
+	public static CSVData read(String filepath) throws IOException {
+		RecordingReader reader = detect(filepath);
+		if (reader == null)
+			throw new IOException("No reader recognises the layout of " + filepath);
+		return reader.read(filepath);
+	}
+
+	/***
+	 * Reads a recording from a stream, like an entry of a zip file, with the
+	 * reader that recognises it. The first bytes are read to find the reader
+	 * and then handed to it in front of the rest of the stream, so nothing is
+	 * read twice. The stream is closed.
+	 *
+	 * @param name the name of the recording, like a file path
+	 * @param in the stream, at the start of the recording
+	 * @param size the number of bytes in the stream, or -1 if it isn't known
+	 * @return the standard table of time, acceleration and, if there is one, gyro
+	 * @throws IOException if no reader recognises the recording or it can't be read
+	 */
+	public static CSVData read(String name, InputStream in, long size) throws IOException {
+		byte[] head = new byte[HEAD_SIZE];
+		int length = 0;
+		RecordingReader reader;
+		try {
+			int n;
+			while (length < head.length && (n = in.read(head, length, head.length - length)) >= 0)
+				length += n;
+			reader = detect(name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1), head, length);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		if (reader == null) {
+			in.close();
+			throw new IOException("No reader recognises the layout of " + name);
+		}
+		return reader.read(name, new SequenceInputStream(new ByteArrayInputStream(head, 0, length), in), size);
+	}
+
+	/***
+	 * Finds the reader for a file
+	 *
+	 * @param filepath the file
+	 * @return the reader that is surest it can read the file, or null if none can
+	 * @throws IOException if the file can't be read
+	 */
+	public static RecordingReader detect(String filepath) throws IOException {
+		byte[] head = new byte[HEAD_SIZE];
+		int length = 0;
+		try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.wrap(head);
+			int n;
+			while (buffer.hasRemaining() && (n = channel.read(buffer)) >= 0)
+				length += n;
+		}
+
+		return detect(Paths.get(filepath).getFileName().toString(), head, length);
+	}
+
+	/***
+	 * Finds the reader for a file from its first bytes
+	 *
+	 * @param filename the name of the file
+	 * @param head the first bytes of the file
+	 * @param length the number of bytes in head that were read
+	 * @return the reader that is surest it can read the file, or null if none can
+	 */
+	public static RecordingReader detect(String filename, byte[] head, int length) {
+		RecordingReader best = null;
+		int bestScore = 0;
+		for (RecordingReader reader : readers) {
+			int score = reader.sniff(filename, head, length);
+			if (score > bestScore) {
+				best = reader;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+}
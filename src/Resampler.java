@@ -0,0 +1,372 @@
+import java.util.Arrays;
+
+/***
+ * Converts samples taken at any rate, even uneven ones, to a fixed rate, so
+ * the detector sees the same number of samples per second from every device.
+ *
+ * The samples are first linearly interpolated onto an even grid that is a
+ * whole multiple (the factor) of the output rate and at least as fast as the
+ * input. When the factor is more than 1, the grid is then low-pass filtered
+ * below half the output rate, so fast wobbles don't fold back as slow ones,
+ * and only every factor-th sample is kept. The filter is a windowed sinc that
+ * is only evaluated for the samples that are kept (a polyphase decimator), so
+ * the work per output sample doesn't grow with the input rate.
+ *
+ * Output sample j is at time start + j / outputRate, where start is the time of
+ * the first input sample, and the output covers the same span of time as the
+ * input. Decimating delays each output by a few output samples; the times
+ * reported are the real ones, with the delay taken out. When samples stop for
+ * longer than MAX_GAP the output starts again at the next sample, so a
+ * dropout or a broken timestamp doesn't turn into a long flat line.
+ *
+ * A resampler is fed one sample at a time and passes its output samples to a
+ * listener. It keeps no more than one filter's worth of samples, so it can
+ * run on a live stream. It is not thread safe.
+ */
+public class Resampler {
+
+	/***
+	 * Receives the resampled signal
+	 */
+	public interface Output {
+		/***
+		 * Called once for every output sample, in order
+		 *
+		 * @param time the time of the sample in milliseconds
+		 * @param value the value of the sample
+		 */
+		void onSample(double time, double value);
+	}
+
+	// the longest time in milliseconds between two samples that is filled in, longer gaps are dropouts
+	public static final double MAX_GAP = 1000;
+
+	// taps of the low-pass filter for each step of the factor, more means a sharper cutoff
+	private static final int TAPS_PER_FACTOR = 8;
+	// the cutoff as a fraction of half the output rate, leaving room for the filter to roll off
+	private static final double CUTOFF = 0.9;
+
+	private final double outputInterval; // ms
+	private final int factor;
+	private final double gridInterval; // ms
+	private final double[] taps;
+	private final Output output;
+
+	// the last input sample
+	private double lastTime, lastValue;
+	private long numInputs = 0;
+
+	// the interpolated grid: the next grid sample is number gridIndex, at startTime + gridIndex * gridInterval
+	private double startTime;
+	private long gridIndex = 0;
+	// the last taps.length grid samples, written twice so the newest taps.length are always in a row
+	private final double[] history;
+	private int newest = 0; // history[newest + 1 .. newest + taps.length] is the filter window
+	private int untilOutput = 0; // grid samples to go until the next one that makes an output sample
+	private boolean finished = false;
+
+	/***
+	 * Creates a resampler
+	 *
+	 * @param inputRate the rate the input is expected at, in Hz
+	 * @param outputRate the rate to resample to, in Hz
+	 * @param output where to send the resampled signal
+	 */
+	public Resampler(double inputRate, double outputRate, Output output) {
+		if (!(outputRate > 0))
+			throw new IllegalArgumentException("The output rate must be positive, not " + outputRate);
+		this.outputInterval = 1000 / outputRate;
+		// a little slack so a 100.3 Hz stream isn't treated as needing a factor of 3 for 50 Hz
+		this.factor = inputRate > outputRate ? (int) Math.ceil(inputRate / outputRate - 0.01) : 1;
+		this.gridInterval = outputInterval / factor;
+		this.taps = factor > 1 ? calculateTaps(factor) : new double[1];
+		this.history = new double[taps.length * 2];
+		this.output = output;
+	}
+
+	/***
+	 * Resamples a recording to a fixed rate, filtering out what that rate can't
+	 * hold first
+	 *
+	 * @param times the time of each sample in milliseconds, in increasing order
+	 * @param values the value of each sample
+	 * @param outputRate the rate to resample to, in Hz
+	 * @return the output times in column 0 and values in column 1
+	 */
+	public static double[][] resample(double[] times, double[] values, double outputRate) {
+		return resample(times, new double[][] { values }, outputRate);
+	}
+
+	/***
+	 * Resamples several columns that share the same times, like the x, y and z
+	 * acceleration, onto the same output times
+	 *
+	 * @param times the time of each sample in milliseconds, in increasing order
+	 * @param columns the values of each column
+	 * @param outputRate the rate to resample to, in Hz
+	 * @return the output times in column 0, then the resampled columns in order
+	 */
+	public static double[][] resample(double[] times, double[][] columns, double outputRate) {
+		double inputRate = estimateRate(times);
+		// exact unless the recording has gaps or broken times, then the output grows as needed
+		int capacity = 16;
+		if (inputRate > 0) {
+			double span = times[times.length - 1] - times[0];
+			capacity = (int) Math.min(Math.floor(span * outputRate / 1000 + 1e-9) + 1,
+					2.0 * times.length * outputRate / inputRate + 16);
+		}
+
+		double[][] resampled = new double[columns.length + 1][];
+		for (int c = 0; c < columns.length; c++) {
+			ColumnOutput out = new ColumnOutput(capacity);
+			Resampler resampler = new Resampler(inputRate, outputRate, out);
+			double[] column = columns[c];
+			for (int i = 0; i < times.length; i++)
+				resampler.add(times[i], column[i]);
+			resampler.finish();
+
+			resampled[0] = out.length == out.times.length ? out.times : Arrays.copyOf(out.times, out.length);
+			resampled[c + 1] = out.length == out.values.length ? out.values : Arrays.copyOf(out.values, out.length);
+		}
+		if (resampled[0] == null)
+			resampled[0] = new double[0];
+		return resampled;
+	}
+
+	/***
+	 * Estimates the rate of a recording from the median time between samples,
+	 * so a few dropped or doubled samples don't change it
+	 *
+	 * @param times the time of each sample in milliseconds
+	 * @return the rate in Hz, or 0 if there aren't two samples at different times
+	 */
+	public static double estimateRate(double[] times) {
+		return estimateRate(times, times.length);
+	}
+
+	/***
+	 * Estimates the rate from the first samples of a recording or frame
+	 *
+	 * @param times the time of each sample in milliseconds
+	 * @param length the number of values in times that hold data
+	 * @return the rate in Hz, or 0 if there aren't two samples at different times
+	 */
+	public static double estimateRate(double[] times, int length) {
+		double interval = medianInterval(times, length);
+		return interval > 0 ? 1000 / interval : 0;
+	}
+
+	/***
+	 * Returns times in milliseconds. Some apps (PowerSense) log unix time in
+	 * seconds; no sensor samples faster than 1000 Hz, so times less than a
+	 * millisecond apart must be in seconds.
+	 *
+	 * @param times the time of each sample in seconds or milliseconds
+	 * @return times if it was already in milliseconds, otherwise a converted copy
+	 */
+	public static double[] toMilliseconds(double[] times) {
+		if (!isInSeconds(times, times.length))
+			return times;
+		double[] millis = new double[times.length];
+		for (int i = 0; i < times.length; i++)
+			millis[i] = times[i] * 1000;
+		return millis;
+	}
+
+	/***
+	 * Checks if times are in seconds, the way toMilliseconds does
+	 *
+	 * @param times the time of each sample in seconds or milliseconds
+	 * @param length the number of times to look at
+	 * @return true if the times are in seconds
+	 */
+	public static boolean isInSeconds(double[] times, int length) {
+		double interval = medianInterval(times, length);
+		return interval > 0 && interval < 1;
+	}
+
+	private static double medianInterval(double[] times, int length) {
+		// a few hundred intervals give a steady median without sorting the whole recording
+		int count = Math.min(length - 1, 512);
+		if (count < 1)
+			return 0;
+		double[] intervals = new double[count];
+		for (int i = 0; i < count; i++)
+			intervals[i] = times[i + 1] - times[i];
+		Arrays.sort(intervals);
+		return intervals[count / 2];
+	}
+
+	/***
+	 * Designs the low-pass filter: a sinc cut off below half the output rate,
+	 * shaped by a Blackman window and scaled so a constant signal keeps its value
+	 */
+	private static double[] calculateTaps(int factor) {
+		int length = TAPS_PER_FACTOR * factor + 1;
+		int middle = length / 2;
+		double cutoff = CUTOFF * 0.5 / factor; // cycles per grid sample
+		double[] taps = new double[length];
+		double sum = 0;
+
+		for (int i = 0; i < length; i++) {
+			int n = i - middle;
+			double sinc = n == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * n) / (Math.PI * n);
+			double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1))
+					+ 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+			taps[i] = sinc * window;
+			sum += taps[i];
+		}
+		for (int i = 0; i < length; i++)
+			taps[i] /= sum;
+		return taps;
+	}
+
+	/***
+	 * Adds the next input sample. A sample that is earlier than the one before
+	 * it or has no time (NaN) is ignored, and one at the same time replaces it. After a gap of more
+	 * than MAX_GAP the output starts again from the new sample instead of
+	 * filling the gap.
+	 *
+	 * @param time the time of the sample in milliseconds
+	 * @param value the value of the sample
+	 */
+	public void add(double time, double value) {
+		if (finished)
+			throw new IllegalStateException("Cannot add samples after finish() was called");
+
+		if (Double.isNaN(time))
+			return;
+		if (numInputs == 0 || time - lastTime > MAX_GAP) {
+			if (numInputs > 0)
+				flush();
+			start(time, value);
+			return;
+		}
+		if (time < lastTime)
+			return;
+
+		double gridTime = startTime + gridIndex * gridInterval;
+		if (gridTime <= time) {
+			double slope = time > lastTime ? (value - lastValue) / (time - lastTime) : 0;
+			double base = time > lastTime ? lastValue : value;
+			do {
+				addToGrid(base + slope * (gridTime - lastTime));
+				gridTime = startTime + gridIndex * gridInterval;
+			} while (gridTime <= time);
+		}
+		lastTime = time;
+		lastValue = value;
+		numInputs++;
+	}
+
+	/***
+	 * Marks the end of the input and sends the output samples that were
+	 * waiting on the filter, up to the time of the last input sample
+	 */
+	public void finish() {
+		if (finished)
+			return;
+		finished = true;
+		if (numInputs > 0)
+			flush();
+	}
+
+	/***
+	 * Starts the grid at a sample, as if its value had always been there
+	 */
+	private void start(double time, double value) {
+		startTime = time;
+		gridIndex = 0;
+		lastTime = time;
+		lastValue = value;
+		numInputs++;
+		Arrays.fill(history, value);
+		newest = 0;
+		untilOutput = 0;
+		addToGrid(value);
+	}
+
+	/***
+	 * Sends the output samples up to the last input sample, holding the last
+	 * value while the filter catches up with it
+	 */
+	private void flush() {
+		long lastOutput = (long) Math.floor((lastTime - startTime) / outputInterval + 1e-9);
+		while (gridIndex <= (lastOutput + getDelay()) * factor)
+			addToGrid(lastValue);
+	}
+
+	/***
+	 * Returns how many output samples each output sample is sent after the
+	 * input it covers
+	 *
+	 * @return the delay in output samples
+	 */
+	public int getDelay() {
+		return factor > 1 ? TAPS_PER_FACTOR / 2 : 0;
+	}
+
+	public int getFactor() {
+		return factor;
+	}
+
+	public double getOutputRate() {
+		return 1000 / outputInterval;
+	}
+
+	/***
+	 * Adds the next sample of the interpolated grid, and filters an output
+	 * sample if the grid has reached one
+	 */
+	private void addToGrid(double value) {
+		long index = gridIndex++;
+
+		if (factor == 1) {
+			output.onSample(startTime + index * gridInterval, value);
+			return;
+		}
+
+		int length = taps.length;
+		if (++newest == length)
+			newest = 0;
+		history[newest] = value;
+		history[newest + length] = value;
+
+		if (untilOutput-- > 0)
+			return;
+		untilOutput = factor - 1;
+		long outputIndex = index / factor - getDelay();
+		if (outputIndex < 0)
+			return;
+
+		double sum = 0;
+		int oldest = newest + 1;
+		for (int i = 0; i < length; i++)
+			sum += taps[i] * history[oldest + i];
+		output.onSample(startTime + outputIndex * outputInterval, sum);
+	}
+
+	/***
+	 * Collects the output of a resampler into arrays, for resampling whole recordings
+	 */
+	private static class ColumnOutput implements Output {
+		double[] times, values;
+		int length = 0;
+
+		ColumnOutput(int capacity) {
+			times = new double[Math.max(1, capacity)];
+			values = new double[times.length];
+		}
+
+		@Override
+		public void onSample(double time, double value) {
+			if (length == times.length) {
+				times = Arrays.copyOf(times, length * 2);
+				values = Arrays.copyOf(values, length * 2);
+			}
+			times[length] = time;
+			values[length] = value;
+			length++;
+		}
+	}
+}
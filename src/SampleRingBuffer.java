@@ -0,0 +1,300 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * A bounded queue of sensor samples from one producer thread, like a file or
+ * sensor reader, to one consumer thread, like a StepDetector. Every sample
+ * is a frame of time and x, y, z acceleration and gyro, in the order of the
+ * standard table (see ColumnMapping), and the frames are stored side by side
+ * in one array used as a ring, so passing a sample on never allocates.
+ *
+ * No locks are taken. The producer only moves the tail and the consumer only
+ * moves the head, each publishing its position with an ordered store after
+ * the frames it wrote or read, and each keeping a copy of the other's
+ * position so it only reads the shared one when the ring looks full or
+ * empty. The consumer takes frames in batches and moves the head once per
+ * batch. Everything one thread writes is padded away from what the other
+ * thread writes, so they never share a cache line.
+ *
+ * When the producer is faster than the consumer the ring fills up and put
+ * waits, which slows the reader down to the detector instead of buffering the
+ * whole recording. How often and how long each side waited, and how full the
+ * ring got, show which side is the bottleneck.
+ *
+ * The statistics are kept by the thread they belong to without
+ * synchronization, so they are only exact once both threads have finished.
+ */
+public class SampleRingBuffer {
+	public static final int FRAME_SIZE = 7;
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/***
+	 * Receives the samples taken from the ring
+	 */
+	public interface SampleHandler {
+		/***
+		 * Called once for every sample, in the order they were put
+		 *
+		 * @param time the time in milliseconds
+		 * @param ax the x acceleration
+		 * @param ay the y acceleration
+		 * @param az the z acceleration
+		 * @param gx the x rotation rate, or NaN without a gyro
+		 * @param gy the y rotation rate, or NaN without a gyro
+		 * @param gz the z rotation rate, or NaN without a gyro
+		 */
+		void onSample(double time, double ax, double ay, double az, double gx, double gy, double gz);
+	}
+
+	// a cache line of longs, the padding kept around anything the two threads write
+	private static final int PAD = 8;
+
+	// the published head and tail, with a cache line of padding around each
+	private static final int HEAD = PAD, TAIL = 3 * PAD;
+
+	// each thread's own state, in the middle of an array of its own
+	private static final int POSITION = PAD; // the number of the next frame to write or read
+	private static final int CACHED = PAD + 1; // the other thread's position when this one last looked
+	private static final int STALLS = PAD + 2;
+	private static final int STALL_NANOS = PAD + 3;
+	private static final int HIGH_WATER = PAD + 4; // producer only
+	private static final int SIDE_SIZE = PAD + 5 + PAD;
+
+	private final double[] frames;
+	private final int mask;
+	private final WaitStrategy waitStrategy;
+	private final AtomicLongArray positions = new AtomicLongArray(4 * PAD);
+	private final long[] producer = new long[SIDE_SIZE];
+	private final long[] consumer = new long[SIDE_SIZE];
+	private volatile boolean closed = false;
+
+	public SampleRingBuffer() {
+		this(DEFAULT_CAPACITY, WaitStrategy.YIELD);
+	}
+
+	/***
+	 * Creates an empty ring
+	 *
+	 * @param capacity the most samples it holds, rounded up to a power of two
+	 * @param waitStrategy how put and take wait for room or samples
+	 */
+	public SampleRingBuffer(int capacity, WaitStrategy waitStrategy) {
+		int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		frames = new double[size * FRAME_SIZE];
+		mask = size - 1;
+		this.waitStrategy = waitStrategy;
+	}
+
+	/***
+	 * Adds a sample if there is room, for a producer that would rather drop
+	 * samples than wait. Only the producer thread may call this.
+	 *
+	 * @param time the time in milliseconds
+	 * @param ax the x acceleration
+	 * @param ay the y acceleration
+	 * @param az the z acceleration
+	 * @param gx the x rotation rate, or NaN without a gyro
+	 * @param gy the y rotation rate, or NaN without a gyro
+	 * @param gz the z rotation rate, or NaN without a gyro
+	 * @return false if the ring was full
+	 */
+	public boolean offer(double time, double ax, double ay, double az, double gx, double gy, double gz) {
+		long[] side = producer;
+		long tail = side[POSITION];
+		if (tail - side[CACHED] > mask) {
+			side[CACHED] = positions.get(HEAD);
+			if (tail - side[CACHED] > mask)
+				return false;
+		}
+
+		int i = (int) (tail & mask) * FRAME_SIZE;
+		frames[i] = time;
+		frames[i + 1] = ax;
+		frames[i + 2] = ay;
+		frames[i + 3] = az;
+		frames[i + 4] = gx;
+		frames[i + 5] = gy;
+		frames[i + 6] = gz;
+		side[POSITION] = ++tail;
+		positions.lazySet(TAIL, tail);
+
+		if (tail - side[CACHED] > side[HIGH_WATER])
+			side[HIGH_WATER] = tail - side[CACHED];
+		return true;
+	}
+
+	/***
+	 * Adds a sample, waiting for room if the ring is full. Only the producer
+	 * thread may call this.
+	 *
+	 * @param time the time in milliseconds
+	 * @param ax the x acceleration
+	 * @param ay the y acceleration
+	 * @param az the z acceleration
+	 * @param gx the x rotation rate, or NaN without a gyro
+	 * @param gy the y rotation rate, or NaN without a gyro
+	 * @param gz the z rotation rate, or NaN without a gyro
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public void put(double time, double ax, double ay, double az, double gx, double gy, double gz)
+			throws InterruptedException {
+		if (offer(time, ax, ay, az, gx, gy, gz))
+			return;
+
+		producer[STALLS]++;
+		long start = System.nanoTime();
+		for (int attempt = 0; !offer(time, ax, ay, az, gx, gy, gz); attempt++) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			waitStrategy.idle(attempt);
+		}
+		producer[STALL_NANOS] += System.nanoTime() - start;
+	}
+
+	/***
+	 * Marks the end of the samples. The consumer still gets the ones in the
+	 * ring, and take returns -1 after them.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/***
+	 * Passes on the samples that are in the ring without waiting. Only the
+	 * consumer thread may call this.
+	 *
+	 * @param handler gets each sample
+	 * @param max the most samples to pass on
+	 * @return the number of samples passed on
+	 */
+	public int poll(SampleHandler handler, int max) {
+		long[] side = consumer;
+		long head = side[POSITION];
+		long available = side[CACHED] - head;
+		if (available <= 0) {
+			side[CACHED] = positions.get(TAIL);
+			available = side[CACHED] - head;
+			if (available <= 0)
+				return 0;
+		}
+
+		int count = (int) Math.min(available, max);
+		for (int n = 0; n < count; n++) {
+			int i = (int) ((head + n) & mask) * FRAME_SIZE;
+			handler.onSample(frames[i], frames[i + 1], frames[i + 2], frames[i + 3], frames[i + 4], frames[i + 5],
+					frames[i + 6]);
+		}
+		head += count;
+		side[POSITION] = head;
+		positions.lazySet(HEAD, head);
+		return count;
+	}
+
+	/***
+	 * Passes on the samples in the ring, waiting for one if it is empty. Only
+	 * the consumer thread may call this.
+	 *
+	 * @param handler gets each sample
+	 * @param max the most samples to pass on
+	 * @return the number of samples passed on, or -1 once the ring is closed and empty
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public int take(SampleHandler handler, int max) throws InterruptedException {
+		int count = poll(handler, max);
+		if (count > 0)
+			return count;
+
+		consumer[STALLS]++;
+		long start = System.nanoTime();
+		try {
+			for (int attempt = 0;; attempt++) {
+				// closed is read before the last look, so samples put before close are never missed
+				boolean wasClosed = closed;
+				count = poll(handler, max);
+				if (count > 0)
+					return count;
+				if (wasClosed)
+					return -1;
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				waitStrategy.idle(attempt);
+			}
+		} finally {
+			consumer[STALL_NANOS] += System.nanoTime() - start;
+		}
+	}
+
+	/***
+	 * Returns the number of samples in the ring, which may already be out of
+	 * date when another thread is using it
+	 *
+	 * @return the number of samples put but not taken yet
+	 */
+	public int size() {
+		return (int) (positions.get(TAIL) - positions.get(HEAD));
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/***
+	 * Returns the number of samples put so far
+	 *
+	 * @return the number of samples put
+	 */
+	public long getNumPut() {
+		return producer[POSITION];
+	}
+
+	/***
+	 * Returns how often put found the ring full and had to wait, which means
+	 * the consumer is the bottleneck
+	 *
+	 * @return the number of times the producer waited
+	 */
+	public long getProducerStalls() {
+		return producer[STALLS];
+	}
+
+	/***
+	 * Returns how long put spent waiting for room
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getProducerStallNanos() {
+		return producer[STALL_NANOS];
+	}
+
+	/***
+	 * Returns how often take found the ring empty and had to wait, which means
+	 * the producer is the bottleneck
+	 *
+	 * @return the number of times the consumer waited
+	 */
+	public long getConsumerStalls() {
+		return consumer[STALLS];
+	}
+
+	/***
+	 * Returns how long take spent waiting for samples, including the wait for
+	 * the end of the samples
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getConsumerStallNanos() {
+		return consumer[STALL_NANOS];
+	}
+
+	/***
+	 * Returns the most samples the producer saw in the ring at once
+	 *
+	 * @return the number of samples, up to the capacity
+	 */
+	public long getHighWaterMark() {
+		return producer[HIGH_WATER];
+	}
+}
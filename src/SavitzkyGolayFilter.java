@@ -0,0 +1,219 @@
+/***
+ * A Savitzky-Golay filter: fits a polynomial to a window centered on each
+ * sample by least squares and replaces the sample with the polynomial's value
+ * there. It removes noise but keeps the height and shape of peaks much better
+ * than a moving average of the same width.
+ *
+ * The fit is the same linear combination of the window for every sample, so
+ * the coefficients are worked out once and the filter is a short convolution.
+ * Near the ends of the signal the first or last full window is used, fitted at
+ * the sample's position inside it. A stream can't be fitted before a whole
+ * window has arrived, so add returns NaN for its first halfWindow samples,
+ * while finish fits the last ones to the last window like smooth does.
+ *
+ * Every sample costs a product over the whole window, so smoothing n samples
+ * takes O(n * window) time where MovingAverageFilter takes O(n). Keeping
+ * running sums of the window's moments would bring a sample down to
+ * O(order), but the sums of high powers lose precision as the window slides,
+ * and the windows that keep the shape of a step are short enough (a few
+ * tenths of a second) for the product to stay cheap.
+ */
+public class SavitzkyGolayFilter implements SmoothingFilter {
+	private final int halfWindow;
+	private final int window;
+	private final int order;
+
+	// coefficients[t][j]: the weight of window sample j when evaluating the fit at window position t
+	private final double[][] coefficients;
+
+	// the stream: the last window samples, as a ring
+	private final double[] recent;
+	private long count = 0;
+
+	/***
+	 * Creates a Savitzky-Golay filter
+	 *
+	 * @param window the number of samples in each fit, an odd number so the window can be centered
+	 * @param order the order of the polynomial, less than window (2 or 3 is typical)
+	 */
+	public SavitzkyGolayFilter(int window, int order) {
+		if (window < 1 || window % 2 == 0)
+			throw new IllegalArgumentException("The window must be a positive odd number, not " + window);
+		if (order < 0 || order >= window)
+			throw new IllegalArgumentException("The order must be between 0 and " + (window - 1) + ", not " + order);
+
+		this.window = window;
+		this.order = order;
+		this.halfWindow = window / 2;
+		this.coefficients = calculateCoefficients(window, order);
+		this.recent = new double[window];
+	}
+
+	@Override
+	public void smooth(double[] input, double[] output, int length) {
+		if (length < window) {
+			// too short for a single fit
+			System.arraycopy(input, 0, output, 0, length);
+			return;
+		}
+
+		for (int i = 0; i < length; i++) {
+			int start = i - halfWindow;
+			if (start < 0)
+				start = 0;
+			else if (start > length - window)
+				start = length - window;
+
+			double[] weights = coefficients[i - start];
+			double sum = 0;
+			for (int j = 0; j < window; j++)
+				sum += weights[j] * input[start + j];
+			output[i] = sum;
+		}
+	}
+
+	@Override
+	public double add(double value) {
+		recent[(int) (count % window)] = value;
+		count++;
+		if (count < window)
+			return Double.NaN;
+
+		// the oldest sample in the ring is window sample 0
+		double[] weights = coefficients[halfWindow];
+		int oldest = (int) (count % window);
+		double sum = 0;
+		for (int j = 0; j < window; j++) {
+			int slot = oldest + j;
+			if (slot >= window)
+				slot -= window;
+			sum += weights[j] * recent[slot];
+		}
+		return sum;
+	}
+
+	@Override
+	public int finish(double[] output) {
+		long first = Math.max(0, count - halfWindow);
+		int n = 0;
+		if (count < window) {
+			// too short for a single fit, so like smooth the samples are left as they are
+			for (long i = first; i < count; i++)
+				output[n++] = recent[(int) i];
+		} else {
+			int oldest = (int) (count % window);
+			for (long i = first; i < count; i++) {
+				double[] weights = coefficients[(int) (i - (count - window))];
+				double sum = 0;
+				for (int j = 0; j < window; j++) {
+					int slot = oldest + j;
+					if (slot >= window)
+						slot -= window;
+					sum += weights[j] * recent[slot];
+				}
+				output[n++] = sum;
+			}
+		}
+		reset();
+		return n;
+	}
+
+	@Override
+	public int getDelay() {
+		return halfWindow;
+	}
+
+	@Override
+	public String toString() {
+		return "SavitzkyGolayFilter(" + window + ", " + order + ")";
+	}
+
+	@Override
+	public void reset() {
+		count = 0;
+	}
+
+	/***
+	 * Works out the least squares weights for every position in the window
+	 *
+	 * @param window the number of samples in each fit
+	 * @param order the order of the polynomial
+	 * @return the weights, indexed by the position to evaluate at and then by window sample
+	 */
+	static double[][] calculateCoefficients(int window, int order) {
+		int half = window / 2;
+		int terms = order + 1;
+
+		// powers[j][k] = x^k for window sample j, with x centered on the window so the fit is well conditioned
+		double[][] powers = new double[window][terms];
+		for (int j = 0; j < window; j++) {
+			double x = j - half;
+			powers[j][0] = 1;
+			for (int k = 1; k < terms; k++)
+				powers[j][k] = powers[j][k - 1] * x;
+		}
+
+		// the normal equations: (A^T A) u = a(t), the weights are then A u
+		double[][] normal = new double[terms][terms];
+		for (int r = 0; r < terms; r++)
+			for (int c = 0; c < terms; c++)
+				for (int j = 0; j < window; j++)
+					normal[r][c] += powers[j][r] * powers[j][c];
+		double[][] inverse = invert(normal);
+
+		double[][] coefficients = new double[window][window];
+		for (int t = 0; t < window; t++) {
+			double[] u = new double[terms];
+			for (int r = 0; r < terms; r++)
+				for (int c = 0; c < terms; c++)
+					u[r] += inverse[r][c] * powers[t][c];
+
+			for (int j = 0; j < window; j++)
+				for (int k = 0; k < terms; k++)
+					coefficients[t][j] += powers[j][k] * u[k];
+		}
+		return coefficients;
+	}
+
+	/***
+	 * Inverts a small matrix by Gauss-Jordan elimination with partial pivoting
+	 */
+	private static double[][] invert(double[][] matrix) {
+		int n = matrix.length;
+		double[][] a = new double[n][];
+		double[][] inverse = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			a[i] = matrix[i].clone();
+			inverse[i][i] = 1;
+		}
+
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			for (int r = col + 1; r < n; r++)
+				if (Math.abs(a[r][col]) > Math.abs(a[pivot][col]))
+					pivot = r;
+			double[] swap = a[col];
+			a[col] = a[pivot];
+			a[pivot] = swap;
+			swap = inverse[col];
+			inverse[col] = inverse[pivot];
+			inverse[pivot] = swap;
+
+			double scale = a[col][col];
+			for (int c = 0; c < n; c++) {
+				a[col][c] /= scale;
+				inverse[col][c] /= scale;
+			}
+			for (int r = 0; r < n; r++) {
+				if (r == col)
+					continue;
+				double factor = a[r][col];
+				for (int c = 0; c < n; c++) {
+					a[r][c] -= factor * a[col][c];
+					inverse[r][c] -= factor * inverse[col][c];
+				}
+			}
+		}
+		return inverse;
+	}
+}
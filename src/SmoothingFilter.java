@@ -0,0 +1,63 @@
+/***
+ * A filter that smooths noise out of a signal, like the magnitudes before
+ * their peaks are found. Every filter can be used in two ways:
+ *
+ * <ul>
+ * <li>smooth filters a whole array at once into an array the caller owns, so
+ * nothing the size of the signal is allocated per call</li>
+ * <li>add filters a stream one sample at a time, for live data, and finish
+ * ends it</li>
+ * </ul>
+ *
+ * Filters that look at samples on both sides of the one they smooth have a
+ * delay: add returns the smoothed value of the sample that was added getDelay()
+ * calls earlier, and finish returns the last getDelay() samples once there are
+ * no more to come.
+ *
+ * The built in filters describe their parameters in toString, which
+ * AnalysisContext uses to tell smoothed signals apart.
+ */
+public interface SmoothingFilter {
+
+	/***
+	 * Smooths the first length values of input. Each output value lines up with
+	 * the input value at the same index. The stream state is not used or
+	 * changed, so one filter can smooth on several threads at once.
+	 *
+	 * @param input the signal
+	 * @param output the array to write the smoothed signal into, not the same array as input
+	 * @param length the number of values to smooth
+	 */
+	void smooth(double[] input, double[] output, int length);
+
+	/***
+	 * Adds the next sample of a stream
+	 *
+	 * @param value the next sample
+	 * @return the smoothed value of the sample added getDelay() calls ago, or NaN if
+	 *         that sample hasn't been added yet or can't be smoothed yet
+	 */
+	double add(double value);
+
+	/***
+	 * Ends the stream and writes the smoothed values add hasn't returned yet,
+	 * those of the last getDelay() samples, with the same edge handling as
+	 * smooth. The filter then starts a new stream, as after reset.
+	 *
+	 * @param output the array to write the values into, in order, at least getDelay() long
+	 * @return the number of values written, fewer than getDelay() if the stream was shorter than that
+	 */
+	int finish(double[] output);
+
+	/***
+	 * Returns how many samples add lags behind
+	 *
+	 * @return the number of samples between a sample being added and its smoothed value being returned
+	 */
+	int getDelay();
+
+	/***
+	 * Forgets the stream so a new one can be started
+	 */
+	void reset();
+}
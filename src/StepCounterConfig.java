@@ -0,0 +1,69 @@
+import java.io.Serializable;
+
+/***
+ * The parameters of the peak counters, so they can be tuned instead of being
+ * fixed in CountSteps (see ParameterSweep):
+ *
+ * <ul>
+ * <li>the deadzone: a peak is cleared if there is a taller one this many
+ * milliseconds before or after it</li>
+ * <li>the threshold window: the adaptive threshold of a sample is taken from
+ * a window with as many samples on each side of it as the recording has in
+ * its first this many milliseconds</li>
+ * <li>the deviations: a threshold is the mean plus this many standard
+ * deviations</li>
+ * <li>the minimum threshold: adaptive thresholds at or below this are too
+ * quiet to count any steps</li>
+ * </ul>
+ *
+ * DEFAULT holds the values CountSteps uses: a 150 ms deadzone, a 30 s
+ * threshold window, one deviation and a minimum threshold of 0.5.
+ */
+public class StepCounterConfig implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final StepCounterConfig DEFAULT = new StepCounterConfig(CountSteps.TIME_THRESHOLD,
+			CountSteps.ADAPTIVE_THRESHOLD_RANGE, 1, 0.5);
+
+	private final double deadzone;
+	private final double thresholdWindow;
+	private final double deviations;
+	private final double minimumThreshold;
+
+	/***
+	 * Creates a set of parameters
+	 *
+	 * @param deadzone the time in milliseconds on each side of a peak to clear
+	 * @param thresholdWindow the time in milliseconds that sets how many samples each side of a threshold window holds
+	 * @param deviations the number of standard deviations above the mean a threshold is
+	 * @param minimumThreshold the adaptive threshold that must be passed before steps are counted
+	 */
+	public StepCounterConfig(double deadzone, double thresholdWindow, double deviations, double minimumThreshold) {
+		this.deadzone = deadzone;
+		this.thresholdWindow = thresholdWindow;
+		this.deviations = deviations;
+		this.minimumThreshold = minimumThreshold;
+	}
+
+	public double getDeadzone() {
+		return deadzone;
+	}
+
+	public double getThresholdWindow() {
+		return thresholdWindow;
+	}
+
+	public double getDeviations() {
+		return deviations;
+	}
+
+	public double getMinimumThreshold() {
+		return minimumThreshold;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("deadzone %.0f ms, window %.0f ms, deviations %.2f, minimum %.2f", deadzone,
+				thresholdWindow, deviations, minimumThreshold);
+	}
+}
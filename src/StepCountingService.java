@@ -0,0 +1,351 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * Counts steps for many devices at once. Each device has a session holding its
+ * own StepDetector, and devices send their samples in frames of any size.
+ *
+ * Frames are processed on a fixed pool of worker threads. The frames of one
+ * device are always processed one at a time and in the order they were
+ * submitted, but different devices run in parallel, so no locks are needed
+ * around a detector.
+ *
+ * With a detection rate set, devices that sample faster than it are resampled
+ * down to it (see Resampler) before their samples reach the detector, so a
+ * phone logging at 400 Hz costs about as much as one logging at 50 Hz.
+ *
+ * At most maxPendingFrames frames can be waiting at once. When the workers
+ * fall behind, submit blocks until there is room, so memory and latency stay
+ * bounded instead of the queues growing without limit.
+ *
+ * If a frame can't be counted, the error is kept on the device's session, its
+ * later frames are dropped, and endSession throws it. A listener that throws
+ * doesn't stop the counting.
+ */
+public class StepCountingService {
+
+	/***
+	 * Samples from one device, in the order they were recorded
+	 */
+	public static class Frame {
+		public final String deviceId;
+		public final double[] times, x, y, z;
+		public final int length;
+		long submitNanos;
+
+		public Frame(String deviceId, double[] times, double[] x, double[] y, double[] z, int length) {
+			this.deviceId = deviceId;
+			this.times = times;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.length = length;
+		}
+	}
+
+	/***
+	 * Told about every frame once it has been processed
+	 */
+	public interface FrameListener {
+		/***
+		 * Called on a worker thread after a frame has been added to its device's detector
+		 *
+		 * @param frame the frame that was processed
+		 * @param stepCount the steps counted on that device so far
+		 * @param latencyNanos the time from submit to the end of processing
+		 */
+		void onFrameProcessed(Frame frame, int stepCount, long latencyNanos);
+	}
+
+	// the most frames of one device a worker processes before letting other devices run
+	private static final int FRAMES_PER_TURN = 16;
+
+	private final ExecutorService workers;
+	private final Semaphore pendingFrames;
+	private final double detectionRate;
+	private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	private volatile FrameListener listener;
+
+	/***
+	 * Creates a service with one worker per processor
+	 */
+	public StepCountingService() {
+		this(Runtime.getRuntime().availableProcessors(), 100000);
+	}
+
+	/***
+	 * Creates a service
+	 *
+	 * @param numWorkers the number of worker threads
+	 * @param maxPendingFrames the most frames that can wait to be processed before submit blocks
+	 */
+	public StepCountingService(int numWorkers, int maxPendingFrames) {
+		this(numWorkers, maxPendingFrames, 0);
+	}
+
+	/***
+	 * Creates a service that resamples fast devices before counting
+	 *
+	 * @param numWorkers the number of worker threads
+	 * @param maxPendingFrames the most frames that can wait to be processed before submit blocks
+	 * @param detectionRate the rate in Hz to resample devices that sample faster down to, or 0 to never resample
+	 */
+	public StepCountingService(int numWorkers, int maxPendingFrames, double detectionRate) {
+		this.workers = Executors.newFixedThreadPool(numWorkers);
+		this.pendingFrames = new Semaphore(maxPendingFrames);
+		this.detectionRate = detectionRate;
+	}
+
+	public void setFrameListener(FrameListener listener) {
+		this.listener = listener;
+	}
+
+	/***
+	 * Queues a frame of samples for its device, starting a session for the
+	 * device if it has none, or if its session is being ended
+	 *
+	 * @param frame the samples
+	 * @throws InterruptedException if interrupted while waiting for room in the queue
+	 * @throws RejectedExecutionException if the service has been shut down
+	 */
+	public void submit(Frame frame) throws InterruptedException {
+		if (workers.isShutdown())
+			throw new RejectedExecutionException("The service has been shut down");
+		pendingFrames.acquire();
+		frame.submitNanos = System.nanoTime();
+
+		while (true) {
+			Session session = sessions.get(frame.deviceId);
+			if (session == null) {
+				Session created = new Session();
+				session = sessions.putIfAbsent(frame.deviceId, created);
+				if (session == null)
+					session = created;
+			}
+
+			// endSession marks the session ended under the same lock, so no frame reaches a finished detector
+			synchronized (session) {
+				if (!session.ended) {
+					session.frames.add(frame);
+					try {
+						schedule(session);
+					} catch (RejectedExecutionException e) {
+						// shut down since the check above, so the frame is taken back unless a worker already has it
+						if (!session.frames.remove(frame))
+							return;
+						pendingFrames.release();
+						session.notifyAll();
+						throw e;
+					}
+					return;
+				}
+			}
+			sessions.remove(frame.deviceId, session);
+		}
+	}
+
+	/***
+	 * Returns the number of steps counted for a device so far. Steps are
+	 * confirmed a short time after they happen, see StepDetector.
+	 *
+	 * @param deviceId the device
+	 * @return the number of steps, or 0 if the device has no session
+	 */
+	public int getStepCount(String deviceId) {
+		Session session = sessions.get(deviceId);
+		return session == null ? 0 : session.stepCount;
+	}
+
+	/***
+	 * Returns the number of steps counted so far for every device with a session
+	 *
+	 * @return a map from device id to step count
+	 */
+	public Map<String, Integer> getStepCounts() {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (Map.Entry<String, Session> entry : sessions.entrySet())
+			counts.put(entry.getKey(), entry.getValue().stepCount);
+		return counts;
+	}
+
+	public int getNumSessions() {
+		return sessions.size();
+	}
+
+	/***
+	 * Ends a device's session once its queued frames are processed, counting
+	 * the steps that were waiting on samples that will never come
+	 *
+	 * @param deviceId the device
+	 * @return the final number of steps for the device, or 0 if it had no session
+	 * @throws InterruptedException if interrupted while waiting for the queued frames
+	 * @throws IllegalStateException if one of the device's frames couldn't be counted
+	 */
+	public int endSession(String deviceId) throws InterruptedException {
+		Session session = sessions.remove(deviceId);
+		if (session == null)
+			return 0;
+
+		synchronized (session) {
+			session.ended = true;
+			while (session.scheduled.get() || !session.frames.isEmpty())
+				session.wait();
+			if (session.error != null)
+				throw new IllegalStateException("Couldn't count the steps of " + deviceId, session.error);
+			if (session.resampler != null)
+				session.resampler.finish();
+			session.detector.finish();
+			session.stepCount = session.detector.getStepCount();
+			return session.stepCount;
+		}
+	}
+
+	/***
+	 * Stops the workers after the queued frames are processed
+	 *
+	 * @param timeout the longest time to wait
+	 * @param unit the unit of timeout
+	 * @return true if every frame was processed in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		workers.shutdown();
+		return workers.awaitTermination(timeout, unit);
+	}
+
+	/***
+	 * Makes sure a worker will drain the session, unless one already is
+	 *
+	 * @throws RejectedExecutionException if the service has been shut down, leaving the session unscheduled
+	 */
+	private void schedule(final Session session) {
+		if (session.scheduled.compareAndSet(false, true)) {
+			try {
+				workers.execute(new Runnable() {
+					public void run() {
+						drain(session);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				session.scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	/***
+	 * Hands the rest of a session's frames to a new turn, or drains them on
+	 * this worker once the service is shut down and takes no new turns
+	 */
+	private void reschedule(Session session) {
+		try {
+			schedule(session);
+		} catch (RejectedExecutionException e) {
+			if (session.scheduled.compareAndSet(false, true))
+				drain(session);
+		}
+	}
+
+	private void drain(Session session) {
+		try {
+			// after shutdown there are no new turns to give the rest of the frames to
+			for (int i = 0; i < FRAMES_PER_TURN || workers.isShutdown(); i++) {
+				Frame frame = session.frames.poll();
+				if (frame == null)
+					break;
+
+				try {
+					if (session.error != null)
+						continue; // the detector can't be trusted after a failure
+					process(session, frame);
+				} catch (RuntimeException e) {
+					session.error = e;
+					continue;
+				} finally {
+					pendingFrames.release();
+				}
+
+				FrameListener listener = this.listener;
+				if (listener != null) {
+					try {
+						listener.onFrameProcessed(frame, session.stepCount, System.nanoTime() - frame.submitNanos);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		} finally {
+			session.scheduled.set(false);
+			// a frame may have been added after the last poll but before scheduled was cleared
+			if (!session.frames.isEmpty())
+				reschedule(session);
+			else
+				synchronized (session) {
+					session.notifyAll();
+				}
+		}
+	}
+
+	private void process(Session session, Frame frame) {
+		StepDetector detector = session.detector;
+		if (!session.rateChecked)
+			checkRate(session, frame);
+		Resampler resampler = session.resampler;
+		for (int j = 0; j < frame.length; j++) {
+			if (resampler != null)
+				resampler.add(frame.times[j], CountSteps.calculateMagnitude(frame.x[j], frame.y[j], frame.z[j]));
+			else
+				detector.addSample(frame.times[j], frame.x[j], frame.y[j], frame.z[j]);
+		}
+		session.stepCount = detector.getStepCount();
+	}
+
+	/***
+	 * Decides from a device's first frame with more than one sample whether it
+	 * samples fast enough to be worth resampling
+	 */
+	private void checkRate(Session session, Frame frame) {
+		if (detectionRate <= 0) {
+			session.rateChecked = true;
+			return;
+		}
+		if (frame.length < 2)
+			return;
+		session.rateChecked = true;
+
+		double rate = Resampler.estimateRate(frame.times, frame.length);
+		// a device only a little faster than the detection rate isn't worth filtering
+		if (rate > detectionRate * 1.5) {
+			final StepDetector detector = session.detector;
+			session.resampler = new Resampler(rate, detectionRate, new Resampler.Output() {
+				public void onSample(double time, double magnitude) {
+					detector.addMagnitude(time, magnitude);
+				}
+			});
+		}
+	}
+
+	/***
+	 * The state kept for one device
+	 */
+	private static class Session {
+		final StepDetector detector = new StepDetector();
+		// only touched by the worker draining the session
+		Resampler resampler;
+		boolean rateChecked = false;
+		final Queue<Frame> frames = new ConcurrentLinkedQueue<Frame>();
+		final AtomicBoolean scheduled = new AtomicBoolean(false);
+		volatile int stepCount = 0;
+		volatile RuntimeException error; // the first frame that couldn't be counted
+		boolean ended = false; // guarded by the session's lock
+	}
+}
@@ -0,0 +1,263 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/***
+ * Counts steps one sample at a time. It finds the same steps as
+ * CountSteps.countStepsByMagnitudes, but only keeps the samples that are still
+ * inside a peak deadzone or threshold window, so it can run on a live stream.
+ *
+ * A step is reported once every sample that can change its outcome has
+ * arrived, which is one deadzone plus one threshold window after the peak.
+ *
+ * Besides the listener, steps can be sent to a StepSink with their
+ * confidence, to log them or keep them in a StepEventBuffer.
+ *
+ * A detector can be serialized to carry on counting in a later run (see
+ * IncrementalStepCounter). The listener and sink are not saved.
+ */
+public class StepDetector implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/***
+	 * Receives steps from a StepDetector as soon as they are confirmed
+	 */
+	public interface StepListener {
+		/***
+		 * Called once for every step
+		 *
+		 * @param time the time of the peak that was counted as a step
+		 * @param magnitude the magnitude of the peak
+		 * @param stepCount the total number of steps so far, including this one
+		 */
+		void onStep(double time, double magnitude, int stepCount);
+	}
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private transient StepListener listener;
+	private transient StepSink sink;
+	private final StepCounterConfig config;
+
+	// samples that are still needed, buffer index 0 is sample number firstIndex
+	private double[] times = new double[INITIAL_CAPACITY];
+	private double[] magnitudes = new double[INITIAL_CAPACITY];
+	private int[] peaks = new int[INITIAL_CAPACITY];
+	private int length = 0;
+	private long firstIndex = 0;
+
+	private long numSamples = 0;
+	private double startTime;
+
+	// -1 until enough time has passed to know how many samples the window holds
+	private int thresholdRange = -1;
+
+	private final PeakSuppressor suppressor;
+	private long nextStepIndex = 0;
+	private boolean finished = false;
+
+	private AdaptiveThreshold thresholdWindow = new AdaptiveThreshold();
+	private int stepCount = 0;
+
+	public StepDetector() {
+		this(null);
+	}
+
+	public StepDetector(StepListener listener) {
+		this(listener, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Creates a detector with tuned parameters
+	 *
+	 * @param listener the listener to tell about steps, or null
+	 * @param config the deadzone, threshold window and threshold limits to use
+	 */
+	public StepDetector(StepListener listener, StepCounterConfig config) {
+		this.listener = listener;
+		this.config = config;
+		this.suppressor = new PeakSuppressor(config.getDeadzone());
+	}
+
+	/***
+	 * Counts the steps in a full recording by feeding it through a detector
+	 *
+	 * @param sensorData a 2d-array where rows are samples and columns 0-2 are the x, y and z acceleration
+	 * @param times the times for each row in sensorData
+	 * @return the number of steps
+	 */
+	public static int countSteps(double[][] sensorData, double[] times) {
+		StepDetector detector = new StepDetector();
+
+		for (int i = 0; i < sensorData.length; i++)
+			detector.addSample(times[i], sensorData[i][0], sensorData[i][1], sensorData[i][2]);
+		detector.finish();
+
+		return detector.getStepCount();
+	}
+
+	public void setStepListener(StepListener listener) {
+		this.listener = listener;
+	}
+
+	public void setStepSink(StepSink sink) {
+		this.sink = sink;
+	}
+
+	/***
+	 * Adds the next sample from the stream
+	 *
+	 * @param time the time of the sample in milliseconds
+	 * @param x the x acceleration
+	 * @param y the y acceleration
+	 * @param z the z acceleration
+	 */
+	public void addSample(double time, double x, double y, double z) {
+		addMagnitude(time, CountSteps.calculateMagnitude(x, y, z));
+	}
+
+	/***
+	 * Adds the next sample from the stream when the magnitude is already known
+	 *
+	 * @param time the time of the sample in milliseconds
+	 * @param magnitude the magnitude of the acceleration
+	 */
+	public void addMagnitude(double time, double magnitude) {
+		if (finished)
+			throw new IllegalStateException("Cannot add samples after finish() was called");
+
+		if (numSamples == 0)
+			startTime = time;
+
+		makeRoom();
+		times[length] = time;
+		magnitudes[length] = magnitude;
+		peaks[length] = 0;
+		length++;
+
+		if (thresholdRange < 0 && time - startTime >= config.getThresholdWindow())
+			thresholdRange = (int) numSamples;
+
+		// the sample before this one can now be checked for a peak
+		if (numSamples >= 2) {
+			int i = (int) (numSamples - 1 - firstIndex);
+			if (magnitudes[i] > magnitudes[i - 1] && magnitudes[i] > magnitudes[i + 1]) {
+				peaks[i] = 1;
+				suppressor.add(numSamples - 1, times[i], magnitudes[i]);
+			}
+		}
+
+		numSamples++;
+
+		process();
+	}
+
+	/***
+	 * Marks the end of the stream and reports the steps that were waiting on
+	 * samples that will never come
+	 */
+	public void finish() {
+		if (finished)
+			return;
+		finished = true;
+
+		if (thresholdRange < 0)
+			thresholdRange = (int) Math.max(0, numSamples - 1);
+
+		process();
+	}
+
+	/***
+	 * Returns the number of steps confirmed so far
+	 *
+	 * @return the number of steps confirmed so far
+	 */
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	/***
+	 * Returns the number of samples added so far
+	 *
+	 * @return the number of samples added so far
+	 */
+	public long getNumSamples() {
+		return numSamples;
+	}
+
+	/***
+	 * Clears peaks in the deadzone and confirms steps as far as the buffered samples allow
+	 */
+	private void process() {
+		// a peak found later can't be earlier than the newest sample
+		suppressor.decide(peaks, firstIndex, finished ? Double.POSITIVE_INFINITY : times[length - 1]);
+
+		if (thresholdRange < 0)
+			return;
+
+		while (nextStepIndex < getDecidedSamples() && (finished || nextStepIndex + thresholdRange < numSamples)) {
+			int i = (int) (nextStepIndex - firstIndex);
+			thresholdWindow.slideTo(magnitudes, i, thresholdRange, length);
+
+			if (peaks[i] == 1) {
+				double threshold = thresholdWindow.getThreshold(config.getDeviations());
+
+				if (threshold > config.getMinimumThreshold() && magnitudes[i] > threshold) {
+					stepCount++;
+					if (listener != null)
+						listener.onStep(times[i], magnitudes[i], stepCount);
+					if (sink != null)
+						sink.onStep(times[i], magnitudes[i], CountSteps.stepConfidence(magnitudes[i], threshold));
+				}
+			}
+			nextStepIndex++;
+		}
+	}
+
+	/***
+	 * Returns how many samples from the start of the stream have their final
+	 * peak value, after the deadzone has been cleared around them
+	 *
+	 * @return the number of samples
+	 */
+	private long getDecidedSamples() {
+		long undecided = suppressor.getOldestUndecided();
+		if (undecided >= 0)
+			return undecided;
+		// peak flags are known up to the second to last sample until the stream ends
+		return finished ? numSamples : numSamples - 1;
+	}
+
+	/***
+	 * Drops samples that no window can reach any more, and grows the buffers
+	 * only if the windows really need more space
+	 */
+	private void makeRoom() {
+		if (length < magnitudes.length)
+			return;
+
+		long oldestNeeded = 0;
+		if (thresholdRange >= 0) {
+			// the threshold window still has to remove the value just before it
+			oldestNeeded = nextStepIndex - thresholdRange - 1;
+			// the peak check looks two samples back from the one being added
+			oldestNeeded = Math.min(oldestNeeded, numSamples - 2);
+		}
+		int drop = (int) Math.max(0, Math.min(oldestNeeded - firstIndex, length));
+
+		if (drop > 0) {
+			System.arraycopy(times, drop, times, 0, length - drop);
+			System.arraycopy(magnitudes, drop, magnitudes, 0, length - drop);
+			System.arraycopy(peaks, drop, peaks, 0, length - drop);
+			length -= drop;
+			firstIndex += drop;
+		}
+
+		// keep at least half the buffer free so shifting stays cheap
+		if (length * 2 > magnitudes.length) {
+			int capacity = magnitudes.length * 2;
+			times = Arrays.copyOf(times, capacity);
+			magnitudes = Arrays.copyOf(magnitudes, capacity);
+			peaks = Arrays.copyOf(peaks, capacity);
+		}
+	}
+}
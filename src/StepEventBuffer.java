@@ -0,0 +1,149 @@
+import java.io.IOException;
+
+/***
+ * Keeps the latest step events in memory, in three primitive arrays used as
+ * a ring, so adding an event never allocates. When the ring is full the
+ * oldest event is dropped to make room.
+ *
+ * Events can be read by their position among the ones kept, or passed on to
+ * another sink with drainTo, which sends each event once. That lets a
+ * detector fill the buffer while a consumer drains it now and then, on the
+ * same thread.
+ */
+public class StepEventBuffer implements StepSink {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final double[] times, magnitudes, confidences;
+	private final int mask;
+
+	private long added = 0; // events added since the start, including dropped ones
+	private long oldest = 0; // the number of the oldest event kept
+	private long drained = 0; // the number of the next event drainTo sends
+
+	public StepEventBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/***
+	 * Creates an empty buffer
+	 *
+	 * @param capacity the most events to keep, rounded up to a power of two
+	 */
+	public StepEventBuffer(int capacity) {
+		int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		times = new double[size];
+		magnitudes = new double[size];
+		confidences = new double[size];
+		mask = size - 1;
+	}
+
+	@Override
+	public void onStep(double time, double magnitude, double confidence) {
+		int slot = (int) (added & mask);
+		times[slot] = time;
+		magnitudes[slot] = magnitude;
+		confidences[slot] = confidence;
+		added++;
+
+		if (added - oldest > times.length) {
+			oldest++;
+			if (drained < oldest)
+				drained = oldest;
+		}
+	}
+
+	/***
+	 * Passes the events that haven't been drained yet to another sink
+	 *
+	 * @param sink the sink
+	 * @return the number of events passed on
+	 */
+	public int drainTo(StepSink sink) {
+		int count = (int) (added - drained);
+		for (; drained < added; drained++) {
+			int slot = (int) (drained & mask);
+			sink.onStep(times[slot], magnitudes[slot], confidences[slot]);
+		}
+		return count;
+	}
+
+	/***
+	 * Returns the number of events kept
+	 *
+	 * @return the number of events that can be read
+	 */
+	public int size() {
+		return (int) (added - oldest);
+	}
+
+	public int getCapacity() {
+		return times.length;
+	}
+
+	/***
+	 * Returns the number of events added since the buffer was made or cleared
+	 *
+	 * @return the number of events, including the ones that were dropped
+	 */
+	public long getTotal() {
+		return added;
+	}
+
+	/***
+	 * Returns the number of events dropped to make room for newer ones
+	 *
+	 * @return the number of events dropped
+	 */
+	public long getDropped() {
+		return oldest;
+	}
+
+	/***
+	 * Returns the time of an event
+	 *
+	 * @param index the position among the kept events, 0 for the oldest
+	 * @return the time in milliseconds
+	 */
+	public double getTime(int index) {
+		return times[slot(index)];
+	}
+
+	/***
+	 * Returns the magnitude of an event
+	 *
+	 * @param index the position among the kept events, 0 for the oldest
+	 * @return the magnitude of the peak
+	 */
+	public double getMagnitude(int index) {
+		return magnitudes[slot(index)];
+	}
+
+	/***
+	 * Returns the confidence of an event
+	 *
+	 * @param index the position among the kept events, 0 for the oldest
+	 * @return the confidence, from 0 to 1
+	 */
+	public double getConfidence(int index) {
+		return confidences[slot(index)];
+	}
+
+	private int slot(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Event " + index + " of " + size());
+		return (int) ((oldest + index) & mask);
+	}
+
+	/***
+	 * Forgets every event
+	 */
+	public void clear() {
+		added = 0;
+		oldest = 0;
+		drained = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+}
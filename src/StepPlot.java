@@ -0,0 +1,516 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/***
+ * A picture of one recording: the magnitudes, the thresholds, and the peaks,
+ * with the ones counted as steps marked. It is drawn without a window, to a
+ * PNG or an SVG file, so it works on a machine without a display (run with
+ * -Djava.awt.headless=true, which PlotExport sets itself).
+ *
+ * However long the recording, each line is drawn from about one block of
+ * samples per pixel (see MinMaxPyramid), so the files stay small and spikes
+ * stay visible.
+ */
+public class StepPlot {
+	public static final int DEFAULT_WIDTH = 1200;
+	public static final int DEFAULT_HEIGHT = 400;
+
+	private static final Color MAGNITUDE_COLOR = new Color(40, 90, 200);
+	private static final Color THRESHOLD_COLOR = new Color(220, 40, 40);
+	private static final Color STEP_COLOR = new Color(0, 150, 0);
+	private static final Color REJECTED_COLOR = new Color(150, 150, 150);
+	private static final Color AXIS_COLOR = Color.BLACK;
+	private static final Color GRID_COLOR = new Color(225, 225, 225);
+
+	private static final int LEFT = 60, RIGHT = 20, TOP = 30, BOTTOM = 40; // margins in pixels
+
+	/***
+	 * Something the plot can be drawn on. Coordinates are in pixels from the
+	 * top left corner.
+	 */
+	interface Canvas {
+		void setColor(Color color);
+
+		void setStrokeWidth(float width);
+
+		void line(double x1, double y1, double x2, double y2);
+
+		void polyline(double[] xs, double[] ys, int length);
+
+		void dot(double x, double y, double radius);
+
+		/***
+		 * Writes text
+		 *
+		 * @param text the text
+		 * @param x where it starts, is centred, or ends, depending on align
+		 * @param y the baseline
+		 * @param align -1 to start at x, 0 to centre on x, 1 to end at x
+		 */
+		void text(String text, double x, double y, int align);
+	}
+
+	private final String title;
+	private final double[] times, magnitudes, thresholds;
+	private final int[] peaks;
+	private final ThresholdStrategy strategy;
+	private final StepCounterConfig config;
+	private final double timeOrigin; // the time of the first sample that has one
+	private int width = DEFAULT_WIDTH, height = DEFAULT_HEIGHT;
+
+	/***
+	 * Makes a plot of a recording
+	 *
+	 * @param title the text above the plot
+	 * @param times the time of each sample in milliseconds
+	 * @param magnitudes the magnitudes, or the signal the peaks were found in
+	 * @param thresholds the threshold at each sample
+	 * @param peaks 1 where there is a peak, 0 otherwise
+	 * @param strategy the strategy the thresholds were calculated with, which decides which peaks are steps
+	 * @param config the parameters the thresholds were calculated with
+	 */
+	public StepPlot(String title, double[] times, double[] magnitudes, double[] thresholds, int[] peaks,
+			ThresholdStrategy strategy, StepCounterConfig config) {
+		this.title = title;
+		this.times = times;
+		this.magnitudes = magnitudes;
+		this.thresholds = thresholds;
+		this.peaks = peaks;
+		this.strategy = strategy;
+		this.config = config;
+
+		double origin = 0;
+		for (int i = 0; i < times.length; i++) {
+			if (!Double.isNaN(times[i])) {
+				origin = times[i];
+				break;
+			}
+		}
+		this.timeOrigin = origin;
+	}
+
+	/***
+	 * Makes a plot of the series CountSteps works out for a recording
+	 *
+	 * @param title the text above the plot
+	 * @param analysis the recording
+	 * @param strategy how to calculate the thresholds
+	 * @param config the deadzone, threshold window and threshold limits to use
+	 * @return the plot
+	 */
+	public static StepPlot of(String title, AnalysisContext analysis, ThresholdStrategy strategy,
+			StepCounterConfig config) {
+		return new StepPlot(title, analysis.getTimes(), analysis.getMagnitudes(),
+				analysis.getThresholds(strategy, null, config), analysis.getPeaks(config.getDeadzone(), null), strategy,
+				config);
+	}
+
+	public void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/***
+	 * Counts the peaks that are steps, the same way CountSteps does
+	 *
+	 * @return the number of steps
+	 */
+	public int getStepCount() {
+		return CountSteps.countPeaksAboveThresholds(peaks, magnitudes, thresholds, strategy, config);
+	}
+
+	/***
+	 * Draws the plot on an image
+	 *
+	 * @return the image
+	 */
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, width, height);
+			draw(new ImageCanvas(graphics));
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+
+	/***
+	 * Writes the plot as a PNG image
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void writePng(File file) throws IOException {
+		if (!ImageIO.write(toImage(), "png", file))
+			throw new IOException("No PNG writer available");
+	}
+
+	/***
+	 * Writes the plot as an SVG drawing
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void writeSvg(File file) throws IOException {
+		SvgCanvas svg = new SvgCanvas(width, height);
+		draw(svg);
+		try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			out.write(svg.finish());
+		}
+	}
+
+	/***
+	 * Draws the axes, the lines and the peaks
+	 *
+	 * @param canvas what to draw on
+	 */
+	void draw(Canvas canvas) {
+		int plotWidth = Math.max(1, width - LEFT - RIGHT);
+		int plotHeight = Math.max(1, height - TOP - BOTTOM);
+		int n = magnitudes.length;
+
+		canvas.setColor(AXIS_COLOR);
+		canvas.text(title + "   " + getStepCount() + " steps counted", LEFT, TOP - 10, -1);
+		if (n == 0)
+			return;
+
+		MinMaxPyramid magnitudeLevels = new MinMaxPyramid(toFloats(magnitudes));
+		MinMaxPyramid thresholdLevels = new MinMaxPyramid(toFloats(thresholds));
+		int top = magnitudeLevels.getNumLevels() - 1;
+		// thresholds are all missing once a missing sample has entered their window
+		double minY = min(magnitudeLevels.getMin(top, 0), thresholdLevels.getMin(top, 0));
+		double maxY = max(magnitudeLevels.getMax(top, 0), thresholdLevels.getMax(top, 0));
+		if (Double.isNaN(minY)) {
+			minY = 0; // nothing but missing samples
+			maxY = 1;
+		}
+		if (maxY <= minY)
+			maxY = minY + 1;
+
+		// the time axis is in seconds from the first sample
+		double start = 0, end = 0;
+		for (int i = n - 1; i >= 0 && !(end > 0); i--)
+			end = seconds(i);
+		if (end <= start)
+			end = start + 1;
+		Scale x = new Scale(start, end, LEFT, LEFT + plotWidth);
+		Scale y = new Scale(minY, maxY, TOP + plotHeight, TOP);
+
+		// grid lines and tick labels
+		canvas.setStrokeWidth(1);
+		for (double tick : ticks(start, end, 10)) {
+			canvas.setColor(GRID_COLOR);
+			canvas.line(x.map(tick), TOP, x.map(tick), TOP + plotHeight);
+			canvas.setColor(AXIS_COLOR);
+			canvas.text(formatTick(tick), x.map(tick), TOP + plotHeight + 15, 0);
+		}
+		for (double tick : ticks(minY, maxY, 6)) {
+			canvas.setColor(GRID_COLOR);
+			canvas.line(LEFT, y.map(tick), LEFT + plotWidth, y.map(tick));
+			canvas.setColor(AXIS_COLOR);
+			canvas.text(formatTick(tick), LEFT - 5, y.map(tick) + 4, 1);
+		}
+		canvas.setColor(AXIS_COLOR);
+		canvas.line(LEFT, TOP + plotHeight, LEFT + plotWidth, TOP + plotHeight);
+		canvas.line(LEFT, TOP, LEFT, TOP + plotHeight);
+		canvas.text("time (s)", LEFT + plotWidth / 2.0, height - 8, 0);
+
+		canvas.setStrokeWidth(1);
+		canvas.setColor(MAGNITUDE_COLOR);
+		drawSeries(canvas, magnitudeLevels, x, y, plotWidth);
+		canvas.setStrokeWidth(1.5f);
+		canvas.setColor(THRESHOLD_COLOR);
+		drawSeries(canvas, thresholdLevels, x, y, plotWidth);
+
+		for (int i = 0; i < n; i++) {
+			if (peaks[i] != 1 || Double.isNaN(times[i]))
+				continue;
+			if (strategy.isStep(magnitudes[i], thresholds[i], config)) {
+				canvas.setColor(STEP_COLOR);
+				canvas.dot(x.map(seconds(i)), y.map(magnitudes[i]), 3);
+			} else {
+				canvas.setColor(REJECTED_COLOR);
+				canvas.dot(x.map(seconds(i)), y.map(magnitudes[i]), 1.5);
+			}
+		}
+
+		// the legend, along the top right
+		String[] labels = { "magnitude", strategy.toString().toLowerCase() + " threshold", "step", "rejected peak" };
+		Color[] colors = { MAGNITUDE_COLOR, THRESHOLD_COLOR, STEP_COLOR, REJECTED_COLOR };
+		// the canvas can't measure text, so each label is given about 7 pixels a letter
+		double left = LEFT + plotWidth;
+		for (String label : labels)
+			left -= 30 + 7 * label.length();
+		for (int i = 0; i < labels.length; i++) {
+			canvas.setColor(colors[i]);
+			if (i < 2) {
+				canvas.setStrokeWidth(2);
+				canvas.line(left, TOP - 14, left + 14, TOP - 14);
+			} else {
+				canvas.dot(left + 7, TOP - 14, 3);
+			}
+			canvas.setColor(AXIS_COLOR);
+			canvas.text(labels[i], left + 18, TOP - 10, -1);
+			left += 30 + 7 * labels[i].length();
+		}
+	}
+
+	/***
+	 * Draws a series as a line through the smallest and largest value of each
+	 * block, in the order they happened, at the level with about one block per
+	 * pixel
+	 */
+	private void drawSeries(Canvas canvas, MinMaxPyramid levels, Scale x, Scale y, int plotWidth) {
+		int n = levels.getNumSamples();
+		int level = levels.levelFor(n, plotWidth);
+		int blocks = (int) ((n + (1L << level) - 1) >> level);
+		double[] xs = new double[level == 0 ? n : 2 * blocks], ys = new double[xs.length];
+		int length = 0;
+
+		if (level == 0) {
+			for (int i = 0; i < n; i++) {
+				xs[length] = x.map(seconds(i));
+				ys[length] = y.map(levels.getMin(0, i));
+				length = skipMissing(xs, ys, length);
+			}
+		} else {
+			for (int block = 0; block < blocks; block++) {
+				int low = levels.getMinIndex(level, block), high = levels.getMaxIndex(level, block);
+				xs[length] = x.map(seconds(Math.min(low, high)));
+				ys[length] = y.map(levels.getValue(Math.min(low, high)));
+				length = skipMissing(xs, ys, length);
+				if (low != high) {
+					xs[length] = x.map(seconds(Math.max(low, high)));
+					ys[length] = y.map(levels.getValue(Math.max(low, high)));
+					length = skipMissing(xs, ys, length);
+				}
+			}
+		}
+		canvas.polyline(xs, ys, length);
+	}
+
+	/***
+	 * Keeps the point just written unless its time or value is missing, so the
+	 * line is joined across missing samples
+	 *
+	 * @return the number of points kept
+	 */
+	private static int skipMissing(double[] xs, double[] ys, int length) {
+		return Double.isNaN(xs[length]) || Double.isNaN(ys[length]) ? length : length + 1;
+	}
+
+	/***
+	 * Returns when a sample was recorded
+	 *
+	 * @param row the sample
+	 * @return the time in seconds since the first sample, NaN if it is missing
+	 */
+	private double seconds(int row) {
+		return (times[row] - timeOrigin) / 1000;
+	}
+
+	private static double min(double a, double b) {
+		return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.min(a, b);
+	}
+
+	private static double max(double a, double b) {
+		return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.max(a, b);
+	}
+
+	/***
+	 * Maps values onto pixels
+	 */
+	private static class Scale {
+		private final double from, to, fromPixel, toPixel;
+
+		Scale(double from, double to, double fromPixel, double toPixel) {
+			this.from = from;
+			this.to = to;
+			this.fromPixel = fromPixel;
+			this.toPixel = toPixel;
+		}
+
+		double map(double value) {
+			return fromPixel + (value - from) / (to - from) * (toPixel - fromPixel);
+		}
+	}
+
+	/***
+	 * Picks round numbers between two values, about count of them, stepping
+	 * by 1, 2 or 5 times a power of ten
+	 */
+	private static double[] ticks(double from, double to, int count) {
+		double rough = (to - from) / count;
+		double power = Math.pow(10, Math.floor(Math.log10(rough)));
+		double step = power;
+		if (rough / power > 5)
+			step = 10 * power;
+		else if (rough / power > 2)
+			step = 5 * power;
+		else if (rough / power > 1)
+			step = 2 * power;
+
+		double first = Math.ceil(from / step) * step;
+		int numTicks = Math.max(0, (int) Math.floor((to - first) / step + 1e-9) + 1);
+		double[] ticks = new double[numTicks];
+		for (int i = 0; i < numTicks; i++)
+			ticks[i] = first + i * step;
+		return ticks;
+	}
+
+	private static String formatTick(double value) {
+		if (Math.abs(value - Math.rint(value)) < 1e-9)
+			return String.valueOf((long) Math.rint(value));
+		return String.format(Locale.ROOT, "%.2f", value).replaceAll("0+$", "");
+	}
+
+	private static float[] toFloats(double[] values) {
+		float[] floats = new float[values.length];
+		for (int i = 0; i < values.length; i++)
+			floats[i] = (float) values[i];
+		return floats;
+	}
+
+	/***
+	 * Draws with Java2D, for PNG images
+	 */
+	private static class ImageCanvas implements Canvas {
+		private final Graphics2D graphics;
+
+		ImageCanvas(Graphics2D graphics) {
+			this.graphics = graphics;
+			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+		}
+
+		@Override
+		public void setColor(Color color) {
+			graphics.setColor(color);
+		}
+
+		@Override
+		public void setStrokeWidth(float width) {
+			graphics.setStroke(new BasicStroke(width));
+		}
+
+		@Override
+		public void line(double x1, double y1, double x2, double y2) {
+			graphics.draw(new Line2D.Double(x1, y1, x2, y2));
+		}
+
+		@Override
+		public void polyline(double[] xs, double[] ys, int length) {
+			if (length == 0)
+				return;
+			Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, length);
+			path.moveTo(xs[0], ys[0]);
+			for (int i = 1; i < length; i++)
+				path.lineTo(xs[i], ys[i]);
+			graphics.draw(path);
+		}
+
+		@Override
+		public void dot(double x, double y, double radius) {
+			graphics.fill(new Ellipse2D.Double(x - radius, y - radius, 2 * radius, 2 * radius));
+		}
+
+		@Override
+		public void text(String text, double x, double y, int align) {
+			FontMetrics metrics = graphics.getFontMetrics();
+			double left = x - (align + 1) * metrics.stringWidth(text) / 2.0;
+			graphics.drawString(text, (float) left, (float) y);
+		}
+	}
+
+	/***
+	 * Writes SVG elements into a string
+	 */
+	private static class SvgCanvas implements Canvas {
+		private final StringBuilder svg = new StringBuilder();
+		private String color = "#000000";
+		private float strokeWidth = 1;
+
+		SvgCanvas(int width, int height) {
+			svg.append(String.format(
+					"<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\" font-family=\"sans-serif\" font-size=\"11\">%n",
+					width, height, width, height));
+			svg.append(String.format("<rect width=\"%d\" height=\"%d\" fill=\"#ffffff\"/>%n", width, height));
+		}
+
+		@Override
+		public void setColor(Color color) {
+			this.color = String.format("#%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue());
+		}
+
+		@Override
+		public void setStrokeWidth(float width) {
+			this.strokeWidth = width;
+		}
+
+		@Override
+		public void line(double x1, double y1, double x2, double y2) {
+			svg.append("<line x1=\"").append(format(x1)).append("\" y1=\"").append(format(y1)).append("\" x2=\"")
+					.append(format(x2)).append("\" y2=\"").append(format(y2)).append("\" stroke=\"").append(color)
+					.append("\" stroke-width=\"").append(strokeWidth).append("\"/>\n");
+		}
+
+		@Override
+		public void polyline(double[] xs, double[] ys, int length) {
+			svg.append("<polyline fill=\"none\" stroke=\"").append(color).append("\" stroke-width=\"")
+					.append(strokeWidth).append("\" points=\"");
+			for (int i = 0; i < length; i++) {
+				if (i > 0)
+					svg.append(' ');
+				svg.append(format(xs[i])).append(',').append(format(ys[i]));
+			}
+			svg.append("\"/>\n");
+		}
+
+		@Override
+		public void dot(double x, double y, double radius) {
+			svg.append("<circle cx=\"").append(format(x)).append("\" cy=\"").append(format(y)).append("\" r=\"")
+					.append(format(radius)).append("\" fill=\"").append(color).append("\"/>\n");
+		}
+
+		@Override
+		public void text(String text, double x, double y, int align) {
+			String anchor = align < 0 ? "start" : align == 0 ? "middle" : "end";
+			svg.append("<text x=\"").append(format(x)).append("\" y=\"").append(format(y)).append("\" fill=\"")
+					.append(color).append("\" text-anchor=\"").append(anchor).append("\">").append(escape(text))
+					.append("</text>\n");
+		}
+
+		String finish() {
+			return svg.append("</svg>\n").toString();
+		}
+
+		private static String format(double value) {
+			// a tenth of a pixel is as fine as anyone can see, and keeps the files small
+			return formatTick(Math.rint(value * 10) / 10);
+		}
+
+		private static String escape(String text) {
+			return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+		}
+	}
+}
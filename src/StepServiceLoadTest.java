@@ -0,0 +1,200 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Replays the recordings in a folder as thousands of simulated devices sending
+ * frames to a StepCountingService, and reports the sustained throughput and
+ * the latency from submitting a frame to its steps being counted.
+ *
+ * Device i replays recording i % (number of recordings). The frames of all the
+ * devices are interleaved the way they would arrive from phones streaming at
+ * the same time. When every device is done, the final counts are checked
+ * against counting each recording in one batch.
+ *
+ * With -rate, devices are resampled to that rate before counting, and the
+ * counts are checked against counting the resampled recordings in one batch.
+ *
+ * Usage: java StepServiceLoadTest [-devices n] [-frame samples] [-workers n] [-pending frames] [-rate hz] [folder]
+ */
+public class StepServiceLoadTest {
+
+	public static void main(String[] args) throws Exception {
+		int numDevices = 1000;
+		int frameSize = 50;
+		int numWorkers = Runtime.getRuntime().availableProcessors();
+		int maxPending = 10000;
+		double rate = 0;
+		String folder = "data";
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-devices"))
+				numDevices = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-frame"))
+				frameSize = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-workers"))
+				numWorkers = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-pending"))
+				maxPending = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-rate"))
+				rate = Double.parseDouble(args[++i]);
+			else
+				folder = args[i];
+		}
+
+		List<double[][]> recordings = loadRecordings(new File(folder));
+		if (recordings.isEmpty()) {
+			System.out.println("No recordings in " + folder);
+			return;
+		}
+
+		// cut every recording into frames once, the devices share them
+		List<List<double[][]>> frames = new ArrayList<List<double[][]>>();
+		int totalFrames = 0;
+		long totalSamples = 0;
+		for (int d = 0; d < numDevices; d++) {
+			double[][] recording = recordings.get(d % recordings.size());
+			if (d < recordings.size())
+				frames.add(cutIntoFrames(recording, frameSize));
+			totalFrames += frames.get(d % recordings.size()).size();
+			totalSamples += recording[0].length;
+		}
+
+		final long[] latencies = new long[totalFrames];
+		final AtomicInteger processed = new AtomicInteger();
+
+		StepCountingService service = new StepCountingService(numWorkers, maxPending, rate);
+		service.setFrameListener(new StepCountingService.FrameListener() {
+			public void onFrameProcessed(StepCountingService.Frame frame, int stepCount, long latencyNanos) {
+				latencies[processed.getAndIncrement()] = latencyNanos;
+			}
+		});
+
+		System.out.println("Replaying " + recordings.size() + " recordings as " + numDevices + " devices, "
+				+ totalFrames + " frames of " + frameSize + " samples on " + numWorkers + " workers");
+
+		long start = System.nanoTime();
+		int longest = 0;
+		for (List<double[][]> recordingFrames : frames)
+			longest = Math.max(longest, recordingFrames.size());
+
+		// round robin: frame f of every device, then frame f + 1 of every device
+		for (int f = 0; f < longest; f++) {
+			for (int d = 0; d < numDevices; d++) {
+				List<double[][]> deviceFrames = frames.get(d % recordings.size());
+				if (f < deviceFrames.size()) {
+					double[][] frame = deviceFrames.get(f);
+					service.submit(new StepCountingService.Frame("device-" + d, frame[0], frame[1], frame[2], frame[3],
+							frame[0].length));
+				}
+			}
+		}
+
+		int[] finalCounts = new int[numDevices];
+		for (int d = 0; d < numDevices; d++)
+			finalCounts[d] = service.endSession("device-" + d);
+		long elapsed = System.nanoTime() - start;
+		service.shutdown(1, TimeUnit.MINUTES);
+
+		int[] expected = new int[recordings.size()];
+		for (int r = 0; r < expected.length; r++) {
+			double[][] recording = recordings.get(r);
+			expected[r] = expectedCount(recording, rate, frameSize);
+		}
+		int mismatches = 0;
+		for (int d = 0; d < numDevices; d++)
+			if (finalCounts[d] != expected[d % expected.length])
+				mismatches++;
+
+		double seconds = elapsed / 1e9;
+		long[] sorted = Arrays.copyOf(latencies, processed.get());
+		Arrays.sort(sorted);
+
+		System.out.println(String.format("%d samples in %.3f s: %.0f samples/sec, %.0f frames/sec", totalSamples,
+				seconds, totalSamples / seconds, totalFrames / seconds));
+		System.out.println(String.format("frame latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms", percentile(sorted, 50),
+				percentile(sorted, 99), percentile(sorted, 100)));
+		System.out.println(mismatches == 0 ? "All device counts match the batch counts"
+				: mismatches + " devices don't match the batch counts");
+	}
+
+	/***
+	 * Counts a recording in one batch the way the service should
+	 *
+	 * @param recording the time, x, y and z columns
+	 * @param rate the detection rate the service resamples to, or 0
+	 * @param frameSize the number of samples in the first frame the service sees
+	 * @return the number of steps
+	 */
+	private static int expectedCount(double[][] recording, double rate, int frameSize) {
+		double[] magnitudes = CountSteps.calculateMagnitudesFor(recording[1], recording[2], recording[3]);
+		double[] times = recording[0];
+		// the service only resamples devices well over the rate, judged from their first frame
+		if (rate > 0 && Resampler.estimateRate(times, Math.min(times.length, frameSize)) > rate * 1.5) {
+			double[][] resampled = Resampler.resample(times, magnitudes, rate);
+			magnitudes = resampled[1];
+			times = resampled[0];
+		}
+		return CountSteps.countStepsForMagnitudes(magnitudes, times, ThresholdStrategy.ADAPTIVE);
+	}
+
+	/***
+	 * Loads the time and x, y, z columns of every recording in a folder that a
+	 * reader recognises
+	 *
+	 * @param folder the folder to load
+	 * @return the columns of each recording
+	 */
+	public static List<double[][]> loadRecordings(File folder) {
+		List<double[][]> recordings = new ArrayList<double[][]>();
+		File[] files = folder.listFiles();
+		if (files == null)
+			return recordings;
+		Arrays.sort(files);
+
+		for (File file : files) {
+			try {
+				if (!file.isFile() || RecordingReaders.detect(file.getPath()) == null)
+					continue;
+				CSVData data = RecordingReaders.read(file.getPath());
+				if (data.getNumRows() > 0)
+					recordings.add(data.getColumns(new int[] { 0, 1, 2, 3 }));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return recordings;
+	}
+
+	/***
+	 * Splits a recording into frames
+	 *
+	 * @param recording the time, x, y and z columns
+	 * @param frameSize the number of samples in each frame, the last one may be shorter
+	 * @return the frames, each with the same four columns
+	 */
+	public static List<double[][]> cutIntoFrames(double[][] recording, int frameSize) {
+		List<double[][]> frames = new ArrayList<double[][]>();
+		int length = recording[0].length;
+
+		for (int start = 0; start < length; start += frameSize) {
+			int end = Math.min(length, start + frameSize);
+			double[][] frame = new double[recording.length][];
+			for (int c = 0; c < recording.length; c++)
+				frame[c] = Arrays.copyOfRange(recording[c], start, end);
+			frames.add(frame);
+		}
+		return frames;
+	}
+
+	private static double percentile(long[] sorted, double percent) {
+		if (sorted.length == 0)
+			return Double.NaN;
+		int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+}
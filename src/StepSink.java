@@ -0,0 +1,34 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/***
+ * Receives the steps a counter finds, one event at a time and in time order,
+ * so cadence, distance or session statistics can be worked out from the
+ * steps without detecting them again. Each event is three numbers and no
+ * object is made for it.
+ *
+ * StepEventBuffer keeps the events in memory, BinaryStepLog and CsvStepSink
+ * write them to files. Any other listener can implement this directly.
+ *
+ * onStep doesn't throw: a sink that writes somewhere keeps the first error
+ * and throws it from close.
+ */
+public interface StepSink extends Closeable {
+
+	/***
+	 * Called once for every step
+	 *
+	 * @param time the time of the peak that was counted as a step, in milliseconds
+	 * @param magnitude the magnitude of the peak
+	 * @param confidence how clearly the peak passed its threshold, from 0 to 1 (see CountSteps.stepConfidence)
+	 */
+	void onStep(double time, double magnitude, double confidence);
+
+	/***
+	 * Finishes writing the events
+	 *
+	 * @throws IOException if an event couldn't be written
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/***
+ * Reads CSV and other comma separated text recordings, like iPhone SensorLog
+ * exports and the class recordings, finding the columns by name (see
+ * ColumnMapping). A file without names it knows is read as the time and then
+ * the x, y and z acceleration.
+ *
+ * Subclasses for other text layouts only need to change how they recognise a
+ * file and how its columns are mapped.
+ */
+public class TextRecordingReader implements RecordingReader {
+
+	/***
+	 * What could be worked out about a text file from its first bytes
+	 */
+	protected static class Head {
+		String header; // the last line before the data, or null if the data starts right away
+		int numFields; // the number of fields in the first line of data, 0 if there isn't one
+		String firstLine; // the first line of the file
+	}
+
+	@Override
+	public String getName() {
+		return "CSV";
+	}
+
+	@Override
+	public int sniff(String filename, byte[] head, int length) {
+		Head text = readHead(head, length);
+		if (text == null || text.numFields == 0)
+			return 0;
+		// finding the columns by name is a better sign than guessing by position
+		if (text.header != null && ColumnMapping.byName(text.header.split(",")).hasAcceleration())
+			return 10;
+		return ColumnMapping.byPosition(text.numFields).hasAcceleration() ? 5 : 0;
+	}
+
+	@Override
+	public CSVData read(String filepath) throws IOException {
+		try (CSVReader reader = new CSVReader(filepath)) {
+			return read(reader, filepath);
+		}
+	}
+
+	@Override
+	public CSVData read(String name, InputStream in, long size) throws IOException {
+		try (CSVReader reader = new CSVReader(in, size)) {
+			return read(reader, name);
+		}
+	}
+
+	/***
+	 * Reads the table from a reader at the start of the file
+	 *
+	 * @param reader the reader
+	 * @param filepath the file being read, for the table and error messages
+	 * @return the time, acceleration and gyro columns
+	 * @throws IOException if the file can't be read or has no acceleration
+	 */
+	protected CSVData read(CSVReader reader, String filepath) throws IOException {
+		String header = reader.readHeader();
+		ColumnMapping mapping = mapColumns(header, reader.countFields());
+		if (!mapping.hasAcceleration())
+			throw new IOException("No time and acceleration columns in " + filepath);
+
+		return ColumnMapping.toTable(filepath, reader.readColumns(mapping.getSourceColumns()));
+	}
+
+	/***
+	 * Works out which columns hold which channel
+	 *
+	 * @param header the line before the data, or null if there isn't one
+	 * @param numFields the number of fields in a line of data
+	 * @return the mapping
+	 */
+	protected ColumnMapping mapColumns(String header, int numFields) {
+		if (header != null) {
+			ColumnMapping mapping = ColumnMapping.byName(header.split(","));
+			if (mapping.hasAcceleration())
+				return mapping;
+		}
+		return ColumnMapping.byPosition(numFields);
+	}
+
+	/***
+	 * Finds the header and the first line of data in the first bytes of a file,
+	 * the same way CSVReader.readHeader does for the whole file
+	 *
+	 * @param head the first bytes of the file
+	 * @param length the number of bytes in head that were read
+	 * @return what was found, or null if the bytes aren't text
+	 */
+	protected static Head readHead(byte[] head, int length) {
+		for (int i = 0; i < length; i++)
+			if (head[i] == 0)
+				return null;
+
+		String text = new String(head, 0, length, StandardCharsets.ISO_8859_1);
+		String[] lines = text.split("\r\n|\r|\n", -1);
+		Head result = new Head();
+		result.firstLine = lines[0];
+
+		// the last line may have been cut off, so it is only used if the whole file fit
+		int complete = length < head.length ? lines.length : lines.length - 1;
+		for (int i = 0; i < complete; i++) {
+			String line = lines[i];
+			if (line.trim().isEmpty())
+				continue;
+			if (CSVReader.isDataLine(line)) {
+				result.numFields = line.split(",", -1).length;
+				break;
+			}
+			result.header = line;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/***
+ * The ways a peak can be compared against a threshold to decide if it is a step.
+ */
+public enum ThresholdStrategy {
+
+	/***
+	 * One threshold for the whole recording: the mean plus one standard
+	 * deviation of every magnitude. This is what CountSteps.countSteps has
+	 * always used. The statistics are computed once, not once per sample.
+	 */
+	GLOBAL {
+		@Override
+		public double[] calculateThresholds(double[] magnitudes, double[] times, double[] thresholds,
+				StepCounterConfig config) {
+			double mean = CountSteps.calculateMean(magnitudes);
+			double threshold = mean + config.getDeviations() * CountSteps.calculateStandardDeviation(magnitudes, mean);
+
+			Arrays.fill(thresholds, 0, magnitudes.length, threshold);
+			return thresholds;
+		}
+
+		@Override
+		public boolean isStep(double magnitude, double threshold, StepCounterConfig config) {
+			return magnitude > threshold;
+		}
+	},
+
+	/***
+	 * A threshold for each sample from a window of magnitudes around it, used
+	 * by CountSteps.countStepsByMagnitudes. Windows that are too quiet (threshold
+	 * of the config's minimum, 0.5 by default, or less) never count as steps.
+	 */
+	ADAPTIVE {
+		@Override
+		public double[] calculateThresholds(double[] magnitudes, double[] times, double[] thresholds,
+				StepCounterConfig config) {
+			return CountSteps.calculateThresholds(magnitudes, times, thresholds, config);
+		}
+
+		@Override
+		public boolean isStep(double magnitude, double threshold, StepCounterConfig config) {
+			return threshold > config.getMinimumThreshold() && magnitude > threshold;
+		}
+	};
+
+	/***
+	 * Calculates the threshold for every magnitude with the default parameters
+	 *
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the times from the data
+	 * @param thresholds the array to store the thresholds in
+	 * @return the thresholds array
+	 */
+	public double[] calculateThresholds(double[] magnitudes, double[] times, double[] thresholds) {
+		return calculateThresholds(magnitudes, times, thresholds, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Calculates the threshold for every magnitude
+	 *
+	 * @param magnitudes the magnitudes of the acceleration data
+	 * @param times the times from the data
+	 * @param thresholds the array to store the thresholds in
+	 * @param config the threshold window and number of deviations to use
+	 * @return the thresholds array
+	 */
+	public abstract double[] calculateThresholds(double[] magnitudes, double[] times, double[] thresholds,
+			StepCounterConfig config);
+
+	/***
+	 * Decides if a peak is tall enough to be a step with the default parameters
+	 *
+	 * @param magnitude the magnitude of the peak
+	 * @param threshold the threshold at the peak
+	 * @return true if the peak counts as a step
+	 */
+	public boolean isStep(double magnitude, double threshold) {
+		return isStep(magnitude, threshold, StepCounterConfig.DEFAULT);
+	}
+
+	/***
+	 * Decides if a peak is tall enough to be a step
+	 *
+	 * @param magnitude the magnitude of the peak
+	 * @param threshold the threshold at the peak
+	 * @param config the minimum threshold to use
+	 * @return true if the peak counts as a step
+	 */
+	public abstract boolean isStep(double magnitude, double threshold, StepCounterConfig config);
+}
@@ -0,0 +1,65 @@
+/***
+ * Finds the row of a table recorded at a given time, by binary search over
+ * the time each row was recorded since the first one. The times must not go
+ * backwards, which is true of every recording.
+ */
+public class TimeIndex {
+	private final double[] elapsed; // milliseconds since the first row
+
+	/***
+	 * Indexes a table with the time in milliseconds in column 0, like the ones
+	 * DataViewer shows
+	 *
+	 * @param data the table
+	 */
+	public TimeIndex(double[][] data) {
+		elapsed = new double[data.length];
+		for (int row = 0; row < data.length; row++)
+			elapsed[row] = data[row][0] - data[0][0];
+	}
+
+	/***
+	 * Indexes a column of times
+	 *
+	 * @param times the time of each row in milliseconds
+	 */
+	public TimeIndex(double[] times) {
+		elapsed = new double[times.length];
+		for (int row = 0; row < times.length; row++)
+			elapsed[row] = times[row] - times[0];
+	}
+
+	/***
+	 * Finds the last row recorded at or before a time. Times before the first
+	 * row give the first row, and times after the last row give the last row.
+	 *
+	 * @param elapsedMs the time in milliseconds since the first row
+	 * @return the row, or -1 if there are no rows
+	 */
+	public int rowAt(double elapsedMs) {
+		// the first row recorded after the time, then the one before it
+		int low = 0, high = elapsed.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (elapsed[middle] <= elapsedMs)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return Math.min(Math.max(low - 1, 0), elapsed.length - 1);
+	}
+
+	/***
+	 * Returns when a row was recorded
+	 *
+	 * @param row the row
+	 * @return the time in milliseconds since the first row
+	 */
+	public double getElapsed(int row) {
+		return elapsed[row];
+	}
+
+	public int size() {
+		return elapsed.length;
+	}
+}
@@ -0,0 +1,56 @@
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * How a thread waits on a SampleRingBuffer when there is nothing it can do:
+ * the producer when the ring is full, the consumer when it is empty.
+ *
+ * Spinning reacts fastest but keeps a core busy the whole time, so it only
+ * pays when each thread has a core of its own. Parking gives the core away
+ * and costs tens of microseconds to wake up from.
+ *
+ * A spin is an empty call, since the Thread.onSpinWait hint needs Java 9 and
+ * the tree builds for Java 8. The caller checks the ring again each time,
+ * which reads a volatile, so the loop can't be optimized away.
+ */
+public enum WaitStrategy {
+	BUSY_SPIN {
+		@Override
+		public void idle(int attempt) {
+			spin();
+		}
+	},
+	YIELD {
+		@Override
+		public void idle(int attempt) {
+			if (attempt < SPINS)
+				spin();
+			else
+				Thread.yield();
+		}
+	},
+	PARK {
+		@Override
+		public void idle(int attempt) {
+			if (attempt < SPINS)
+				spin();
+			else if (attempt < SPINS + YIELDS)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(PARK_NANOS);
+		}
+	};
+
+	private static final int SPINS = 100;
+	private static final int YIELDS = 10;
+	private static final long PARK_NANOS = 50_000;
+
+	private static void spin() {
+	}
+
+	/***
+	 * Waits a little before the caller checks the ring again
+	 *
+	 * @param attempt the number of times the caller has already waited for the same thing, from 0
+	 */
+	public abstract void idle(int attempt);
+}
@@ -0,0 +1,110 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/***
+ * Reads recordings straight out of a zip file, like the data.zip the corpus is
+ * shipped as, without unpacking it. Each entry is inflated into the CSV parser
+ * a buffer at a time (see RecordingReaders.read(String, InputStream, long)),
+ * so there are no temporary files and no String of the whole entry.
+ *
+ * Entries can be read from many threads at once, each through its own stream,
+ * so a pool can load one entry per worker.
+ *
+ * Recordings read from a zip are named like "data.zip!/data/15StepWalking.csv".
+ */
+public class ZipDataset implements Closeable {
+	private final String path;
+	private final ZipFile zip;
+
+	public ZipDataset(String path) throws IOException {
+		this.path = path;
+		this.zip = new ZipFile(path);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/***
+	 * Returns the names of the files in the zip, in the order they are stored
+	 *
+	 * @return the entry names, without the folders
+	 */
+	public List<String> getEntryNames() {
+		List<String> names = new ArrayList<String>();
+		Enumeration<? extends ZipEntry> entries = zip.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+			if (!entry.isDirectory())
+				names.add(entry.getName());
+		}
+		return names;
+	}
+
+	/***
+	 * Returns the name a recording in the zip goes by
+	 *
+	 * @param entryName the name of the entry
+	 * @return the zip's path, "!/" and the entry name
+	 */
+	public String getPath(String entryName) {
+		return path + "!/" + entryName;
+	}
+
+	/***
+	 * Reads a recording with the reader that recognises it
+	 *
+	 * @param entryName the name of the entry
+	 * @return the standard table of time, acceleration and, if there is one, gyro
+	 * @throws IOException if the entry is missing, no reader recognises it, or it can't be read
+	 */
+	public CSVData read(String entryName) throws IOException {
+		ZipEntry entry = getEntry(entryName);
+		return RecordingReaders.read(getPath(entryName), zip.getInputStream(entry), entry.getSize());
+	}
+
+	/***
+	 * Reads a small text entry, like a data_description.txt
+	 *
+	 * @param entryName the name of the entry
+	 * @return the text of the entry
+	 * @throws IOException if the entry is missing or can't be read
+	 */
+	public String readText(String entryName) throws IOException {
+		try (InputStream in = zip.getInputStream(getEntry(entryName))) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) >= 0)
+				bytes.write(buffer, 0, n);
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		zip.close();
+	}
+
+	/***
+	 * Looks up an entry, for its size and time
+	 *
+	 * @param entryName the name of the entry
+	 * @return the entry
+	 * @throws IOException if there is no such entry
+	 */
+	public ZipEntry getEntry(String entryName) throws IOException {
+		ZipEntry entry = zip.getEntry(entryName);
+		if (entry == null)
+			throw new IOException("No entry " + entryName + " in " + path);
+		return entry;
+	}
+}